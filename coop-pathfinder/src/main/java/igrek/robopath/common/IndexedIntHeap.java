@@ -0,0 +1,150 @@
+package igrek.robopath.common;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node indices, supporting removal of any node and decrease-key in O(log n).
+ * The costs and the heap positions of the nodes are kept by their owner (usually in primitive
+ * arrays), so neither boxing nor searching through the heap is needed.
+ */
+public class IndexedIntHeap {
+	
+	/**
+	 * Storage of the nodes ordered by the heap
+	 */
+	public interface Nodes {
+		
+		/**
+		 * @return negative, zero or positive if the first node should be taken before, equally or
+		 * after the second one
+		 */
+		int compare(int node1, int node2);
+		
+		/**
+		 * @return position of the node in the heap, -1 when not there
+		 */
+		int getHeapIndex(int node);
+		
+		void setHeapIndex(int node, int index);
+	}
+	
+	private final Nodes nodes;
+	private int[] heap = new int[64];
+	private int size = 0;
+	
+	public IndexedIntHeap(Nodes nodes) {
+		this.nodes = nodes;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	public boolean contains(int node) {
+		int index = nodes.getHeapIndex(node);
+		return index >= 0 && index < size && heap[index] == node;
+	}
+	
+	/**
+	 * Retrieve the first node without removing it
+	 * @return The first node in the heap
+	 */
+	public int first() {
+		return heap[0];
+	}
+	
+	/**
+	 * Remove the first node from the heap
+	 * @return The removed node
+	 */
+	public int poll() {
+		int first = heap[0];
+		size--;
+		if (size > 0) {
+			place(heap[size], 0);
+			siftDown(0);
+		}
+		nodes.setHeapIndex(first, -1);
+		return first;
+	}
+	
+	public void add(int node) {
+		if (size == heap.length)
+			heap = Arrays.copyOf(heap, size * 2);
+		place(node, size);
+		size++;
+		siftUp(size - 1);
+	}
+	
+	/**
+	 * Remove the node from any position of the heap
+	 * @param node The node already placed in the heap
+	 */
+	public void remove(int node) {
+		int index = nodes.getHeapIndex(node);
+		if (index < 0)
+			throw new IllegalArgumentException("node is not in the heap: " + node);
+		size--;
+		if (index < size) {
+			int moved = heap[size];
+			place(moved, index);
+			siftDown(index);
+			if (heap[index] == moved)
+				siftUp(index);
+		}
+		nodes.setHeapIndex(node, -1);
+	}
+	
+	/**
+	 * Restore the heap order after the cost (or any other key) of the node has changed
+	 * @param node The node already placed in the heap
+	 */
+	public void update(int node) {
+		int index = nodes.getHeapIndex(node);
+		if (index < 0)
+			throw new IllegalArgumentException("node is not in the heap: " + node);
+		siftUp(index);
+		siftDown(nodes.getHeapIndex(node));
+	}
+	
+	private void siftUp(int index) {
+		int node = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (nodes.compare(node, heap[parent]) >= 0)
+				break;
+			place(heap[parent], index);
+			index = parent;
+		}
+		place(node, index);
+	}
+	
+	private void siftDown(int index) {
+		int node = heap[index];
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < size && nodes.compare(heap[child], heap[right]) > 0)
+				child = right;
+			if (nodes.compare(node, heap[child]) <= 0)
+				break;
+			place(heap[child], index);
+			index = child;
+		}
+		place(node, index);
+	}
+	
+	private void place(int node, int index) {
+		heap[index] = node;
+		nodes.setHeapIndex(node, index);
+	}
+}
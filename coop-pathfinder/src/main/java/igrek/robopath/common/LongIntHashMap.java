@@ -0,0 +1,144 @@
+package igrek.robopath.common;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from non-negative long keys to int values, without boxing. Open addressing with linear
+ * probing is used, removed entries are filled by shifting the following ones back.
+ */
+public class LongIntHashMap {
+	
+	private static final long EMPTY = -1;
+	
+	public interface EntryConsumer {
+		void accept(long key, int value);
+	}
+	
+	private long[] keys;
+	private int[] values;
+	private int size = 0;
+	
+	public LongIntHashMap() {
+		this(16);
+	}
+	
+	public LongIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+	
+	private int slot(long key) {
+		// murmur3 finalizer
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & (keys.length - 1);
+	}
+	
+	/**
+	 * @return position of the key or of the empty slot where it would be
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		int slot = slot(key);
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	public boolean containsKey(long key) {
+		return keys[find(key)] != EMPTY;
+	}
+	
+	public int get(long key, int defaultValue) {
+		int slot = find(key);
+		return keys[slot] != EMPTY ? values[slot] : defaultValue;
+	}
+	
+	public void put(long key, int value) {
+		if (key < 0)
+			throw new IllegalArgumentException("negative key: " + key);
+		int slot = find(key);
+		if (keys[slot] == EMPTY) {
+			if ((size + 1) * 2 > keys.length) {
+				resize(keys.length * 2);
+				slot = find(key);
+			}
+			keys[slot] = key;
+			size++;
+		}
+		values[slot] = value;
+	}
+	
+	public boolean remove(long key) {
+		int mask = keys.length - 1;
+		int slot = find(key);
+		if (keys[slot] == EMPTY)
+			return false;
+		// shift back the following entries, which would not be found after making a gap
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int home = slot(keys[next]);
+			// move it if its home position isn't in the cyclic range (gap, next]
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		size--;
+		return true;
+	}
+	
+	public void forEach(EntryConsumer consumer) {
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (keys[slot] != EMPTY)
+				consumer.accept(keys[slot], values[slot]);
+		}
+	}
+	
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+	
+	/**
+	 * @return approximate number of bytes taken by the entries
+	 */
+	public long getMemoryUsage() {
+		return (long) keys.length * 12;
+	}
+}
@@ -0,0 +1,19 @@
+package igrek.robopath.common;
+
+/**
+ * Read-only view of the blocked cells, what the path finders need from a map
+ */
+public interface MapView {
+	
+	int getWidthInTiles();
+	
+	int getHeightInTiles();
+	
+	/**
+	 * Check if the given location is blocked
+	 * @param x The x coordinate of the tile to check
+	 * @param y The y coordinate of the tile to check
+	 * @return True if the location is blocked or out of the map
+	 */
+	boolean blocked(int x, int y);
+}
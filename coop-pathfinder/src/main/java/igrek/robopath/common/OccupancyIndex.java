@@ -0,0 +1,120 @@
+package igrek.robopath.common;
+
+import java.util.Arrays;
+
+/**
+ * Robots (numbered from 0) placed on the cells of a map, for O(1) lookups of the robots by the
+ * cell. Every cell keeps the first of its robots in a dense array, the robots of the same cell are
+ * linked - several robots on one cell are allowed, that's a collision.
+ */
+public class OccupancyIndex {
+	
+	public static final int NONE = -1;
+	
+	private final int width;
+	private final int height;
+	/** the first robot on the cell (y * width + x) */
+	private final int[] first;
+	/** the next robot on the same cell */
+	private int[] next = new int[0];
+	/** the cell of the robot, NONE if it's not placed */
+	private int[] cells = new int[0];
+	
+	public OccupancyIndex(int width, int height) {
+		this.width = width;
+		this.height = height;
+		first = new int[width * height];
+		Arrays.fill(first, NONE);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Place the robot on the cell, removing it from the previous one. A robot out of the map is
+	 * only removed.
+	 */
+	public void set(int robot, int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			remove(robot);
+			return;
+		}
+		if (robot >= cells.length) {
+			int capacity = Math.max(robot + 1, cells.length * 2);
+			int size = cells.length;
+			cells = Arrays.copyOf(cells, capacity);
+			next = Arrays.copyOf(next, capacity);
+			Arrays.fill(cells, size, capacity, NONE);
+		}
+		int cell = y * width + x;
+		if (cells[robot] == cell)
+			return;
+		remove(robot);
+		cells[robot] = cell;
+		next[robot] = first[cell];
+		first[cell] = robot;
+	}
+	
+	public void set(int robot, Point point) {
+		set(robot, point.x, point.y);
+	}
+	
+	public void remove(int robot) {
+		if (robot >= cells.length || cells[robot] == NONE)
+			return;
+		int cell = cells[robot];
+		if (first[cell] == robot) {
+			first[cell] = next[robot];
+		} else {
+			int previous = first[cell];
+			while (next[previous] != robot)
+				previous = next[previous];
+			next[previous] = next[robot];
+		}
+		cells[robot] = NONE;
+	}
+	
+	/**
+	 * Remove all the robots, in time of the robots' count
+	 */
+	public void clear() {
+		for (int robot = 0; robot < cells.length; robot++) {
+			if (cells[robot] != NONE) {
+				first[cells[robot]] = NONE;
+				cells[robot] = NONE;
+			}
+		}
+	}
+	
+	/**
+	 * @return one of the robots on the cell, NONE if it's free or out of the map
+	 */
+	public int get(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return NONE;
+		return first[y * width + x];
+	}
+	
+	public int get(Point point) {
+		return get(point.x, point.y);
+	}
+	
+	/**
+	 * @return one of the robots on the cell other than the given one, NONE if there's no other
+	 */
+	public int getOther(int x, int y, int robot) {
+		int other = get(x, y);
+		while (other == robot)
+			other = next[other];
+		return other;
+	}
+	
+	public int getOther(Point point, int robot) {
+		return getOther(point.x, point.y, robot);
+	}
+}
@@ -0,0 +1,72 @@
+package igrek.robopath.common;
+
+/**
+ * Static map with a layer of the dynamic obstacles (e.g. robots) on top of it, read through
+ * without copying the map. A cell is blocked if it's blocked on the map or by any obstacle. The
+ * obstacles are counted, so the same cell may be added by several robots and removed by each of
+ * them.
+ */
+public class OverlayMap implements MapView {
+	
+	private final TileMap base;
+	private final int width;
+	private final int height;
+	/** number of the dynamic obstacles on the cell */
+	private final int[] obstacles;
+	
+	public OverlayMap(TileMap base) {
+		this.base = base;
+		this.width = base.getWidthInTiles();
+		this.height = base.getHeightInTiles();
+		this.obstacles = new int[width * height];
+	}
+	
+	public TileMap getBase() {
+		return base;
+	}
+	
+	/**
+	 * Block the cell by one more obstacle, the cells out of the map are ignored
+	 */
+	public void addObstacle(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		obstacles[y * width + x]++;
+	}
+	
+	public void addObstacle(Point point) {
+		addObstacle(point.x, point.y);
+	}
+	
+	/**
+	 * Remove one obstacle from the cell, which has been added before
+	 */
+	public void removeObstacle(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		int cell = y * width + x;
+		if (obstacles[cell] > 0)
+			obstacles[cell]--;
+	}
+	
+	public void removeObstacle(Point point) {
+		removeObstacle(point.x, point.y);
+	}
+	
+	@Override
+	public int getWidthInTiles() {
+		return width;
+	}
+	
+	@Override
+	public int getHeightInTiles() {
+		return height;
+	}
+	
+	@Override
+	public boolean blocked(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return true;
+		return obstacles[y * width + x] > 0 || base.blocked(x, y);
+	}
+}
@@ -55,9 +55,14 @@ public class Point {
 	}
 	
 	public boolean isAdjacentOrEqual(Point p2) {
-		int dx = abs(p2.x - x);
-		int dy = abs(p2.y - y);
-		return dx <= 1 && dy <= 1;
+		return isAdjacentOrEqual(x, y, p2.x, p2.y);
+	}
+	
+	/**
+	 * the same as {@link #isAdjacentOrEqual(Point)}, without the points
+	 */
+	public static boolean isAdjacentOrEqual(int x1, int y1, int x2, int y2) {
+		return Math.abs(x2 - x1) <= 1 && Math.abs(y2 - y1) <= 1;
 	}
 	
 	public double distance(Point p2) {
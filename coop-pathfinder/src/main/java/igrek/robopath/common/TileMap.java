@@ -1,56 +1,126 @@
 package igrek.robopath.common;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class TileMap {
+/**
+ * Map of the blocked cells, packed into bits in the row-major order. The copies and the snapshots
+ * share the bits until one of them is modified (copy on write), so taking them costs O(1).
+ */
+public class TileMap implements MapView {
 	
-	private int width;
-	private int height;
+	private static final AtomicLong versions = new AtomicLong();
+	
+	private final int width;
+	private final int height;
+	/**
+	 * is blocked - bit (y * width + x)
+	 */
+	private long[] tiles;
+	/** the tiles may be referenced by another map, so they have to be copied before a change */
+	private boolean shared = false;
+	/** a snapshot can't be modified */
+	private final boolean immutable;
 	/**
-	 * is blocked
+	 * identifies the content of the map - changes with every modification, shared only by copies
 	 */
-	private boolean[][] tiles;
+	private long version = versions.incrementAndGet();
+	/** notified about every changed cell, not shared with the copies */
+	private List<CellChangeListener> listeners;
 	
 	public TileMap(int width, int height) {
 		this.width = width;
 		this.height = height;
-		tiles = new boolean[getWidthInTiles()][getHeightInTiles()];
-		for (int x = 0; x < tiles.length; x++) {
-			for (int y = 0; y < tiles[x].length; y++) {
-				tiles[x][y] = false;
-			}
-		}
+		this.immutable = false;
+		tiles = new long[(width * height + 63) >>> 6];
 	}
 	
 	/**
-	 * copy constructor
+	 * copy constructor - the copy is modifiable, the cells are copied on the first modification
 	 * @param source
 	 */
 	public TileMap(TileMap source) {
+		this(source, false);
+	}
+	
+	private TileMap(TileMap source, boolean immutable) {
 		this.width = source.width;
 		this.height = source.height;
-		tiles = new boolean[this.width][];
-		for (int x = 0; x < tiles.length; x++) {
-			tiles[x] = Arrays.copyOf(source.tiles[x], source.tiles[x].length);
+		this.immutable = immutable;
+		synchronized (source) {
+			this.version = source.version;
+			this.tiles = source.tiles;
+			this.shared = true;
+			source.shared = true;
 		}
 	}
 	
+	/**
+	 * @return unmodifiable map of the current cells, not affected by the later changes of this map
+	 */
+	public TileMap snapshot() {
+		if (immutable)
+			return this;
+		return new TileMap(this, true);
+	}
+	
+	public boolean isImmutable() {
+		return immutable;
+	}
+	
 	public interface MapCellExecutor {
 		void execute(int x, int y, boolean occupied);
 	}
 	
+	public interface CellChangeListener {
+		void cellChanged(int x, int y, boolean occupied);
+	}
+	
+	public void addChangeListener(CellChangeListener listener) {
+		if (listeners == null)
+			listeners = new ArrayList<>();
+		listeners.add(listener);
+	}
+	
+	public void removeChangeListener(CellChangeListener listener) {
+		if (listeners != null)
+			listeners.remove(listener);
+	}
+	
 	public void foreach(MapCellExecutor executor) {
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
-				executor.execute(x, y, tiles[x][y]);
+				executor.execute(x, y, blocked(x, y));
 			}
 		}
 	}
 	
+	/**
+	 * @throws UnsupportedOperationException if it's a snapshot
+	 */
 	public void setCell(int x, int y, boolean occupied) {
+		if (immutable)
+			throw new UnsupportedOperationException("map snapshot can't be modified");
 		if (x < 0 || y < 0 || x >= getWidthInTiles() || y >= getHeightInTiles())
 			return;
-		tiles[x][y] = occupied;
+		if (blocked(x, y) != occupied) {
+			int cell = y * width + x;
+			synchronized (this) {
+				if (shared) {
+					tiles = Arrays.copyOf(tiles, tiles.length);
+					shared = false;
+				}
+				tiles[cell >>> 6] ^= 1L << cell;
+				version = versions.incrementAndGet();
+			}
+			if (listeners != null) {
+				for (CellChangeListener listener : listeners) {
+					listener.cellChanged(x, y, occupied);
+				}
+			}
+		}
 	}
 	
 	public void setCell(Point point, boolean occupied) {
@@ -60,17 +130,26 @@ public class TileMap {
 	public Boolean getCell(int x, int y) {
 		if (x < 0 || y < 0 || x >= getWidthInTiles() || y >= getHeightInTiles())
 			return null;
-		return tiles[x][y];
+		return blocked(x, y);
 	}
 	
 	public Boolean getCell(Point p) {
 		return getCell(p.x, p.y);
 	}
 	
+	/**
+	 * @return the version of the map content - two maps of the same version have the same cells
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	@Override
 	public int getWidthInTiles() {
 		return width;
 	}
 	
+	@Override
 	public int getHeightInTiles() {
 		return height;
 	}
@@ -79,10 +158,14 @@ public class TileMap {
 	 * Check if the given location is blocked
 	 * @param x The x coordinate of the tile to check
 	 * @param y The y coordinate of the tile to check
-	 * @return True if the location is blocked
+	 * @return True if the location is blocked or out of the map
 	 */
+	@Override
 	public boolean blocked(int x, int y) {
-		return getCell(x, y);
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return true;
+		int cell = y * width + x;
+		return (tiles[cell >>> 6] & (1L << cell)) != 0;
 	}
 	
 	@Override
@@ -90,7 +173,7 @@ public class TileMap {
 		StringBuilder sb = new StringBuilder("Map:\n");
 		for (int y = 0; y < height; y++) {
 			for (int x = 0; x < width; x++) {
-				if (tiles[x][y]) {
+				if (blocked(x, y)) {
 					sb.append("X");
 				} else {
 					sb.append(".");
@@ -3,53 +3,61 @@ package igrek.robopath.pathfinder.astar;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.PriorityQueue;
-
-import igrek.robopath.common.TileMap;
+import igrek.robopath.common.IndexedIntHeap;
+import igrek.robopath.common.MapView;
 
 public class Astar2DPathFinder {
 	
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 	
-	private List<Node> closed = new ArrayList<>();
-	private PriorityQueue<Node> open = new PriorityQueue<>();
-	private Node[][] nodes;
-	
-	private TileMap map;
+	private MapView map;
+	/** precomputed distances of the static map, tightening the heuristic (optional) */
+	private DistanceOracle distanceOracle;
+	/** number of the nodes closed by the last search */
+	protected int expandedNodes;
 	
-	public Astar2DPathFinder(TileMap map) {
+	/**
+	 * @param map the blocked cells, a map or a view of it with the dynamic obstacles
+	 */
+	public Astar2DPathFinder(MapView map) {
 		this.map = map;
 	}
 	
-	private int width() {
+	/**
+	 * @param distanceOracle distances computed on the map without the dynamic obstacles, or null
+	 */
+	public void setDistanceOracle(DistanceOracle distanceOracle) {
+		this.distanceOracle = distanceOracle;
+	}
+	
+	/**
+	 * @return number of the nodes closed by the last search
+	 */
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+	protected int width() {
 		return map.getWidthInTiles();
 	}
 	
-	private int height() {
+	protected int height() {
 		return map.getHeightInTiles();
 	}
 	
 	public Path findPath(int sx, int sy, int tx, int ty) {
 		// initial state for A*. The closed group is empty. Only the starting
 		// tile is in the open list and it'e're already there
-		closed.clear();
-		open.clear();
+		SearchContext context = SearchContext.acquire(width(), height());
+		IndexedIntHeap open = context.getOpen();
+		expandedNodes = 0;
 		
-		nodes = new Node[width()][height()];
-		for (int x = 0; x < width(); x++) {
-			for (int y = 0; y < height(); y++) {
-				nodes[x][y] = new Node(x, y);
-				nodes[x][y].setCost(Float.MAX_VALUE);
-			}
-		}
-		
-		nodes[sx][sy].setCost(0);
-		nodes[sx][sy].setHeuristic(getHeuristicCost(sx, sy, tx, ty));
+		int startNode = context.index(sx, sy);
+		context.setCost(startNode, 0);
+		context.setHeuristic(startNode, getHeuristicCost(sx, sy, tx, ty));
 		//Dodajemy pole startowe (lub węzeł) do Listy Otwartych.
-		open.add(nodes[sx][sy]);
+		context.setState(startNode, SearchContext.OPEN);
+		open.add(startNode);
 		
 		// first check, if the destination is blocked, we can't get there
 		if (map.blocked(tx, ty))
@@ -63,67 +71,47 @@ public class Astar2DPathFinder {
 			// pull out the first node in our open list, this is determined to
 			// be the most likely to be the next step based on our heuristic
 			//Szukamy pola o najniższej wartości F na Liście Otwartych. Czynimy je aktualnym polem
-			Node current = open.peek();
+			int current = open.first();
+			int cx = context.getX(current);
+			int cy = context.getY(current);
 			//jeśli current jest węzłem docelowym
-			if (current.getX() == tx && current.getY() == ty) {
+			if (cx == tx && cy == ty) {
 				// At this point we've definitely found a path so we can uses the parent
 				// references of the nodes to find out way from the target location back
 				// to the start recording the nodes on the way.
 				//Zapisujemy ścieżkę. Krocząc w kierunku od pola docelowego do startowego, przeskakujemy z kolejnych pól na im przypisane pola rodziców, aż do osiągnięcia pola startowego.
 				Path path = new Path();
-				Node node = nodes[tx][ty];
-				while (node != nodes[sx][sy]) {
-					path.prependStep(node.getX(), node.getY());
-					node = node.getParent();
-					if (node == null) {
+				int node = current;
+				while (node != startNode) {
+					path.prependStep(context.getX(node), context.getY(node));
+					node = context.getParent(node);
+					if (node < 0) {
 						logger.error("node (parent) = null");
+						return null;
 					}
 				}
 				path.prependStep(sx, sy);
 				return path;
 			}
 			//Aktualne pole przesuwamy do Listy Zamkniętych.
-			open.remove(current);
-			closed.add(current);
+			open.poll();
+			context.setState(current, SearchContext.CLOSED);
+			expandedNodes++;
 			// search through all the neighbours of the current node evaluating
 			// them as next steps
 			//Dla każdego z wybranych przyległych pól (sasiad) do pola aktualnego
-			List<Node> neighbours = availableNeighbours(current);
-			for (Node neighbour : neighbours) {
-				
-				//jeśli NIE-MOŻNA go przejść, ignorujemy je.
-				if (!isValidLocation(sx, sy, neighbour.getX(), neighbour.getY()))
-					continue;
-				
-				if (!isValidMove(current.getX(), current.getY(), neighbour.getX(), neighbour.getY()))
-					continue;
-				
-				// the cost to get to this node is cost the current plus the movement
-				// cost to reach this node. Note that the heursitic value is only used
-				// in the sorted open list
-				float newCost = current.getCost() + getMovementCost(current.getX(), current.getY(), neighbour
-						.getX(), neighbour.getY());
-				
-				// if the new cost we've determined for this node is lower than
-				// it has been previously makes sure the node hasn'e've
-				// determined that there might have been a better path to get to
-				// this node so it needs to be re-evaluated
-				if (newCost < neighbour.getCost()) {
-					if (open.contains(neighbour))
-						open.remove(neighbour);
-					if (closed.contains(neighbour))
-						closed.remove(neighbour);
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx == 0 && dy == 0)
+						continue;
+					// determine the location of the neighbour and evaluate it
+					int xp = cx + dx;
+					int yp = cy + dy;
+					// validate out of bounds
+					if ((xp < 0) || (yp < 0) || (xp >= width()) || (yp >= height()))
+						continue;
+					expandNeighbour(context, current, cx, cy, xp, yp, sx, sy, tx, ty);
 				}
-				// if the node hasn't already been processed and discarded then
-				// reset it's cost to our current cost and add it as a next possible
-				// step (i.e. to the open list)
-				if (!open.contains(neighbour) && !closed.contains(neighbour)) {
-					neighbour.setCost(newCost);
-					neighbour.setHeuristic(getHeuristicCost(neighbour.getX(), neighbour.getY(), tx, ty));
-					neighbour.setParent(current);
-					open.add(neighbour);
-				}
-				
 			}
 		}
 		
@@ -131,6 +119,41 @@ public class Astar2DPathFinder {
 		return null;
 	}
 	
+	private void expandNeighbour(SearchContext context, int current, int cx, int cy, int x, int y, int sx, int sy, int tx, int ty) {
+		//jeśli NIE-MOŻNA go przejść, ignorujemy je.
+		if (!isValidLocation(sx, sy, x, y))
+			return;
+		
+		if (!isValidMove(cx, cy, x, y))
+			return;
+		
+		int neighbour = context.index(x, y);
+		// the cost to get to this node is cost the current plus the movement
+		// cost to reach this node. Note that the heursitic value is only used
+		// in the sorted open list
+		float newCost = context.getCost(current) + getMovementCost(cx, cy, x, y);
+		
+		// if the new cost we've determined for this node is lower than
+		// it has been previously makes sure the node hasn'e've
+		// determined that there might have been a better path to get to
+		// this node so it needs to be re-evaluated
+		if (newCost < context.getCost(neighbour)) {
+			if (context.getState(neighbour) == SearchContext.OPEN)
+				context.getOpen().remove(neighbour);
+			context.setState(neighbour, SearchContext.UNVISITED);
+		}
+		// if the node hasn't already been processed and discarded then
+		// reset it's cost to our current cost and add it as a next possible
+		// step (i.e. to the open list)
+		if (context.getState(neighbour) == SearchContext.UNVISITED) {
+			context.setCost(neighbour, newCost);
+			context.setHeuristic(neighbour, getHeuristicCost(x, y, tx, ty));
+			context.setParent(neighbour, current);
+			context.setState(neighbour, SearchContext.OPEN);
+			context.getOpen().add(neighbour);
+		}
+	}
+	
 	protected boolean isValidLocation(int sx, int sy, int x, int y) {
 		if (x < 0 || y < 0 || x >= width() || y >= height())
 			return false;
@@ -171,27 +194,14 @@ public class Astar2DPathFinder {
 	protected float getHeuristicCost(int x, int y, int tx, int ty) {
 		//		return (float) Math.max(Math.abs(tx - x), Math.abs(ty - y));
 		//		return (float) Math.abs(tx - x) + Math.abs(ty - y);
-		return (float) Math.hypot(tx - x, ty - y);
-	}
-	
-	private List<Node> availableNeighbours(Node current) {
-		List<Node> neighbours = new LinkedList<>();
-		for (int dx = -1; dx <= 1; dx++) {
-			for (int dy = -1; dy <= 1; dy++) {
-				if (dx == 0 && dy == 0)
-					continue;
-				// determine the location of the neighbour and evaluate it
-				int xp = current.getX() + dx;
-				int yp = current.getY() + dy;
-				// validate out of bounds
-				if ((xp < 0) || (yp < 0) || (xp >= width()) || (yp >= height()))
-					continue;
-				neighbours.add(nodes[xp][yp]);
-			}
+		float distance = (float) Math.hypot(tx - x, ty - y);
+		if (distanceOracle != null) {
+			// every step costs at least 1, so the number of steps is still admissible
+			int steps = distanceOracle.distance(x, y, tx, ty);
+			if (steps > distance)
+				distance = steps;
 		}
-		// możliwe czekanie w tym samym miejscu - jako ostatnia propozycja
-		neighbours.add(nodes[current.getX()][current.getY()]);
-		return neighbours;
+		return distance;
 	}
-	
+
 }
@@ -0,0 +1,338 @@
+package igrek.robopath.pathfinder.astar;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import igrek.robopath.common.IndexedIntHeap;
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+
+/**
+ * D* Lite - incremental search of the paths to a fixed goal from a moving start, with the moves
+ * and costs of {@link Astar2DPathFinder}. The search runs backwards from the goal and keeps its
+ * state between the queries: when the start moves or some cells get blocked or free, only the
+ * part of the search affected by the change is repaired.
+ * <p>
+ * The blocked cells are the cells of the map (followed by a change listener) and the dynamic
+ * obstacles, e.g. other robots, given with {@link #updateObstacles(Collection)}.
+ */
+public class DStarLite implements IndexedIntHeap.Nodes {
+	
+	private static final float INFINITY = Float.POSITIVE_INFINITY;
+	private static final float DIAGONAL_COST = (float) Math.sqrt(2);
+	
+	private final TileMap map;
+	private final int width;
+	private final int height;
+	private final int goalX;
+	private final int goalY;
+	private final TileMap.CellChangeListener listener = (x, y, occupied) -> cellChanged(x, y);
+	
+	/** cost of the path from the cell to the goal, as of the last expansion */
+	private final float[] g;
+	/** one-step lookahead of g */
+	private final float[] rhs;
+	/** keys of the queued cells */
+	private final float[] key1;
+	private final float[] key2;
+	private final int[] heapIndex;
+	private final IndexedIntHeap open = new IndexedIntHeap(this);
+	
+	/** cells blocked by the dynamic obstacles */
+	private final boolean[] dynamic;
+	/** cells of the current dynamic obstacles */
+	private int[] obstacles = new int[0];
+	/** cells of the new dynamic obstacles being set */
+	private final boolean[] newObstacle;
+	/** cells of the map changed since the last search */
+	private int[] changedCells = new int[16];
+	private int changedCount = 0;
+	
+	private int startX = -1;
+	private int startY = -1;
+	/** accumulated heuristic offset due to the start moves */
+	private float km = 0;
+	private int expandedNodes;
+	
+	/**
+	 * Start following the changes of the map
+	 */
+	public DStarLite(TileMap map, int goalX, int goalY) {
+		this.map = map;
+		this.width = map.getWidthInTiles();
+		this.height = map.getHeightInTiles();
+		this.goalX = goalX;
+		this.goalY = goalY;
+		int size = width * height;
+		g = new float[size];
+		rhs = new float[size];
+		key1 = new float[size];
+		key2 = new float[size];
+		heapIndex = new int[size];
+		dynamic = new boolean[size];
+		newObstacle = new boolean[size];
+		Arrays.fill(g, INFINITY);
+		Arrays.fill(rhs, INFINITY);
+		Arrays.fill(heapIndex, -1);
+		map.addChangeListener(listener);
+	}
+	
+	/**
+	 * Stop following the changes of the map
+	 */
+	public void dispose() {
+		map.removeChangeListener(listener);
+	}
+	
+	public TileMap getMap() {
+		return map;
+	}
+	
+	public int getGoalX() {
+		return goalX;
+	}
+	
+	public int getGoalY() {
+		return goalY;
+	}
+	
+	/**
+	 * @return number of the cells expanded by the last search
+	 */
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+	/**
+	 * Replace the dynamic obstacles, only the cells which have changed are updated
+	 * @param cells blocked cells, the ones out of the map are ignored
+	 */
+	public void updateObstacles(Collection<Point> cells) {
+		int[] newObstacles = new int[cells.size()];
+		int count = 0;
+		for (Point point : cells) {
+			if (point.x < 0 || point.y < 0 || point.x >= width || point.y >= height)
+				continue;
+			int cell = point.y * width + point.x;
+			if (!newObstacle[cell]) {
+				newObstacle[cell] = true;
+				newObstacles[count++] = cell;
+			}
+		}
+		for (int cell : obstacles) {
+			if (!newObstacle[cell]) {
+				dynamic[cell] = false;
+				cellChanged(cell % width, cell / width);
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			int cell = newObstacles[i];
+			newObstacle[cell] = false;
+			if (!dynamic[cell]) {
+				dynamic[cell] = true;
+				cellChanged(cell % width, cell / width);
+			}
+		}
+		obstacles = Arrays.copyOf(newObstacles, count);
+	}
+	
+	/**
+	 * @return the shortest path from the start to the goal, null if there is none, the goal is
+	 * blocked or it's the start
+	 */
+	public Path findPath(int sx, int sy) {
+		expandedNodes = 0;
+		if (sx == goalX && sy == goalY)
+			return null;
+		int goal = goalY * width + goalX;
+		if (startX < 0) {
+			// the first search
+			rhs[goal] = 0;
+			startX = sx;
+			startY = sy;
+			insert(goal);
+		} else if (sx != startX || sy != startY) {
+			km += getHeuristicCost(startX, startY, sx, sy);
+			startX = sx;
+			startY = sy;
+		}
+		// the map may be changed by another thread
+		synchronized (this) {
+			for (int i = 0; i < changedCount; i++) {
+				int cell = changedCells[i];
+				int x = cell % width;
+				int y = cell / width;
+				// all the moves which may have changed start or end at these cells
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						if (inMap(x + dx, y + dy))
+							updateVertex(cell + dy * width + dx);
+					}
+				}
+			}
+			changedCount = 0;
+		}
+		computeShortestPath(sy * width + sx);
+		return buildPath(sx, sy);
+	}
+	
+	private void computeShortestPath(int start) {
+		int sx = start % width;
+		int sy = start / width;
+		while (!open.isEmpty()) {
+			int top = open.first();
+			float startKey1 = Math.min(g[start], rhs[start]) + km;
+			float startKey2 = Math.min(g[start], rhs[start]);
+			if (compareKeys(key1[top], key2[top], startKey1, startKey2) >= 0 && rhs[start] == g[start])
+				break;
+			int ux = top % width;
+			int uy = top / width;
+			float newKey2 = Math.min(g[top], rhs[top]);
+			float newKey1 = newKey2 + getHeuristicCost(sx, sy, ux, uy) + km;
+			if (compareKeys(key1[top], key2[top], newKey1, newKey2) < 0) {
+				key1[top] = newKey1;
+				key2[top] = newKey2;
+				open.update(top);
+				continue;
+			}
+			open.poll();
+			expandedNodes++;
+			if (g[top] > rhs[top]) {
+				g[top] = rhs[top];
+			} else {
+				g[top] = INFINITY;
+				updateVertex(top);
+			}
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if ((dx != 0 || dy != 0) && inMap(ux + dx, uy + dy))
+						updateVertex(top + dy * width + dx);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Recompute the lookahead of the cell and queue it if it's inconsistent
+	 */
+	private void updateVertex(int cell) {
+		int x = cell % width;
+		int y = cell / width;
+		if (x != goalX || y != goalY) {
+			float best = INFINITY;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx == 0 && dy == 0)
+						continue;
+					float cost = getMovementCost(x, y, x + dx, y + dy);
+					if (cost < INFINITY) {
+						float total = cost + g[cell + dy * width + dx];
+						if (total < best)
+							best = total;
+					}
+				}
+			}
+			rhs[cell] = best;
+		}
+		if (heapIndex[cell] >= 0)
+			open.remove(cell);
+		if (g[cell] != rhs[cell])
+			insert(cell);
+	}
+	
+	private void insert(int cell) {
+		key2[cell] = Math.min(g[cell], rhs[cell]);
+		key1[cell] = key2[cell] + getHeuristicCost(startX, startY, cell % width, cell / width) + km;
+		open.add(cell);
+	}
+	
+	/**
+	 * Follow the cheapest moves to the goal
+	 */
+	private Path buildPath(int sx, int sy) {
+		if (g[sy * width + sx] == INFINITY && rhs[sy * width + sx] == INFINITY)
+			return null;
+		Path path = new Path();
+		path.prependStep(sx, sy);
+		int x = sx;
+		int y = sy;
+		for (int steps = 0; (x != goalX || y != goalY) && steps < width * height; steps++) {
+			float best = INFINITY;
+			int bestX = -1;
+			int bestY = -1;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx == 0 && dy == 0)
+						continue;
+					float cost = getMovementCost(x, y, x + dx, y + dy);
+					if (cost < INFINITY && cost + g[(y + dy) * width + x + dx] < best) {
+						best = cost + g[(y + dy) * width + x + dx];
+						bestX = x + dx;
+						bestY = y + dy;
+					}
+				}
+			}
+			if (bestX < 0)
+				return null;
+			x = bestX;
+			y = bestY;
+			path.appendStep(x, y);
+		}
+		return x == goalX && y == goalY ? path : null;
+	}
+	
+	private synchronized void cellChanged(int x, int y) {
+		if (changedCount == changedCells.length)
+			changedCells = Arrays.copyOf(changedCells, changedCount * 2);
+		changedCells[changedCount++] = y * width + x;
+	}
+	
+	private boolean inMap(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+	
+	private boolean blocked(int x, int y) {
+		return map.blocked(x, y) || dynamic[y * width + x];
+	}
+	
+	/**
+	 * @return cost of the move between the neighbouring cells, infinity if it's not allowed
+	 */
+	private float getMovementCost(int x, int y, int x2, int y2) {
+		if (!inMap(x2, y2) || blocked(x, y) || blocked(x2, y2))
+			return INFINITY;
+		if (x != x2 && y != y2) {
+			// diagonal move not possible when one cell is blocked
+			if (blocked(x, y2) || blocked(x2, y))
+				return INFINITY;
+			return DIAGONAL_COST;
+		}
+		return 1;
+	}
+	
+	private float getHeuristicCost(int x, int y, int x2, int y2) {
+		int dx = Math.abs(x2 - x);
+		int dy = Math.abs(y2 - y);
+		return Math.max(dx, dy) + (DIAGONAL_COST - 1) * Math.min(dx, dy);
+	}
+	
+	private int compareKeys(float a1, float a2, float b1, float b2) {
+		int cmp = Float.compare(a1, b1);
+		return cmp != 0 ? cmp : Float.compare(a2, b2);
+	}
+	
+	@Override
+	public int compare(int node1, int node2) {
+		return compareKeys(key1[node1], key2[node1], key1[node2], key2[node2]);
+	}
+	
+	@Override
+	public int getHeapIndex(int node) {
+		return heapIndex[node];
+	}
+	
+	@Override
+	public void setHeapIndex(int node, int index) {
+		heapIndex[node] = index;
+	}
+}
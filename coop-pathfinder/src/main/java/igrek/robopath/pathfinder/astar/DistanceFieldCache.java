@@ -0,0 +1,122 @@
+package igrek.robopath.pathfinder.astar;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import igrek.robopath.common.TileMap;
+
+/**
+ * True distance fields (Reverse Resumable A* searches) shared between the searches and the
+ * replans, keyed by the version of the map and the goal cell. A field stays valid as long as the
+ * map is not modified, so the goals visited repeatedly are computed only once. The least recently
+ * used fields are evicted when the memory budget is exceeded.
+ * The cache itself may be used from several threads. A field is not - it may be handed from one
+ * thread to another, as long as only one of them uses it at a time and the hand-over is
+ * synchronized (e.g. by waiting for the future of the task using it).
+ */
+public class DistanceFieldCache {
+	
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+	
+	private final LinkedHashMap<Key, ReverseResumableAStar> fields = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBudget;
+	private long memoryUsage = 0;
+	private long hits = 0;
+	private long misses = 0;
+	
+	public DistanceFieldCache() {
+		this(DEFAULT_MEMORY_BUDGET);
+	}
+	
+	public DistanceFieldCache(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * Get the distance field of the goal on the map, creating a new one if there is none.
+	 * The map must not be modified while the field is in use.
+	 */
+	public synchronized ReverseResumableAStar get(TileMap map, int goalX, int goalY) {
+		Key key = new Key(map.getVersion(), goalX, goalY);
+		ReverseResumableAStar field = fields.get(key);
+		if (field != null) {
+			hits++;
+			return field;
+		}
+		misses++;
+		field = new ReverseResumableAStar(map, goalX, goalY);
+		fields.put(key, field);
+		memoryUsage += field.getMemoryUsage();
+		evict();
+		return field;
+	}
+	
+	/**
+	 * Evict the least recently used fields until the budget is met, the newest one is always kept
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, ReverseResumableAStar>> iterator = fields.entrySet().iterator();
+		while (memoryUsage > memoryBudget && fields.size() > 1) {
+			ReverseResumableAStar eldest = iterator.next().getValue();
+			memoryUsage -= eldest.getMemoryUsage();
+			iterator.remove();
+		}
+	}
+	
+	public synchronized void clear() {
+		fields.clear();
+		memoryUsage = 0;
+	}
+	
+	public synchronized long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	public synchronized void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		evict();
+	}
+	
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+	
+	public synchronized int size() {
+		return fields.size();
+	}
+	
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	private static class Key {
+		
+		private final long mapVersion;
+		private final int goalX;
+		private final int goalY;
+		
+		Key(long mapVersion, int goalX, int goalY) {
+			this.mapVersion = mapVersion;
+			this.goalX = goalX;
+			this.goalY = goalY;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key) obj;
+			return mapVersion == k.mapVersion && goalX == k.goalX && goalY == k.goalY;
+		}
+		
+		@Override
+		public int hashCode() {
+			return (int) (mapVersion ^ (mapVersion >>> 32)) * 961 + goalX * 31 + goalY;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package igrek.robopath.pathfinder.astar;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import igrek.robopath.common.TileMap;
+
+/**
+ * Precomputed distances between all pairs of free cells of a map, answering queries in O(1).
+ * The distance is the least number of steps needed to reach the cell, with the same moves allowed
+ * as in {@link Astar2DPathFinder}. It's computed by a breadth-first search from every free cell,
+ * the searches run in parallel. The distances are kept in a compact char matrix, so the memory
+ * grows with the square of the free cells count - building is refused above the given limit.
+ */
+public class DistanceOracle {
+	
+	public static final int DEFAULT_MAX_CELLS = 10000;
+	/** the largest number of cells, for which the matrix can be indexed */
+	private static final int MAX_CELLS_LIMIT = 46340;
+	private static final char UNREACHABLE = Character.MAX_VALUE;
+	
+	private static Logger logger = LoggerFactory.getLogger(DistanceOracle.class);
+	
+	private final int width;
+	private final int height;
+	private final long mapVersion;
+	/** index of the free cell in the matrix for every cell of the map, -1 if blocked */
+	private final int[] cellIndex;
+	private final int cellsCount;
+	/** distances between the free cells, row-major */
+	private final char[] distances;
+	private long buildTime;
+	
+	private DistanceOracle(TileMap map, int[] cellIndex, int cellsCount) {
+		this.width = map.getWidthInTiles();
+		this.height = map.getHeightInTiles();
+		this.mapVersion = map.getVersion();
+		this.cellIndex = cellIndex;
+		this.cellsCount = cellsCount;
+		this.distances = new char[cellsCount * cellsCount];
+	}
+	
+	/**
+	 * Build the distances of the map
+	 * @param maxCells the limit of free cells count
+	 * @throws IllegalArgumentException when the map has more free cells than the limit
+	 */
+	public static DistanceOracle build(TileMap map, int maxCells) {
+		long startTime = System.currentTimeMillis();
+		int width = map.getWidthInTiles();
+		int height = map.getHeightInTiles();
+		int[] cellIndex = new int[width * height];
+		int cellsCount = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				cellIndex[y * width + x] = map.blocked(x, y) ? -1 : cellsCount++;
+			}
+		}
+		if (cellsCount > Math.min(maxCells, MAX_CELLS_LIMIT))
+			throw new IllegalArgumentException("too many free cells for the distance oracle: " + cellsCount + " (limit " + maxCells + ")");
+		
+		DistanceOracle oracle = new DistanceOracle(map, cellIndex, cellsCount);
+		int[][] neighbours = oracle.neighbours(map);
+		ThreadLocal<int[]> queues = ThreadLocal.withInitial(() -> new int[oracle.cellsCount]);
+		IntStream.range(0, cellsCount)
+				.parallel()
+				.forEach(source -> oracle.breadthFirstSearch(source, neighbours, queues.get()));
+		oracle.buildTime = System.currentTimeMillis() - startTime;
+		logger.info("distance oracle built for " + cellsCount + " cells in " + oracle.buildTime + " ms, memory: " + oracle
+				.getMemoryUsage() / 1024 + " KiB");
+		return oracle;
+	}
+	
+	/**
+	 * @return indices of the free cells reachable in one move from every free cell
+	 */
+	private int[][] neighbours(TileMap map) {
+		int[][] neighbours = new int[cellsCount][];
+		int[] buffer = new int[8];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int index = cellIndex[y * width + x];
+				if (index < 0)
+					continue;
+				int count = 0;
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						if (dx == 0 && dy == 0)
+							continue;
+						int xp = x + dx;
+						int yp = y + dy;
+						if (xp < 0 || yp < 0 || xp >= width || yp >= height || map.blocked(xp, yp))
+							continue;
+						// diagonal move not possible when one cell is blocked
+						if (dx != 0 && dy != 0 && (map.blocked(x, yp) || map.blocked(xp, y)))
+							continue;
+						buffer[count++] = cellIndex[yp * width + xp];
+					}
+				}
+				neighbours[index] = Arrays.copyOf(buffer, count);
+			}
+		}
+		return neighbours;
+	}
+	
+	private void breadthFirstSearch(int source, int[][] neighbours, int[] queue) {
+		int offset = source * cellsCount;
+		Arrays.fill(distances, offset, offset + cellsCount, UNREACHABLE);
+		distances[offset + source] = 0;
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = source;
+		while (head < tail) {
+			int current = queue[head++];
+			char next = (char) (distances[offset + current] + 1);
+			for (int neighbour : neighbours[current]) {
+				if (distances[offset + neighbour] == UNREACHABLE) {
+					distances[offset + neighbour] = next;
+					queue[tail++] = neighbour;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the least number of steps from the first cell to the second one,
+	 * -1 if it's unreachable or any of the cells is blocked
+	 */
+	public int distance(int sx, int sy, int tx, int ty) {
+		if (sx < 0 || sy < 0 || tx < 0 || ty < 0 || sx >= width || sy >= height || tx >= width || ty >= height)
+			return -1;
+		int from = cellIndex[sy * width + sx];
+		int to = cellIndex[ty * width + tx];
+		if (from < 0 || to < 0)
+			return -1;
+		char distance = distances[from * cellsCount + to];
+		return distance == UNREACHABLE ? -1 : distance;
+	}
+	
+	/**
+	 * @return true if the distances have been computed for the current content of the map
+	 */
+	public boolean isValidFor(TileMap map) {
+		return map.getVersion() == mapVersion;
+	}
+	
+	public int getCellsCount() {
+		return cellsCount;
+	}
+	
+	/**
+	 * @return time of building the distances in milliseconds
+	 */
+	public long getBuildTime() {
+		return buildTime;
+	}
+	
+	/**
+	 * @return approximate number of bytes taken by the distances
+	 */
+	public long getMemoryUsage() {
+		return (long) distances.length * 2 + (long) cellIndex.length * 4;
+	}
+	
+	/**
+	 * The oracle of the map it has been asked for last, built anew when the map changes. Building
+	 * refused for the map size is remembered as well, until the map changes.
+	 */
+	public static class Cache {
+		
+		private DistanceOracle oracle;
+		/** version of the map the oracle has been built for, 0 if none */
+		private long mapVersion = 0;
+		
+		/**
+		 * @param maxCells the limit of free cells count
+		 * @return the distances of the map, null if refused for the map size
+		 */
+		public synchronized DistanceOracle get(TileMap map, int maxCells) {
+			if (map.getVersion() != mapVersion) {
+				mapVersion = map.getVersion();
+				try {
+					oracle = build(map, maxCells);
+				} catch (IllegalArgumentException e) {
+					logger.warn(e.getMessage());
+					oracle = null;
+				}
+			}
+			return oracle;
+		}
+		
+		public synchronized void clear() {
+			oracle = null;
+			mapVersion = 0;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package igrek.robopath.pathfinder.astar;
+
+import igrek.robopath.common.IndexedIntHeap;
+import igrek.robopath.common.MapView;
+
+/**
+ * Jump Point Search - A* finding the same shortest paths, which skips over the straight runs of
+ * free cells. Only the jump points, where the path may need to turn, get to the open list. The
+ * moves are the same as in {@link Astar2DPathFinder}, including the diagonal moves forbidden next
+ * to the blocked cells, and the returned path has a step for every cell on the way.
+ */
+public class JumpPointPathFinder extends Astar2DPathFinder {
+	
+	public JumpPointPathFinder(MapView map) {
+		super(map);
+	}
+	
+	@Override
+	public Path findPath(int sx, int sy, int tx, int ty) {
+		SearchContext context = SearchContext.acquire(width(), height());
+		IndexedIntHeap open = context.getOpen();
+		expandedNodes = 0;
+		
+		// first check, if the destination is blocked, we can't get there
+		if (!free(tx, ty))
+			return null;
+		if (sx == tx && sy == ty)
+			return null;
+		
+		int startNode = context.index(sx, sy);
+		context.setCost(startNode, 0);
+		context.setHeuristic(startNode, getHeuristicCost(sx, sy, tx, ty));
+		context.setState(startNode, SearchContext.OPEN);
+		open.add(startNode);
+		
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			int cx = context.getX(current);
+			int cy = context.getY(current);
+			if (cx == tx && cy == ty)
+				return buildPath(context, current, startNode);
+			context.setState(current, SearchContext.CLOSED);
+			expandedNodes++;
+			int parent = context.getParent(current);
+			if (parent < 0) {
+				// the start - all the directions
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						if (dx != 0 || dy != 0)
+							expandDirection(context, current, cx, cy, dx, dy, tx, ty);
+					}
+				}
+				continue;
+			}
+			int dx = Integer.signum(cx - context.getX(parent));
+			int dy = Integer.signum(cy - context.getY(parent));
+			if (dx != 0 && dy != 0) {
+				// diagonal - keep going and try both its straight components
+				expandDirection(context, current, cx, cy, dx, dy, tx, ty);
+				expandDirection(context, current, cx, cy, dx, 0, tx, ty);
+				expandDirection(context, current, cx, cy, 0, dy, tx, ty);
+			} else {
+				// straight - keep going, turn aside or go diagonally around the obstacles passed by
+				int sideX = dy;
+				int sideY = dx;
+				expandDirection(context, current, cx, cy, dx, dy, tx, ty);
+				expandDirection(context, current, cx, cy, sideX, sideY, tx, ty);
+				expandDirection(context, current, cx, cy, -sideX, -sideY, tx, ty);
+				expandDirection(context, current, cx, cy, dx + sideX, dy + sideY, tx, ty);
+				expandDirection(context, current, cx, cy, dx - sideX, dy - sideY, tx, ty);
+			}
+		}
+		return null;
+	}
+	
+	private void expandDirection(SearchContext context, int current, int cx, int cy, int dx, int dy, int tx, int ty) {
+		int jumpPoint = jump(context, cx + dx, cy + dy, dx, dy, tx, ty);
+		if (jumpPoint < 0)
+			return;
+		int x = context.getX(jumpPoint);
+		int y = context.getY(jumpPoint);
+		int steps = Math.max(Math.abs(x - cx), Math.abs(y - cy));
+		float newCost = context.getCost(current) + steps * getMovementCost(0, 0, dx, dy);
+		byte state = context.getState(jumpPoint);
+		if (state == SearchContext.CLOSED || newCost >= context.getCost(jumpPoint))
+			return;
+		context.setCost(jumpPoint, newCost);
+		context.setHeuristic(jumpPoint, getHeuristicCost(x, y, tx, ty));
+		context.setParent(jumpPoint, current);
+		if (state == SearchContext.OPEN) {
+			context.getOpen().update(jumpPoint);
+		} else {
+			context.setState(jumpPoint, SearchContext.OPEN);
+			context.getOpen().add(jumpPoint);
+		}
+	}
+	
+	/**
+	 * Go from (x - dx, y - dy) in the direction as long as there is nothing interesting on the way
+	 * @return the node of the next jump point: the target, a cell with a neighbour reachable
+	 * optimally only through it, or a diagonal cell with a jump point straight from it; -1 if the
+	 * way is blocked
+	 */
+	private int jump(SearchContext context, int x, int y, int dx, int dy, int tx, int ty) {
+		while (isValidMove(x - dx, y - dy, x, y)) {
+			if (x == tx && y == ty)
+				return context.index(x, y);
+			if (dx != 0 && dy != 0) {
+				if (jump(context, x + dx, y, dx, 0, tx, ty) >= 0 || jump(context, x, y + dy, 0, dy, tx, ty) >= 0)
+					return context.index(x, y);
+			} else if (dx != 0) {
+				// a side cell which couldn't be entered diagonally from the previous cell
+				if ((free(x, y - 1) && !free(x - dx, y - 1)) || (free(x, y + 1) && !free(x - dx, y + 1)))
+					return context.index(x, y);
+			} else {
+				if ((free(x - 1, y) && !free(x - 1, y - dy)) || (free(x + 1, y) && !free(x + 1, y - dy)))
+					return context.index(x, y);
+			}
+			x += dx;
+			y += dy;
+		}
+		return -1;
+	}
+	
+	private boolean free(int x, int y) {
+		return isValidLocation(x, y, x, y);
+	}
+	
+	/**
+	 * Fill in the cells between the jump points
+	 */
+	private Path buildPath(SearchContext context, int target, int startNode) {
+		Path path = new Path();
+		int node = target;
+		while (node != startNode) {
+			int parent = context.getParent(node);
+			int x = context.getX(node);
+			int y = context.getY(node);
+			int px = context.getX(parent);
+			int py = context.getY(parent);
+			int dx = Integer.signum(px - x);
+			int dy = Integer.signum(py - y);
+			for (; x != px || y != py; x += dx, y += dy) {
+				path.prependStep(x, y);
+			}
+			node = parent;
+		}
+		path.prependStep(context.getX(startNode), context.getY(startNode));
+		return path;
+	}
+}
@@ -59,6 +59,15 @@ public class Path {
 		steps.add(0, new Step(x, y));
 	}
 	
+	/**
+	 * Append a step to the path.
+	 * @param x The x coordinate of the new step
+	 * @param y The y coordinate of the new step
+	 */
+	public void appendStep(int x, int y) {
+		steps.add(new Step(x, y));
+	}
+	
 	/**
 	 * Check if this path contains the given step
 	 * @param x The x coordinate of the step to check for
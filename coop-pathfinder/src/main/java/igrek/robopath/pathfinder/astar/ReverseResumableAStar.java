@@ -0,0 +1,204 @@
+package igrek.robopath.pathfinder.astar;
+
+import java.util.Arrays;
+
+import igrek.robopath.common.IndexedIntHeap;
+import igrek.robopath.common.TileMap;
+
+/**
+ * Reverse Resumable A* (RRA*) - true distances to a single goal.
+ * The search runs backwards, from the goal towards the origin of the first query. It is paused as
+ * soon as the requested cell is closed and resumed when a cell not explored yet is requested, so
+ * every cell of the map is expanded at most once for all queries about this goal.
+ * The distance is the number of steps of the shortest (euclidean) path, with the same moves
+ * allowed as in {@link Astar2DPathFinder}.
+ */
+public class ReverseResumableAStar implements IndexedIntHeap.Nodes {
+	
+	private static final byte UNVISITED = 0;
+	private static final byte OPEN = 1;
+	private static final byte CLOSED = 2;
+	
+	private final TileMap map;
+	private final int width;
+	private final int height;
+	private final int goalX;
+	private final int goalY;
+	private int originX;
+	private int originY;
+	private boolean started = false;
+	
+	/** The path cost from the node to the goal (g) */
+	private final double[] cost;
+	/** The total estimated cost of the path through the node (f) */
+	private final double[] estimate;
+	/** Number of steps of the path from the node to the goal, -1 if not known */
+	private final int[] distance;
+	private final byte[] state;
+	/** Position of the node in the open list heap, -1 when not there */
+	private final int[] heapIndex;
+	private final IndexedIntHeap open = new IndexedIntHeap(this);
+	/** number of the nodes expanded so far */
+	private long expansions = 0;
+	
+	public ReverseResumableAStar(TileMap map, int goalX, int goalY) {
+		this.map = map;
+		this.width = map.getWidthInTiles();
+		this.height = map.getHeightInTiles();
+		this.goalX = goalX;
+		this.goalY = goalY;
+		int size = width * height;
+		cost = new double[size];
+		estimate = new double[size];
+		distance = new int[size];
+		state = new byte[size];
+		heapIndex = new int[size];
+		Arrays.fill(distance, -1);
+		Arrays.fill(heapIndex, -1);
+	}
+	
+	public int getGoalX() {
+		return goalX;
+	}
+	
+	public int getGoalY() {
+		return goalY;
+	}
+	
+	/**
+	 * @return number of the nodes expanded by all the queries so far
+	 */
+	public long getExpansions() {
+		return expansions;
+	}
+	
+	/**
+	 * @return approximate number of bytes taken by the search buffers
+	 */
+	public long getMemoryUsage() {
+		return getMemoryUsage(width, height);
+	}
+	
+	/**
+	 * @return approximate number of bytes taken by the search buffers for a map of the given size
+	 */
+	public static long getMemoryUsage(int width, int height) {
+		// cost, estimate, distance, state, heap index and the heap itself
+		return (long) width * height * (8 + 8 + 4 + 1 + 4 + 4);
+	}
+	
+	/**
+	 * Get the true distance from the cell to the goal, resuming the search when needed
+	 * @return number of steps of the shortest path to the goal, -1 if the goal is unreachable
+	 */
+	public int distance(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return -1;
+		int node = y * width + x;
+		if (state[node] == CLOSED)
+			return distance[node];
+		if (!started)
+			start(x, y);
+		return resume(node) ? distance[node] : -1;
+	}
+	
+	private void start(int x, int y) {
+		started = true;
+		originX = x;
+		originY = y;
+		// the goal is unreachable from everywhere when it's blocked
+		if (map.blocked(goalX, goalY))
+			return;
+		int goal = goalY * width + goalX;
+		cost[goal] = 0;
+		estimate[goal] = getHeuristicCost(goal);
+		distance[goal] = 0;
+		state[goal] = OPEN;
+		open.add(goal);
+	}
+	
+	/**
+	 * Continue the search until the node is closed
+	 * @return true if the node has been reached
+	 */
+	private boolean resume(int target) {
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			state[current] = CLOSED;
+			expansions++;
+			int cx = current % width;
+			int cy = current / width;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx == 0 && dy == 0)
+						continue;
+					expandPredecessor(current, cx, cy, cx + dx, cy + dy);
+				}
+			}
+			if (current == target)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Relax the node from which we could move to the current one
+	 */
+	private void expandPredecessor(int current, int cx, int cy, int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		if (!isValidMove(x, y, cx, cy))
+			return;
+		int node = y * width + x;
+		if (state[node] == CLOSED)
+			return;
+		double newCost = cost[current] + Math.hypot(cx - x, cy - y);
+		if (state[node] == UNVISITED) {
+			setCost(node, newCost, distance[current] + 1);
+			state[node] = OPEN;
+			open.add(node);
+		} else if (newCost < cost[node]) {
+			setCost(node, newCost, distance[current] + 1);
+			open.update(node);
+		}
+	}
+	
+	private void setCost(int node, double newCost, int steps) {
+		cost[node] = newCost;
+		estimate[node] = newCost + getHeuristicCost(node);
+		distance[node] = steps;
+	}
+	
+	/**
+	 * Check the forward move, the same way as {@link Astar2DPathFinder} does
+	 */
+	private boolean isValidMove(int sx, int sy, int x, int y) {
+		if (map.blocked(x, y))
+			return false;
+		// diagonal move not possible when one cell is blocked
+		if (sx != x && sy != y) {
+			if (map.blocked(sx, sy) || map.blocked(sx, y) || map.blocked(x, sy))
+				return false;
+		}
+		return true;
+	}
+	
+	private double getHeuristicCost(int node) {
+		return Math.hypot(node % width - originX, node / width - originY);
+	}
+	
+	@Override
+	public int compare(int node1, int node2) {
+		return Double.compare(estimate[node1], estimate[node2]);
+	}
+	
+	@Override
+	public int getHeapIndex(int node) {
+		return heapIndex[node];
+	}
+	
+	@Override
+	public void setHeapIndex(int node, int index) {
+		heapIndex[node] = index;
+	}
+}
@@ -0,0 +1,142 @@
+package igrek.robopath.pathfinder.astar;
+
+import java.util.Arrays;
+
+import igrek.robopath.common.IndexedIntHeap;
+
+/**
+ * Reusable buffers of the 2D A* search: node costs, parents and the open list, indexed by
+ * <code>y * width + x</code>. Every thread gets its own context, sized to the biggest searched map.
+ * Only the nodes touched by the previous search are reset, so the cost of preparing the context
+ * doesn't depend on the map size.
+ */
+class SearchContext implements IndexedIntHeap.Nodes {
+	
+	static final byte UNVISITED = 0;
+	static final byte OPEN = 1;
+	static final byte CLOSED = 2;
+	
+	private static final ThreadLocal<SearchContext> contexts = ThreadLocal.withInitial(SearchContext::new);
+	
+	private int width;
+	
+	/** The path cost for the node (g) */
+	private float[] cost = new float[0];
+	/** The heuristic cost of the node (h) */
+	private float[] heuristic = new float[0];
+	/** Index of the node we reached this one from, -1 if none */
+	private int[] parent = new int[0];
+	private byte[] state = new byte[0];
+	/** Position of the node in the open list heap, -1 when not there */
+	private int[] heapIndex = new int[0];
+	/** Nodes modified since the last reset */
+	private int[] touched = new int[64];
+	private int touchedCount = 0;
+	
+	private final IndexedIntHeap open = new IndexedIntHeap(this);
+	
+	/**
+	 * @return the context confined to the current thread, prepared for a new search
+	 */
+	static SearchContext acquire(int width, int height) {
+		SearchContext context = contexts.get();
+		context.prepare(width, height);
+		return context;
+	}
+	
+	private void prepare(int width, int height) {
+		open.clear();
+		if (width * height > cost.length) {
+			allocate(width * height);
+		} else {
+			for (int i = 0; i < touchedCount; i++) {
+				resetNode(touched[i]);
+			}
+		}
+		touchedCount = 0;
+		this.width = width;
+	}
+	
+	private void allocate(int size) {
+		cost = new float[size];
+		heuristic = new float[size];
+		parent = new int[size];
+		state = new byte[size];
+		heapIndex = new int[size];
+		for (int node = 0; node < size; node++) {
+			resetNode(node);
+		}
+	}
+	
+	private void resetNode(int node) {
+		cost[node] = Float.MAX_VALUE;
+		heuristic[node] = 0;
+		parent[node] = -1;
+		state[node] = UNVISITED;
+		heapIndex[node] = -1;
+	}
+	
+	IndexedIntHeap getOpen() {
+		return open;
+	}
+	
+	int index(int x, int y) {
+		return y * width + x;
+	}
+	
+	int getX(int node) {
+		return node % width;
+	}
+	
+	int getY(int node) {
+		return node / width;
+	}
+	
+	float getCost(int node) {
+		return cost[node];
+	}
+	
+	void setCost(int node, float value) {
+		if (cost[node] == Float.MAX_VALUE) { // touched for the first time since the reset
+			if (touchedCount == touched.length)
+				touched = Arrays.copyOf(touched, touchedCount * 2);
+			touched[touchedCount++] = node;
+		}
+		cost[node] = value;
+	}
+	
+	void setHeuristic(int node, float value) {
+		heuristic[node] = value;
+	}
+	
+	int getParent(int node) {
+		return parent[node];
+	}
+	
+	void setParent(int node, int value) {
+		parent[node] = value;
+	}
+	
+	byte getState(int node) {
+		return state[node];
+	}
+	
+	void setState(int node, byte value) {
+		state[node] = value;
+	}
+	
+	@Override
+	public int getHeapIndex(int node) {
+		return heapIndex[node];
+	}
+	
+	@Override
+	public void setHeapIndex(int node, int index) {
+		heapIndex[node] = index;
+	}
+	
+	@Override
+	public int compare(int node1, int node2) {
+		return Float.compare(heuristic[node1] + cost[node1], heuristic[node2] + cost[node2]);
+	}
+}
@@ -0,0 +1,409 @@
+package igrek.robopath.pathfinder.cbs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.whca.Path;
+import igrek.robopath.pathfinder.whca.PlanningBudget;
+
+/**
+ * Conflict-Based Search - plans the paths of all the agents at once, within the time window.
+ * Every agent is planned alone first, then the first conflict of the paths (the same cell, swapping
+ * the cells or cutting the corner occupied by another agent) is split into two alternatives, each
+ * one forbidding the conflict to one of the agents and planning it again.
+ * The constraint tree is searched best-first until the paths have no conflicts. Unlike the
+ * prioritized planning, no agent gives way by its priority, so the crowded areas where WHCA*
+ * deadlocks can be solved.
+ * <p>
+ * With the suboptimality above 1 it's Enhanced CBS (ECBS): both the agents' searches and the
+ * constraint tree search prefer fewer conflicts among the solutions costing at most the
+ * suboptimality times the lower bound, which usually needs far fewer nodes.
+ */
+public class CBSSolver {
+	
+	public static final int DEFAULT_MAX_NODES = 1000;
+	
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	
+	private final TileMap map;
+	private final int timeDimension;
+	private final LowLevelSearch lowLevel;
+	private double suboptimality = 1;
+	/** the most constraint tree nodes expanded by a single solving */
+	private int maxNodes = DEFAULT_MAX_NODES;
+	/** limit of the low-level expanded nodes and the time, null for no limit */
+	private PlanningBudget budget;
+	
+	private List<Point> starts;
+	private List<Point> targets;
+	private int expandedNodes;
+	private int generatedNodes;
+	private boolean interrupted;
+	private float solutionCost;
+	/** the agents at the cells of the current and the previous time - conflicts detection */
+	private int[] occupants;
+	private int[] previousOccupants;
+	/** the nodes to be expanded by the lowest cost possible, may contain the expanded ones (ECBS) */
+	private PriorityQueue<Node> open;
+	/** ECBS: the nodes costing at most the bound, by the fewest conflicts */
+	private PriorityQueue<Node> focal;
+	/** ECBS: the nodes costing more than the bound, by the cost */
+	private PriorityQueue<Node> pending;
+	/** ECBS: the suboptimality times the lowest cost possible of the open nodes */
+	private double bound;
+	
+	/**
+	 * @param map static obstacles, it mustn't be modified while solving
+	 * @param timeDimension the window: number of the steps of every path, including the start
+	 * @param distanceCache heuristic distance fields, may be shared with other path finders
+	 */
+	public CBSSolver(TileMap map, int timeDimension, DistanceFieldCache distanceCache) {
+		this.map = map;
+		this.timeDimension = timeDimension;
+		this.lowLevel = new LowLevelSearch(distanceCache);
+	}
+	
+	/**
+	 * @param suboptimality how many times the solution may cost more than the optimal one: 1 - CBS,
+	 *                      above 1 - ECBS
+	 */
+	public void setSuboptimality(double suboptimality) {
+		if (suboptimality < 1)
+			throw new IllegalArgumentException("suboptimality below 1: " + suboptimality);
+		this.suboptimality = suboptimality;
+	}
+	
+	public void setMaxNodes(int maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+	
+	/**
+	 * @param budget limit of the next solvings, null for no limit
+	 */
+	public void setBudget(PlanningBudget budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * @return number of the constraint tree nodes expanded by the last solving
+	 */
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+	/**
+	 * @return number of the constraint tree nodes created by the last solving
+	 */
+	public int getGeneratedNodes() {
+		return generatedNodes;
+	}
+	
+	/**
+	 * @return true if the last solving has been stopped due to the exhausted budget or nodes limit
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+	
+	/**
+	 * @return sum of the costs of the last solution paths
+	 */
+	public float getSolutionCost() {
+		return solutionCost;
+	}
+	
+	/**
+	 * Find the paths without conflicts
+	 * @param starts  the agents' positions
+	 * @param targets the agents' targets, null for staying around the start
+	 * @return paths of the agents with a step for every time of the window, null if there is no
+	 * solution or it hasn't been found within the limits
+	 */
+	public List<Path> solve(List<Point> starts, List<Point> targets) {
+		this.starts = starts;
+		this.targets = targets;
+		expandedNodes = 0;
+		generatedNodes = 0;
+		interrupted = false;
+		lowLevel.setBudget(budget);
+		occupants = new int[map.getWidthInTiles() * map.getHeightInTiles()];
+		previousOccupants = new int[occupants.length];
+		Arrays.fill(occupants, -1);
+		Arrays.fill(previousOccupants, -1);
+		
+		Node root = planRoot();
+		if (root == null)
+			return null;
+		open = new PriorityQueue<>(Comparator.comparingDouble((Node node) -> node.lowerBound)
+				.thenComparingInt(node -> node.conflicts)
+				.thenComparingInt(node -> node.id));
+		focal = new PriorityQueue<>(Comparator.comparingInt((Node node) -> node.conflicts)
+				.thenComparingInt(node -> node.id));
+		pending = new PriorityQueue<>(Comparator.comparingDouble((Node node) -> node.cost)
+				.thenComparingInt(node -> node.id));
+		bound = suboptimality * root.lowerBound;
+		addToOpen(root);
+		Node node;
+		while ((node = pollBest()) != null) {
+			if (node.conflict == null) {
+				solutionCost = node.cost;
+				logger.debug("CBS solved: " + starts.size() + " agents, " + expandedNodes + " nodes expanded, cost " + node.cost);
+				return Arrays.asList(node.paths);
+			}
+			if (expandedNodes >= maxNodes) {
+				interrupted = true;
+				break;
+			}
+			expandedNodes++;
+			for (Constraint constraint : new Constraint[]{node.conflict.firstConstraint(), node.conflict.secondConstraint()}) {
+				Node child = createChild(node, constraint);
+				if (interrupted)
+					break;
+				if (child != null)
+					addToOpen(child);
+			}
+			if (interrupted)
+				break;
+		}
+		logger.debug("CBS failed: " + starts.size() + " agents, " + expandedNodes + " nodes expanded" + (interrupted ? " - limit reached" : ""));
+		return null;
+	}
+	
+	private void addToOpen(Node node) {
+		open.add(node);
+		if (suboptimality <= 1)
+			return;
+		if (node.cost <= bound) {
+			focal.add(node);
+		} else {
+			pending.add(node);
+		}
+	}
+	
+	/**
+	 * Take the node of the lowest cost - ties broken by fewer conflicts. When suboptimal, take the
+	 * one with the fewest conflicts of the nodes within the bound. The focal list follows the bound
+	 * as the lowest cost of the open nodes changes, the expanded nodes are skipped in the open list.
+	 * @return null if there are no more nodes
+	 */
+	private Node pollBest() {
+		if (suboptimality <= 1)
+			return open.poll();
+		while (!open.isEmpty() && open.peek().expanded) {
+			open.poll();
+		}
+		if (open.isEmpty())
+			return null;
+		double newBound = suboptimality * open.peek().lowerBound;
+		if (newBound > bound) {
+			bound = newBound;
+			while (!pending.isEmpty() && pending.peek().cost <= bound) {
+				Node node = pending.poll();
+				if (!node.expanded)
+					focal.add(node);
+			}
+		} else if (newBound < bound) {
+			// rarely - the lowest cost possible of a child may be below the parent's
+			bound = newBound;
+			for (Iterator<Node> it = focal.iterator(); it.hasNext(); ) {
+				Node node = it.next();
+				if (node.cost > bound) {
+					it.remove();
+					pending.add(node);
+				}
+			}
+		}
+		Node best = focal.poll();
+		if (best == null)
+			best = open.poll();
+		best.expanded = true;
+		return best;
+	}
+	
+	/**
+	 * Plan every agent without constraints, avoiding the paths of the agents planned before
+	 */
+	private Node planRoot() {
+		int agents = starts.size();
+		Node root = new Node(null, null, agents, generatedNodes++);
+		int[] occupancy = new int[map.getWidthInTiles() * map.getHeightInTiles() * timeDimension];
+		ConstraintTable noConstraints = new ConstraintTable(map, timeDimension);
+		for (int agent = 0; agent < agents; agent++) {
+			if (!planAgent(root, agent, noConstraints, occupancy))
+				return null;
+			addOccupancy(occupancy, root.paths[agent], 1);
+		}
+		detectConflicts(root);
+		return root;
+	}
+	
+	private Node createChild(Node parent, Constraint constraint) {
+		int agent = constraint.getAgent();
+		Node child = new Node(parent, constraint, parent.paths.length, generatedNodes++);
+		System.arraycopy(parent.paths, 0, child.paths, 0, parent.paths.length);
+		System.arraycopy(parent.costs, 0, child.costs, 0, parent.costs.length);
+		System.arraycopy(parent.lowerBounds, 0, child.lowerBounds, 0, parent.lowerBounds.length);
+		ConstraintTable constraints = new ConstraintTable(map, timeDimension);
+		for (Node node = child; node.constraint != null; node = node.parent) {
+			if (node.constraint.getAgent() == agent)
+				constraints.addConstraint(node.constraint);
+		}
+		int[] occupancy = new int[map.getWidthInTiles() * map.getHeightInTiles() * timeDimension];
+		for (int other = 0; other < child.paths.length; other++) {
+			if (other != agent)
+				addOccupancy(occupancy, child.paths[other], 1);
+		}
+		if (!planAgent(child, agent, constraints, occupancy))
+			return null;
+		detectConflicts(child);
+		return child;
+	}
+	
+	/**
+	 * @return false if there is no path of the agent or the budget has been exhausted
+	 */
+	private boolean planAgent(Node node, int agent, ConstraintTable constraints, int[] occupancy) {
+		Point start = starts.get(agent);
+		Point target = targets.get(agent);
+		if (target == null)
+			target = start;
+		Path path = lowLevel.findPath(constraints, map, start.x, start.y, target.x, target.y, occupancy, suboptimality);
+		if (lowLevel.isInterrupted())
+			interrupted = true;
+		if (path == null)
+			return false;
+		node.paths[agent] = path;
+		node.costs[agent] = lowLevel.getPathCost();
+		node.lowerBounds[agent] = lowLevel.getLowerBound();
+		return true;
+	}
+	
+	private void addOccupancy(int[] occupancy, Path path, int count) {
+		for (int t = 0; t < path.getLength(); t++) {
+			occupancy[lowLevel.index(path.getX(t), path.getY(t), t)] += count;
+		}
+	}
+	
+	/**
+	 * Count the conflicts of the node's paths and find the earliest one
+	 */
+	private void detectConflicts(Node node) {
+		float cost = 0;
+		float lowerBound = 0;
+		for (int agent = 0; agent < node.paths.length; agent++) {
+			cost += node.costs[agent];
+			lowerBound += node.lowerBounds[agent];
+		}
+		node.cost = cost;
+		node.lowerBound = lowerBound;
+		node.conflicts = 0;
+		node.conflict = null;
+		int width = map.getWidthInTiles();
+		Path[] paths = node.paths;
+		for (int t = 0; t < timeDimension; t++) {
+			int[] swapped = previousOccupants;
+			previousOccupants = occupants;
+			occupants = swapped;
+			for (int i = 0; t >= 2 && i < paths.length; i++) {
+				occupants[paths[i].getY(t - 2) * width + paths[i].getX(t - 2)] = -1;
+			}
+			for (int agent = 0; agent < paths.length; agent++) {
+				Path path = paths[agent];
+				int x = path.getX(t);
+				int y = path.getY(t);
+				if (t > 0) {
+					// swapping with the agent which was at the entered cell
+					int x0 = path.getX(t - 1);
+					int y0 = path.getY(t - 1);
+					int other = previousOccupants[y * width + x];
+					if ((x0 != x || y0 != y) && other > agent && paths[other].getX(t) == x0 && paths[other].getY(t) == y0) {
+						node.conflicts++;
+						if (node.conflict == null)
+							node.conflict = Conflict.swap(agent, other, x0, y0, x, y, t - 1);
+					}
+				}
+			}
+			for (int agent = 0; agent < paths.length; agent++) {
+				Path path = paths[agent];
+				int cell = path.getY(t) * width + path.getX(t);
+				int other = occupants[cell];
+				if (other >= 0) {
+					node.conflicts++;
+					if (node.conflict == null)
+						node.conflict = Conflict.vertex(other, agent, path.getX(t), path.getY(t), t);
+				} else {
+					occupants[cell] = agent;
+				}
+			}
+			for (int agent = 0; t > 0 && agent < paths.length; agent++) {
+				// cutting the corner occupied by another agent
+				Path path = paths[agent];
+				int x0 = path.getX(t - 1);
+				int y0 = path.getY(t - 1);
+				int x = path.getX(t);
+				int y = path.getY(t);
+				if (x0 == x || y0 == y)
+					continue;
+				for (int corner = 0; corner < 2; corner++) {
+					int cornerX = corner == 0 ? x0 : x;
+					int cornerY = corner == 0 ? y : y0;
+					int other = occupants[cornerY * width + cornerX];
+					if (other >= 0) {
+						node.conflicts++;
+						if (node.conflict == null)
+							node.conflict = Conflict.corner(agent, other, x0, y0, x, y, cornerX, cornerY, t - 1);
+					}
+				}
+			}
+		}
+		// leave the buffers clean for the next node
+		for (Path path : paths) {
+			for (int t = Math.max(0, timeDimension - 2); t < timeDimension; t++) {
+				occupants[path.getY(t) * width + path.getX(t)] = -1;
+				previousOccupants[path.getY(t) * width + path.getX(t)] = -1;
+			}
+		}
+	}
+	
+	/**
+	 * Constraint tree node - the paths of all the agents under the constraints of the node and its
+	 * ancestors
+	 */
+	private static class Node {
+		
+		private final Node parent;
+		/** the constraint added by this node, null for the root */
+		private final Constraint constraint;
+		private final int id;
+		private final Path[] paths;
+		private final float[] costs;
+		/** the lowest costs of the agents' paths possible under the constraints */
+		private final float[] lowerBounds;
+		private float cost;
+		private float lowerBound;
+		private int conflicts;
+		/** the earliest conflict, null if there is none */
+		private Conflict conflict;
+		/** ECBS: taken from the focal list, still in the open one */
+		private boolean expanded;
+		
+		Node(Node parent, Constraint constraint, int agents, int id) {
+			this.parent = parent;
+			this.constraint = constraint;
+			this.id = id;
+			this.paths = new Path[agents];
+			this.costs = new float[agents];
+			this.lowerBounds = new float[agents];
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package igrek.robopath.pathfinder.cbs;
+
+/**
+ * Two agents at the same cell at the same time, swapping their cells between t and t + 1, or one
+ * of them cutting the corner occupied by the other one with a diagonal move
+ */
+final class Conflict {
+	
+	private enum Kind {
+		VERTEX, SWAP, CORNER
+	}
+	
+	private final Kind kind;
+	private final int agent1;
+	private final int agent2;
+	/** the cell of the conflict, or the cell left by the first agent when moving */
+	private final int x;
+	private final int y;
+	private final int t;
+	/** the cell entered by the first agent when moving */
+	private final int x2;
+	private final int y2;
+	/** the corner cut by the first agent, occupied by the second one at t + 1 */
+	private final int cornerX;
+	private final int cornerY;
+	
+	private Conflict(Kind kind, int agent1, int agent2, int x, int y, int t, int x2, int y2, int cornerX, int cornerY) {
+		this.kind = kind;
+		this.agent1 = agent1;
+		this.agent2 = agent2;
+		this.x = x;
+		this.y = y;
+		this.t = t;
+		this.x2 = x2;
+		this.y2 = y2;
+		this.cornerX = cornerX;
+		this.cornerY = cornerY;
+	}
+	
+	static Conflict vertex(int agent1, int agent2, int x, int y, int t) {
+		return new Conflict(Kind.VERTEX, agent1, agent2, x, y, t, x, y, x, y);
+	}
+	
+	/**
+	 * the first agent moves from (x, y) to (x2, y2) at time t, the second one the opposite way
+	 */
+	static Conflict swap(int agent1, int agent2, int x, int y, int x2, int y2, int t) {
+		return new Conflict(Kind.SWAP, agent1, agent2, x, y, t, x2, y2, x2, y2);
+	}
+	
+	/**
+	 * the first agent moves diagonally from (x, y) to (x2, y2) at time t, the second one is at the
+	 * corner (cornerX, cornerY) at time t + 1 - the same rule as the reservations of WHCA*
+	 */
+	static Conflict corner(int agent1, int agent2, int x, int y, int x2, int y2, int cornerX, int cornerY, int t) {
+		return new Conflict(Kind.CORNER, agent1, agent2, x, y, t, x2, y2, cornerX, cornerY);
+	}
+	
+	/**
+	 * @return constraint resolving the conflict for the first agent
+	 */
+	Constraint firstConstraint() {
+		if (kind == Kind.VERTEX)
+			return Constraint.vertex(agent1, x, y, t);
+		return Constraint.move(agent1, x, y, x2, y2, t);
+	}
+	
+	/**
+	 * @return constraint resolving the conflict for the second agent
+	 */
+	Constraint secondConstraint() {
+		switch (kind) {
+			case SWAP:
+				return Constraint.move(agent2, x2, y2, x, y, t);
+			case CORNER:
+				return Constraint.vertex(agent2, cornerX, cornerY, t + 1);
+			default:
+				return Constraint.vertex(agent2, x, y, t);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		switch (kind) {
+			case SWAP:
+				return "agents " + agent1 + ", " + agent2 + " swapping (" + x + ", " + y + ") <-> (" + x2 + ", " + y2 + ") at " + t;
+			case CORNER:
+				return "agent " + agent1 + " moving (" + x + ", " + y + ") -> (" + x2 + ", " + y2 + ") at " + t + " past agent " + agent2 + " at (" + cornerX + ", " + cornerY + ")";
+			default:
+				return "agents " + agent1 + ", " + agent2 + " at (" + x + ", " + y + ", " + t + ")";
+		}
+	}
+}
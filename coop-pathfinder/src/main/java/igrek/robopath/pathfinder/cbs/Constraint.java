@@ -0,0 +1,69 @@
+package igrek.robopath.pathfinder.cbs;
+
+/**
+ * Restriction of a single agent added by splitting a conflict: the agent can't be at (x, y) at
+ * time t, or - for a move constraint - it can't move from (x, y) at time t to (x2, y2) at t + 1
+ */
+public final class Constraint {
+	
+	private final int agent;
+	private final int x;
+	private final int y;
+	private final int t;
+	private final int x2;
+	private final int y2;
+	private final boolean move;
+	
+	private Constraint(int agent, int x, int y, int t, int x2, int y2, boolean move) {
+		this.agent = agent;
+		this.x = x;
+		this.y = y;
+		this.t = t;
+		this.x2 = x2;
+		this.y2 = y2;
+		this.move = move;
+	}
+	
+	public static Constraint vertex(int agent, int x, int y, int t) {
+		return new Constraint(agent, x, y, t, x, y, false);
+	}
+	
+	public static Constraint move(int agent, int x, int y, int x2, int y2, int t) {
+		return new Constraint(agent, x, y, t, x2, y2, true);
+	}
+	
+	public int getAgent() {
+		return agent;
+	}
+	
+	public int getX() {
+		return x;
+	}
+	
+	public int getY() {
+		return y;
+	}
+	
+	public int getT() {
+		return t;
+	}
+	
+	public int getX2() {
+		return x2;
+	}
+	
+	public int getY2() {
+		return y2;
+	}
+	
+	public boolean isMove() {
+		return move;
+	}
+	
+	@Override
+	public String toString() {
+		if (move)
+			return "agent " + agent + ": !(" + x + ", " + y + ") -> (" + x2 + ", " + y2 + ") at " + t;
+		return "agent " + agent + ": !(" + x + ", " + y + ", " + t + ")";
+	}
+}
@@ -0,0 +1,91 @@
+package igrek.robopath.pathfinder.cbs;
+
+import igrek.robopath.common.LongIntHashMap;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.whca.Reservations;
+import igrek.robopath.pathfinder.whca.ReservationsView;
+
+/**
+ * Constraints of a single agent in the form of reservations - the cells it mustn't occupy at given
+ * times and the moves it mustn't make. Only the constraints are stored, so the table is cheap to
+ * build for every low-level search. A forbidden move is kept as the reservation of the opposite
+ * move (the one it would swap with), as the space-time search checks the moves that way.
+ */
+class ConstraintTable implements ReservationsView {
+	
+	private static final int COORDINATE_BITS = 19;
+	private static final int TIME_BITS = 20;
+	private static final int MAX_COORDINATE = (1 << COORDINATE_BITS) - 1;
+	private static final int MAX_TIME = (1 << TIME_BITS) - 1;
+	private static final int MOVE_SHIFT = 2 * COORDINATE_BITS + TIME_BITS;
+	
+	private final TileMap map;
+	private final int width;
+	private final int height;
+	private final int timeDimension;
+	
+	/** forbidden (x, y, t) */
+	private final LongIntHashMap cells = new LongIntHashMap();
+	/** reserved moves by packed (x, y, t) of their start and the move code - many per cell */
+	private final LongIntHashMap moves = new LongIntHashMap();
+	
+	ConstraintTable(TileMap map, int timeDimension) {
+		this.map = map;
+		this.width = map.getWidthInTiles();
+		this.height = map.getHeightInTiles();
+		this.timeDimension = timeDimension;
+		if (width > MAX_COORDINATE || height > MAX_COORDINATE || timeDimension > MAX_TIME)
+			throw new IllegalArgumentException("constraint table dimensions too big: " + width + "x" + height + "x" + timeDimension);
+	}
+	
+	private static long key(int x, int y, int t) {
+		return ((long) t << (2 * COORDINATE_BITS)) | ((long) y << COORDINATE_BITS) | x;
+	}
+	
+	/**
+	 * Forbid the agent to be at the cell at time t or to make the move
+	 */
+	void addConstraint(Constraint constraint) {
+		if (constraint.isMove()) {
+			// the opposite move reserved - the agent can't swap with it
+			addMove(constraint.getX2(), constraint.getY2(), constraint.getX(), constraint.getY(), constraint.getT());
+		} else if (xytValid(constraint.getX(), constraint.getY(), constraint.getT())) {
+			cells.put(key(constraint.getX(), constraint.getY(), constraint.getT()), 1);
+		}
+	}
+	
+	private void addMove(int x, int y, int x2, int y2, int t) {
+		if (xytValid(x, y, t) && xytValid(x2, y2, 0))
+			moves.put(key(x, y, t) | ((long) Reservations.moveCode(x, y, x2, y2) << MOVE_SHIFT), 1);
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public int getTimeDimension() {
+		return timeDimension;
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y, int t) {
+		return map.blocked(x, y) || cells.containsKey(key(x, y, t));
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y) {
+		return map.blocked(x, y);
+	}
+	
+	@Override
+	public boolean isMoveBlocked(int x, int y, int x2, int y2, int t) {
+		return !moves.isEmpty() && moves.containsKey(key(x, y, t) | ((long) Reservations.moveCode(x, y, x2, y2) << MOVE_SHIFT));
+	}
+}
@@ -0,0 +1,371 @@
+package igrek.robopath.pathfinder.cbs;
+
+import java.util.Arrays;
+
+import igrek.robopath.common.IndexedIntHeap;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.astar.ReverseResumableAStar;
+import igrek.robopath.pathfinder.whca.Path;
+import igrek.robopath.pathfinder.whca.PlanningBudget;
+import igrek.robopath.pathfinder.whca.ReservationsView;
+
+/**
+ * Space-time A* of a single agent restricted by its constraints, with the same moves and costs as
+ * {@link igrek.robopath.pathfinder.whca.WHCAPathFinder}. The path always spans the whole time
+ * window: its cost is the cost of the moves plus the true distance from its last cell to the
+ * target, weighted so that a step closer to the target outweighs any moves in the window. An agent
+ * which can't reach the target in time gets as close as it can.
+ * <p>
+ * The search is a focal search: of the open nodes with F not greater than the suboptimality times
+ * the lowest F, the one with the fewest conflicts with the other agents' paths is expanded first.
+ * With the suboptimality of 1 it's plain A* breaking the ties of F by the conflicts.
+ */
+class LowLevelSearch {
+	
+	private static final byte UNVISITED = 0;
+	private static final byte OPEN = 1;
+	private static final byte CLOSED = 2;
+	
+	private final DistanceFieldCache distanceCache;
+	private int width;
+	private int height;
+	private int timeDimension;
+	private int capacity = 0;
+	private int generation = 0;
+	
+	/** The path cost for the node (g) */
+	private float[] cost;
+	/** The heuristic cost of the node (h) */
+	private float[] heuristic;
+	/** Number of the other agents met on the way to the node */
+	private int[] conflicts;
+	private int[] parent;
+	/** Generation of the search in which the node was visited */
+	private int[] stamp;
+	private byte[] state;
+	/** Order of adding to the open list - earlier nodes win the ties */
+	private int[] sequence;
+	private int[] openIndex;
+	private int[] focalIndex;
+	private int[] pendingIndex;
+	private int openedCount;
+	
+	/** all the open nodes by F */
+	private final IndexedIntHeap open = new IndexedIntHeap(new IndexedIntHeap.Nodes() {
+		@Override
+		public int compare(int node1, int node2) {
+			return compareF(node1, node2);
+		}
+		
+		@Override
+		public int getHeapIndex(int node) {
+			return openIndex[node];
+		}
+		
+		@Override
+		public void setHeapIndex(int node, int index) {
+			openIndex[node] = index;
+		}
+	});
+	/** the open nodes within the suboptimality bound by the number of conflicts */
+	private final IndexedIntHeap focal = new IndexedIntHeap(new IndexedIntHeap.Nodes() {
+		@Override
+		public int compare(int node1, int node2) {
+			int cmp = Integer.compare(conflicts[node1], conflicts[node2]);
+			return cmp != 0 ? cmp : compareF(node1, node2);
+		}
+		
+		@Override
+		public int getHeapIndex(int node) {
+			return focalIndex[node];
+		}
+		
+		@Override
+		public void setHeapIndex(int node, int index) {
+			focalIndex[node] = index;
+		}
+	});
+	/** the open nodes above the suboptimality bound by F */
+	private final IndexedIntHeap pending = new IndexedIntHeap(new IndexedIntHeap.Nodes() {
+		@Override
+		public int compare(int node1, int node2) {
+			return compareF(node1, node2);
+		}
+		
+		@Override
+		public int getHeapIndex(int node) {
+			return pendingIndex[node];
+		}
+		
+		@Override
+		public void setHeapIndex(int node, int index) {
+			pendingIndex[node] = index;
+		}
+	});
+	/** F of the nodes allowed to the focal list */
+	private float bound;
+	
+	private ReservationsView constraints;
+	private TileMap map;
+	private ReverseResumableAStar distances;
+	/** number of the other agents at every (x, y, t), null if not counted */
+	private int[] occupancy;
+	private int targetX;
+	private int targetY;
+	/** cost of every step left to the target at the end of the window */
+	private float terminalWeight;
+	private PlanningBudget budget;
+	private boolean interrupted;
+	/** results of the last search */
+	private float pathCost;
+	private float lowerBound;
+	private int pathConflicts;
+	
+	LowLevelSearch(DistanceFieldCache distanceCache) {
+		this.distanceCache = distanceCache;
+	}
+	
+	/**
+	 * @param budget limit of the next searches, null for no limit
+	 */
+	void setBudget(PlanningBudget budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * @return true if the last search has been stopped due to the exhausted budget
+	 */
+	boolean isInterrupted() {
+		return interrupted;
+	}
+	
+	/**
+	 * @return cost of the last path found
+	 */
+	float getPathCost() {
+		return pathCost;
+	}
+	
+	/**
+	 * @return the lowest cost of the path possible under the constraints of the last search
+	 */
+	float getLowerBound() {
+		return lowerBound;
+	}
+	
+	/**
+	 * @return number of the other agents met on the last path found
+	 */
+	int getPathConflicts() {
+		return pathConflicts;
+	}
+	
+	int index(int x, int y, int t) {
+		return (t * height + y) * width + x;
+	}
+	
+	/**
+	 * @param constraints blocked cells and moves of the agent, their time dimension is the window
+	 * @param occupancy number of the other agents at every {@link #index(int, int, int)}, or null
+	 * @param suboptimality how many times the path may cost more than the optimal one, at least 1
+	 * @return the path with a step for every time of the window, null if there is no such path
+	 * or the budget has been exhausted
+	 */
+	Path findPath(ReservationsView constraints, TileMap map, int sx, int sy, int tx, int ty, int[] occupancy, double suboptimality) {
+		this.constraints = constraints;
+		this.map = map;
+		this.occupancy = occupancy;
+		interrupted = false;
+		reset(constraints.getWidth(), constraints.getHeight(), constraints.getTimeDimension());
+		distances = distanceCache.get(map, tx, ty);
+		if (distances.distance(sx, sy) < 0) {
+			// the target is out of reach - stay where it is
+			tx = sx;
+			ty = sy;
+			distances = distanceCache.get(map, tx, ty);
+		}
+		targetX = tx;
+		targetY = ty;
+		// more than the moves of the whole window may cost
+		terminalWeight = 2 * timeDimension;
+		if (timeDimension == 0 || constraints.isBlocked(sx, sy, 0))
+			return null;
+		
+		int startNode = index(sx, sy, 0);
+		visit(startNode);
+		cost[startNode] = 0;
+		heuristic[startNode] = getHeuristicCost(distances.distance(sx, sy), 0);
+		conflicts[startNode] = occupancy == null ? 0 : occupancy[startNode];
+		bound = (float) (suboptimality * getF(startNode));
+		addToOpen(startNode);
+		
+		int lastT = timeDimension - 1;
+		while (!open.isEmpty()) {
+			float minF = getF(open.first());
+			float newBound = (float) (suboptimality * minF);
+			if (newBound > bound) {
+				bound = newBound;
+				while (!pending.isEmpty() && getF(pending.first()) <= bound) {
+					focal.add(pending.poll());
+				}
+			}
+			int current = focal.first();
+			int ct = current / (width * height);
+			if (ct == lastT) {
+				pathCost = getF(current);
+				lowerBound = minF;
+				pathConflicts = conflicts[current];
+				return buildPath(current);
+			}
+			if (budget != null && !budget.expand()) {
+				interrupted = true;
+				return null;
+			}
+			focal.poll();
+			open.remove(current);
+			state[current] = CLOSED;
+			int cx = current % width;
+			int cy = (current / width) % height;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					expandNeighbour(current, cx, cy, cx + dx, cy + dy, ct + 1);
+				}
+			}
+		}
+		return null;
+	}
+	
+	private void expandNeighbour(int current, int cx, int cy, int x, int y, int t) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return;
+		if (constraints.isBlocked(x, y, t))
+			return;
+		// diagonal move not possible when one cell is blocked
+		if (x != cx && y != cy && (map.blocked(cx, y) || map.blocked(x, cy)))
+			return;
+		// forbidden move
+		if ((x != cx || y != cy) && constraints.isMoveBlocked(x, y, cx, cy, t - 1))
+			return;
+		int distance = distances.distance(x, y);
+		if (distance < 0)
+			return;
+		
+		int neighbour = index(x, y, t);
+		visit(neighbour);
+		float newCost = cost[current] + getMovementCost(cx, cy, x, y);
+		int newConflicts = conflicts[current] + (occupancy == null ? 0 : occupancy[neighbour]);
+		byte nodeState = state[neighbour];
+		if (nodeState != UNVISITED && (newCost > cost[neighbour] || (newCost == cost[neighbour] && newConflicts >= conflicts[neighbour])))
+			return;
+		cost[neighbour] = newCost;
+		heuristic[neighbour] = getHeuristicCost(distance, t);
+		conflicts[neighbour] = newConflicts;
+		parent[neighbour] = current;
+		if (nodeState == OPEN) {
+			sequence[neighbour] = openedCount++;
+			open.update(neighbour);
+			if (focal.contains(neighbour)) {
+				focal.update(neighbour);
+			} else if (getF(neighbour) <= bound) {
+				pending.remove(neighbour);
+				focal.add(neighbour);
+			} else {
+				pending.update(neighbour);
+			}
+		} else {
+			addToOpen(neighbour);
+		}
+	}
+	
+	private void addToOpen(int node) {
+		state[node] = OPEN;
+		sequence[node] = openedCount++;
+		open.add(node);
+		if (getF(node) <= bound) {
+			focal.add(node);
+		} else {
+			pending.add(node);
+		}
+	}
+	
+	private float getMovementCost(int x, int y, int x2, int y2) {
+		if (x == x2 && y == y2) { // staying in the same place is not recommended
+			if (x == targetX && y == targetY) // unless it's the goal
+				return 0;
+			return (float) 1.0 / width / height;
+		}
+		return (float) Math.hypot(x2 - x, y2 - y);
+	}
+	
+	/**
+	 * @param distance number of steps to the target
+	 * @return the lowest cost of the moves left in the window and the distance left at its end
+	 */
+	private float getHeuristicCost(int distance, int t) {
+		int stepsLeft = timeDimension - 1 - t;
+		if (distance <= stepsLeft)
+			return distance;
+		return stepsLeft + terminalWeight * (distance - stepsLeft);
+	}
+	
+	private float getF(int node) {
+		return cost[node] + heuristic[node];
+	}
+	
+	private int compareF(int node1, int node2) {
+		int cmp = Float.compare(getF(node1), getF(node2));
+		return cmp != 0 ? cmp : Integer.compare(sequence[node1], sequence[node2]);
+	}
+	
+	private Path buildPath(int target) {
+		Path path = new Path();
+		for (int node = target; node >= 0; node = parent[node]) {
+			path.prependStep(node % width, (node / width) % height, node / (width * height));
+		}
+		return path;
+	}
+	
+	/**
+	 * Prepare the nodes for a new search - the buffers are reused, the old nodes are recognized by
+	 * their generation
+	 */
+	private void reset(int width, int height, int timeDimension) {
+		this.width = width;
+		this.height = height;
+		this.timeDimension = timeDimension;
+		open.clear();
+		focal.clear();
+		pending.clear();
+		openedCount = 0;
+		int size = width * height * timeDimension;
+		if (size > capacity) {
+			capacity = size;
+			cost = new float[size];
+			heuristic = new float[size];
+			conflicts = new int[size];
+			parent = new int[size];
+			stamp = new int[size];
+			state = new byte[size];
+			sequence = new int[size];
+			openIndex = new int[size];
+			focalIndex = new int[size];
+			pendingIndex = new int[size];
+			generation = 1;
+		} else if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+	
+	private void visit(int node) {
+		if (stamp[node] != generation) {
+			stamp[node] = generation;
+			parent[node] = -1;
+			state[node] = UNVISITED;
+			openIndex[node] = -1;
+			focalIndex[node] = -1;
+			pendingIndex[node] = -1;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package igrek.robopath.pathfinder.hpa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cell of an entrance between two clusters - node of the abstract graph
+ */
+class AbstractNode {
+	
+	final int x;
+	final int y;
+	final int cluster;
+	/** to the other nodes of the cluster and to the other side of the entrances */
+	final List<Edge> edges = new ArrayList<>();
+	
+	/** state of the abstract search */
+	float cost;
+	AbstractNode parent;
+	int stamp;
+	boolean closed;
+	
+	AbstractNode(int x, int y, int cluster) {
+		this.x = x;
+		this.y = y;
+		this.cluster = cluster;
+	}
+	
+	boolean hasEntrances() {
+		for (Edge edge : edges) {
+			if (edge.border >= 0)
+				return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		return "(" + x + ", " + y + ")";
+	}
+	
+	static class Edge {
+		
+		final AbstractNode target;
+		final float cost;
+		/** the border crossed by the edge, -1 for the edges within the cluster */
+		final int border;
+		
+		Edge(AbstractNode target, float cost, int border) {
+			this.target = target;
+			this.cost = cost;
+			this.border = border;
+		}
+	}
+}
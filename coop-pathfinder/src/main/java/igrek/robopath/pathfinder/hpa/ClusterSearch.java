@@ -0,0 +1,155 @@
+package igrek.robopath.pathfinder.hpa;
+
+import java.util.Arrays;
+
+import igrek.robopath.common.IndexedIntHeap;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.Path;
+
+/**
+ * A* restricted to a rectangle of the map (a cluster) with the moves and costs of
+ * {@link igrek.robopath.pathfinder.astar.Astar2DPathFinder}. Without a target it's Dijkstra
+ * reaching all the cells of the rectangle. The buffers are indexed locally, so a search costs
+ * only as much as the rectangle.
+ */
+class ClusterSearch implements IndexedIntHeap.Nodes {
+	
+	private static final float DIAGONAL_COST = (float) Math.sqrt(2);
+	
+	private final TileMap map;
+	private int x0;
+	private int y0;
+	private int width;
+	private int height;
+	private int targetX;
+	private int targetY;
+	
+	private float[] cost;
+	private float[] heuristic;
+	private int[] parent;
+	private boolean[] closed;
+	private int[] heapIndex;
+	private final IndexedIntHeap open = new IndexedIntHeap(this);
+	
+	ClusterSearch(TileMap map, int maxSize) {
+		this.map = map;
+		int size = maxSize * maxSize;
+		cost = new float[size];
+		heuristic = new float[size];
+		parent = new int[size];
+		closed = new boolean[size];
+		heapIndex = new int[size];
+	}
+	
+	/**
+	 * Search from (sx, sy) within the rectangle
+	 * @param tx target x, -1 for reaching all the cells
+	 * @return true if the target has been reached (always true without the target)
+	 */
+	boolean search(int x0, int y0, int width, int height, int sx, int sy, int tx, int ty) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.width = width;
+		this.height = height;
+		this.targetX = tx;
+		this.targetY = ty;
+		int size = width * height;
+		Arrays.fill(cost, 0, size, Float.MAX_VALUE);
+		Arrays.fill(parent, 0, size, -1);
+		Arrays.fill(closed, 0, size, false);
+		Arrays.fill(heapIndex, 0, size, -1);
+		open.clear();
+		int start = index(sx, sy);
+		cost[start] = 0;
+		heuristic[start] = getHeuristicCost(sx, sy);
+		open.add(start);
+		while (!open.isEmpty()) {
+			int current = open.poll();
+			closed[current] = true;
+			int cx = x0 + current % width;
+			int cy = y0 + current / width;
+			if (cx == tx && cy == ty)
+				return true;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx != 0 || dy != 0)
+						expandNeighbour(current, cx, cy, cx + dx, cy + dy);
+				}
+			}
+		}
+		return tx < 0;
+	}
+	
+	private void expandNeighbour(int current, int cx, int cy, int x, int y) {
+		if (x < x0 || y < y0 || x >= x0 + width || y >= y0 + height)
+			return;
+		if (map.blocked(x, y))
+			return;
+		boolean diagonal = x != cx && y != cy;
+		// diagonal move not possible when one cell is blocked
+		if (diagonal && (map.blocked(cx, y) || map.blocked(x, cy)))
+			return;
+		int neighbour = index(x, y);
+		if (closed[neighbour])
+			return;
+		float newCost = cost[current] + (diagonal ? DIAGONAL_COST : 1);
+		if (newCost >= cost[neighbour])
+			return;
+		cost[neighbour] = newCost;
+		heuristic[neighbour] = getHeuristicCost(x, y);
+		parent[neighbour] = current;
+		if (heapIndex[neighbour] >= 0) {
+			open.update(neighbour);
+		} else {
+			open.add(neighbour);
+		}
+	}
+	
+	private float getHeuristicCost(int x, int y) {
+		if (targetX < 0)
+			return 0;
+		return octile(x, y, targetX, targetY);
+	}
+	
+	static float octile(int x, int y, int x2, int y2) {
+		int dx = Math.abs(x2 - x);
+		int dy = Math.abs(y2 - y);
+		return Math.max(dx, dy) + (DIAGONAL_COST - 1) * Math.min(dx, dy);
+	}
+	
+	private int index(int x, int y) {
+		return (y - y0) * width + (x - x0);
+	}
+	
+	/**
+	 * @return cost of the path to the cell of the rectangle found by the last search,
+	 * Float.MAX_VALUE if not reached
+	 */
+	float getCost(int x, int y) {
+		return cost[index(x, y)];
+	}
+	
+	/**
+	 * Prepend the cells of the last search's path leading to (x, y), without its start cell
+	 */
+	void prependPath(Path path, int x, int y) {
+		for (int node = index(x, y); parent[node] >= 0; node = parent[node]) {
+			path.prependStep(x0 + node % width, y0 + node / width);
+		}
+	}
+	
+	@Override
+	public int compare(int node1, int node2) {
+		return Float.compare(cost[node1] + heuristic[node1], cost[node2] + heuristic[node2]);
+	}
+	
+	@Override
+	public int getHeapIndex(int node) {
+		return heapIndex[node];
+	}
+	
+	@Override
+	public void setHeapIndex(int node, int index) {
+		heapIndex[node] = index;
+	}
+}
@@ -0,0 +1,419 @@
+package igrek.robopath.pathfinder.hpa;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.Path;
+
+/**
+ * Hierarchical path-finding A* (HPA*). The map is divided into square clusters. Every free stretch
+ * of the border between two clusters is an entrance, marked by a pair of cells (one or two pairs
+ * for the wide entrances). The entrance cells are the nodes of an abstract graph, connected across
+ * the borders and with the costs of the shortest paths within their clusters. A path is searched
+ * in the small abstract graph first and then refined with local searches within the clusters it
+ * passes. The paths are close to the shortest ones but not always the shortest.
+ * <p>
+ * The graph follows the changes of the map cells: only the changed clusters and their borders are
+ * rebuilt, before the next search. Not thread-safe.
+ */
+public class HierarchicalPathFinder {
+	
+	public static final int DEFAULT_CLUSTER_SIZE = 32;
+	/** entrances at least that wide get the transitions at both ends, narrower ones in the middle */
+	private static final int WIDE_ENTRANCE = 6;
+	private static final int RIGHT = 0;
+	private static final int DOWN = 1;
+	
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	
+	private final TileMap map;
+	private final int clusterSize;
+	private final int clustersX;
+	private final int clustersY;
+	private final List<List<AbstractNode>> clusterNodes = new ArrayList<>();
+	/** abstract nodes by their cell index */
+	private final Map<Integer, AbstractNode> nodes = new HashMap<>();
+	private final ClusterSearch search;
+	private final TileMap.CellChangeListener listener = (x, y, occupied) -> cellChanged(x, y);
+	/** borders (cluster * 2 + direction) and clusters to rebuild before the next search */
+	private final Set<Integer> dirtyBorders = new TreeSet<>();
+	private final Set<Integer> dirtyClusters = new TreeSet<>();
+	private int stamp;
+	private int expandedNodes;
+	
+	public HierarchicalPathFinder(TileMap map) {
+		this(map, DEFAULT_CLUSTER_SIZE);
+	}
+	
+	/**
+	 * Build the abstract graph of the map and start following its changes
+	 * @param clusterSize width and height of the clusters, at least 2
+	 */
+	public HierarchicalPathFinder(TileMap map, int clusterSize) {
+		if (clusterSize < 2)
+			throw new IllegalArgumentException("cluster size has to be at least 2: " + clusterSize);
+		long startTime = System.currentTimeMillis();
+		this.map = map;
+		this.clusterSize = clusterSize;
+		clustersX = (map.getWidthInTiles() + clusterSize - 1) / clusterSize;
+		clustersY = (map.getHeightInTiles() + clusterSize - 1) / clusterSize;
+		// big enough for the neighbouring clusters together
+		search = new ClusterSearch(map, 2 * clusterSize);
+		for (int cluster = 0; cluster < clustersX * clustersY; cluster++) {
+			clusterNodes.add(new ArrayList<>());
+		}
+		for (int cluster = 0; cluster < clustersX * clustersY; cluster++) {
+			buildBorder(cluster * 2 + RIGHT);
+			buildBorder(cluster * 2 + DOWN);
+		}
+		for (int cluster = 0; cluster < clustersX * clustersY; cluster++) {
+			connectCluster(cluster);
+		}
+		map.addChangeListener(listener);
+		logger.debug("abstract graph built: " + clustersX * clustersY + " clusters, " + nodes.size() + " nodes in " + (System
+				.currentTimeMillis() - startTime) + " ms");
+	}
+	
+	/**
+	 * Stop following the changes of the map
+	 */
+	public void dispose() {
+		map.removeChangeListener(listener);
+	}
+	
+	public TileMap getMap() {
+		return map;
+	}
+	
+	public int getClusterSize() {
+		return clusterSize;
+	}
+	
+	/**
+	 * @return number of the nodes of the abstract graph
+	 */
+	public int getAbstractNodesCount() {
+		repair();
+		return nodes.size();
+	}
+	
+	/**
+	 * @return number of the abstract nodes closed by the last search
+	 */
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+	/**
+	 * @return the path with a step for every cell on the way, null if there is no path, the target
+	 * is blocked or it's the start
+	 */
+	public Path findPath(int sx, int sy, int tx, int ty) {
+		expandedNodes = 0;
+		if (map.blocked(tx, ty))
+			return null;
+		if (sx == tx && sy == ty)
+			return null;
+		repair();
+		AbstractNode start = new AbstractNode(sx, sy, clusterOf(sx, sy));
+		AbstractNode goal = new AbstractNode(tx, ty, clusterOf(tx, ty));
+		Path nearPath = findNearPath(start, goal);
+		if (nearPath != null)
+			return nearPath;
+		// temporary edges of the start and the goal
+		searchCluster(start.cluster, sx, sy, -1, -1);
+		for (AbstractNode node : clusterNodes.get(start.cluster)) {
+			float cost = search.getCost(node.x, node.y);
+			if (cost < Float.MAX_VALUE)
+				start.edges.add(new AbstractNode.Edge(node, cost, -1));
+		}
+		if (start.cluster == goal.cluster && search.getCost(tx, ty) < Float.MAX_VALUE)
+			start.edges.add(new AbstractNode.Edge(goal, search.getCost(tx, ty), -1));
+		Map<AbstractNode, Float> toGoal = new IdentityHashMap<>();
+		searchCluster(goal.cluster, tx, ty, -1, -1);
+		for (AbstractNode node : clusterNodes.get(goal.cluster)) {
+			float cost = search.getCost(node.x, node.y);
+			if (cost < Float.MAX_VALUE)
+				toGoal.put(node, cost);
+		}
+		
+		if (!searchAbstract(start, goal, toGoal))
+			return null;
+		List<AbstractNode> abstractPath = new ArrayList<>();
+		for (AbstractNode node = goal; node != null; node = node.parent) {
+			abstractPath.add(node);
+		}
+		return refine(abstractPath);
+	}
+	
+	/**
+	 * Search directly within the rectangle of the start's and the goal's clusters, if they are
+	 * neighbours - the entrances would make the short paths much longer
+	 * @return the path or null if the clusters are not neighbours or the path leaves them
+	 */
+	private Path findNearPath(AbstractNode start, AbstractNode goal) {
+		int scx = start.cluster % clustersX;
+		int scy = start.cluster / clustersX;
+		int gcx = goal.cluster % clustersX;
+		int gcy = goal.cluster / clustersX;
+		if (Math.abs(scx - gcx) > 1 || Math.abs(scy - gcy) > 1)
+			return null;
+		int x0 = Math.min(scx, gcx) * clusterSize;
+		int y0 = Math.min(scy, gcy) * clusterSize;
+		int width = Math.min((Math.max(scx, gcx) + 1) * clusterSize, map.getWidthInTiles()) - x0;
+		int height = Math.min((Math.max(scy, gcy) + 1) * clusterSize, map.getHeightInTiles()) - y0;
+		if (!search.search(x0, y0, width, height, start.x, start.y, goal.x, goal.y))
+			return null;
+		Path path = new Path();
+		search.prependPath(path, goal.x, goal.y);
+		path.prependStep(start.x, start.y);
+		return path;
+	}
+	
+	/**
+	 * A* over the abstract graph
+	 * @return true if the goal has been reached
+	 */
+	private boolean searchAbstract(AbstractNode start, AbstractNode goal, Map<AbstractNode, Float> toGoal) {
+		stamp++;
+		PriorityQueue<Entry> open = new PriorityQueue<>();
+		relax(open, start, null, 0, goal);
+		while (!open.isEmpty()) {
+			Entry entry = open.poll();
+			AbstractNode node = entry.node;
+			if (node.closed || entry.cost != node.cost)
+				continue;
+			if (node == goal)
+				return true;
+			node.closed = true;
+			expandedNodes++;
+			for (AbstractNode.Edge edge : node.edges) {
+				relax(open, edge.target, node, node.cost + edge.cost, goal);
+			}
+			Float goalCost = toGoal.get(node);
+			if (goalCost != null)
+				relax(open, goal, node, node.cost + goalCost, goal);
+		}
+		return false;
+	}
+	
+	private void relax(PriorityQueue<Entry> open, AbstractNode node, AbstractNode parent, float cost, AbstractNode goal) {
+		if (node.stamp != stamp) {
+			node.stamp = stamp;
+			node.cost = Float.MAX_VALUE;
+			node.parent = null;
+			node.closed = false;
+		}
+		if (node.closed || cost >= node.cost)
+			return;
+		node.cost = cost;
+		node.parent = parent;
+		open.add(new Entry(node, cost, cost + ClusterSearch.octile(node.x, node.y, goal.x, goal.y)));
+	}
+	
+	/**
+	 * @param abstractPath the abstract nodes from the goal to the start
+	 * @return the cells of the whole path
+	 */
+	private Path refine(List<AbstractNode> abstractPath) {
+		Path path = new Path();
+		for (int i = 0; i < abstractPath.size() - 1; i++) {
+			AbstractNode to = abstractPath.get(i);
+			AbstractNode from = abstractPath.get(i + 1);
+			if (from.cluster != to.cluster) {
+				// crossing the border - the cells are neighbours
+				path.prependStep(to.x, to.y);
+			} else {
+				searchCluster(from.cluster, from.x, from.y, to.x, to.y);
+				search.prependPath(path, to.x, to.y);
+			}
+		}
+		AbstractNode start = abstractPath.get(abstractPath.size() - 1);
+		path.prependStep(start.x, start.y);
+		return path;
+	}
+	
+	private void cellChanged(int x, int y) {
+		int cx = x / clusterSize;
+		int cy = y / clusterSize;
+		int cluster = cy * clustersX + cx;
+		dirtyClusters.add(cluster);
+		// the cells at the edges of the cluster make up the entrances
+		if (x % clusterSize == clusterSize - 1 && cx + 1 < clustersX)
+			markBorder(cluster * 2 + RIGHT);
+		if (x % clusterSize == 0 && cx > 0)
+			markBorder((cluster - 1) * 2 + RIGHT);
+		if (y % clusterSize == clusterSize - 1 && cy + 1 < clustersY)
+			markBorder(cluster * 2 + DOWN);
+		if (y % clusterSize == 0 && cy > 0)
+			markBorder((cluster - clustersX) * 2 + DOWN);
+	}
+	
+	private void markBorder(int border) {
+		dirtyBorders.add(border);
+		dirtyClusters.add(border / 2);
+		dirtyClusters.add(neighbourCluster(border));
+	}
+	
+	/**
+	 * Rebuild the changed parts of the abstract graph
+	 */
+	private void repair() {
+		if (dirtyClusters.isEmpty())
+			return;
+		for (int border : dirtyBorders) {
+			removeBorder(border);
+			buildBorder(border);
+		}
+		for (int cluster : dirtyClusters) {
+			connectCluster(cluster);
+		}
+		logger.debug("abstract graph repaired: " + dirtyBorders.size() + " borders, " + dirtyClusters.size() + " clusters");
+		dirtyBorders.clear();
+		dirtyClusters.clear();
+	}
+	
+	private int neighbourCluster(int border) {
+		int cluster = border / 2;
+		return border % 2 == RIGHT ? cluster + 1 : cluster + clustersX;
+	}
+	
+	/**
+	 * Find the entrances of the border between the cluster and its right or lower neighbour
+	 */
+	private void buildBorder(int border) {
+		int cluster = border / 2;
+		int cx = cluster % clustersX;
+		int cy = cluster / clustersX;
+		boolean right = border % 2 == RIGHT;
+		if (right ? cx + 1 >= clustersX : cy + 1 >= clustersY)
+			return;
+		// cells of the border's first side: (x0 + i * stepX, y0 + i * stepY)
+		int x0 = right ? (cx + 1) * clusterSize - 1 : cx * clusterSize;
+		int y0 = right ? cy * clusterSize : (cy + 1) * clusterSize - 1;
+		int stepX = right ? 0 : 1;
+		int stepY = right ? 1 : 0;
+		int length = right ? Math.min(clusterSize, map.getHeightInTiles() - y0) : Math.min(clusterSize, map
+				.getWidthInTiles() - x0);
+		int runStart = -1;
+		for (int i = 0; i <= length; i++) {
+			int x = x0 + i * stepX;
+			int y = y0 + i * stepY;
+			boolean free = i < length && !map.blocked(x, y) && !map.blocked(x + stepY, y + stepX);
+			if (free && runStart < 0) {
+				runStart = i;
+			} else if (!free && runStart >= 0) {
+				int runEnd = i - 1;
+				if (runEnd - runStart + 1 >= WIDE_ENTRANCE) {
+					addTransition(border, x0 + runStart * stepX, y0 + runStart * stepY, stepY, stepX);
+					addTransition(border, x0 + runEnd * stepX, y0 + runEnd * stepY, stepY, stepX);
+				} else {
+					int middle = (runStart + runEnd) / 2;
+					addTransition(border, x0 + middle * stepX, y0 + middle * stepY, stepY, stepX);
+				}
+				runStart = -1;
+			}
+		}
+	}
+	
+	/**
+	 * Connect the cell with its neighbour on the other side of the border
+	 */
+	private void addTransition(int border, int x, int y, int dx, int dy) {
+		AbstractNode node1 = getNode(x, y, border / 2);
+		AbstractNode node2 = getNode(x + dx, y + dy, neighbourCluster(border));
+		node1.edges.add(new AbstractNode.Edge(node2, 1, border));
+		node2.edges.add(new AbstractNode.Edge(node1, 1, border));
+	}
+	
+	private AbstractNode getNode(int x, int y, int cluster) {
+		int cell = y * map.getWidthInTiles() + x;
+		AbstractNode node = nodes.get(cell);
+		if (node == null) {
+			node = new AbstractNode(x, y, cluster);
+			nodes.put(cell, node);
+			clusterNodes.get(cluster).add(node);
+		}
+		return node;
+	}
+	
+	/**
+	 * Remove the transitions of the border and the nodes left without any
+	 */
+	private void removeBorder(int border) {
+		int[] clusters = {border / 2, neighbourCluster(border)};
+		for (int cluster : clusters) {
+			if (cluster >= clustersX * clustersY)
+				continue;
+			Iterator<AbstractNode> iterator = clusterNodes.get(cluster).iterator();
+			while (iterator.hasNext()) {
+				AbstractNode node = iterator.next();
+				node.edges.removeIf(edge -> edge.border == border);
+				if (!node.hasEntrances()) {
+					iterator.remove();
+					nodes.remove(node.y * map.getWidthInTiles() + node.x);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Compute the edges between the nodes within the cluster
+	 */
+	private void connectCluster(int cluster) {
+		List<AbstractNode> clusterList = clusterNodes.get(cluster);
+		for (AbstractNode node : clusterList) {
+			node.edges.removeIf(edge -> edge.border < 0);
+		}
+		for (AbstractNode node : clusterList) {
+			searchCluster(cluster, node.x, node.y, -1, -1);
+			for (AbstractNode other : clusterList) {
+				float cost = search.getCost(other.x, other.y);
+				if (other != node && cost < Float.MAX_VALUE)
+					node.edges.add(new AbstractNode.Edge(other, cost, -1));
+			}
+		}
+	}
+	
+	private void searchCluster(int cluster, int sx, int sy, int tx, int ty) {
+		int x0 = (cluster % clustersX) * clusterSize;
+		int y0 = (cluster / clustersX) * clusterSize;
+		int width = Math.min(clusterSize, map.getWidthInTiles() - x0);
+		int height = Math.min(clusterSize, map.getHeightInTiles() - y0);
+		search.search(x0, y0, width, height, sx, sy, tx, ty);
+	}
+	
+	private int clusterOf(int x, int y) {
+		return (y / clusterSize) * clustersX + x / clusterSize;
+	}
+	
+	private static class Entry implements Comparable<Entry> {
+		
+		private final AbstractNode node;
+		/** cost of the node when added - the entry is out of date when the cost has changed */
+		private final float cost;
+		private final float f;
+		
+		Entry(AbstractNode node, float cost, float f) {
+			this.node = node;
+			this.cost = cost;
+			this.f = f;
+		}
+		
+		@Override
+		public int compareTo(Entry other) {
+			return Float.compare(f, other.f);
+		}
+	}
+}
@@ -0,0 +1,509 @@
+package igrek.robopath.pathfinder.pbs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.astar.DistanceOracle;
+import igrek.robopath.pathfinder.astar.ReverseResumableAStar;
+import igrek.robopath.pathfinder.whca.Path;
+import igrek.robopath.pathfinder.whca.PlanningBudget;
+import igrek.robopath.pathfinder.whca.ReservationTable;
+import igrek.robopath.pathfinder.whca.WHCAPathFinder;
+
+/**
+ * Priority-Based Search - prioritized planning which searches for the priorities instead of fixing
+ * them up front. Every agent is planned alone first. The first conflict of two agents is split
+ * into two alternatives, each one giving one of the agents the priority over the other. Then the
+ * lower agent and the agents below it, which collide with the paths of their higher agents, are
+ * planned again with {@link WHCAPathFinder} against the reservations of all their higher agents.
+ * The priority tree is searched depth-first, the cheaper alternative first, until the paths have
+ * no conflicts. Only the pairs of agents which have met get ordered.
+ */
+public class PBSSolver {
+	
+	public static final int DEFAULT_MAX_NODES = 1000;
+	
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	
+	private final TileMap map;
+	private final int timeDimension;
+	private final DistanceFieldCache distanceCache;
+	private final WHCAPathFinder pathFinder;
+	/** reservations of the higher agents' paths - released after every search */
+	private final ReservationTable reservations;
+	/** the most priority tree nodes expanded by a single solving */
+	private int maxNodes = DEFAULT_MAX_NODES;
+	
+	private List<Point> starts;
+	private List<Point> targets;
+	private int expandedNodes;
+	private int generatedNodes;
+	private boolean interrupted;
+	private float solutionCost;
+	/** the agents at the cells of the current and the previous time - conflicts detection */
+	private int[] occupants;
+	private int[] previousOccupants;
+	
+	/**
+	 * @param map static obstacles, it mustn't be modified while solving
+	 * @param timeDimension the window: number of the steps of every path, including the start
+	 * @param distanceCache heuristic distance fields, may be shared with other path finders
+	 */
+	public PBSSolver(TileMap map, int timeDimension, DistanceFieldCache distanceCache) {
+		this.map = map;
+		this.timeDimension = timeDimension;
+		this.distanceCache = distanceCache;
+		reservations = new ReservationTable(map.getWidthInTiles(), map.getHeightInTiles(), timeDimension);
+		map.foreach((x, y, occupied) -> {
+			if (occupied)
+				reservations.setBlocked(x, y);
+		});
+		pathFinder = new WHCAPathFinder(reservations, map, distanceCache);
+	}
+	
+	/**
+	 * @param distanceOracle precomputed distances of the map, or null to compute them on demand
+	 */
+	public void setDistanceOracle(DistanceOracle distanceOracle) {
+		pathFinder.setDistanceOracle(distanceOracle);
+	}
+	
+	public void setMaxNodes(int maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+	
+	/**
+	 * @param budget limit of the next solvings, null for no limit
+	 */
+	public void setBudget(PlanningBudget budget) {
+		pathFinder.setBudget(budget);
+	}
+	
+	/**
+	 * @return number of the priority tree nodes expanded by the last solving
+	 */
+	public int getExpandedNodes() {
+		return expandedNodes;
+	}
+	
+	/**
+	 * @return number of the priority tree nodes created by the last solving
+	 */
+	public int getGeneratedNodes() {
+		return generatedNodes;
+	}
+	
+	/**
+	 * @return true if the last solving has been stopped due to the exhausted budget or nodes limit
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+	
+	/**
+	 * @return sum of the costs of the last solution paths
+	 */
+	public float getSolutionCost() {
+		return solutionCost;
+	}
+	
+	/**
+	 * Find the paths without conflicts
+	 * @param starts  the agents' positions
+	 * @param targets the agents' targets, null for staying at the start
+	 * @return paths of the agents (an agent stays at the last step of its path till the end of the
+	 * window), null if there is no solution or it hasn't been found within the limits
+	 */
+	public List<Path> solve(List<Point> starts, List<Point> targets) {
+		this.starts = starts;
+		this.targets = new ArrayList<>(targets.size());
+		for (int agent = 0; agent < targets.size(); agent++) {
+			Point target = targets.get(agent);
+			this.targets.add(target != null ? target : starts.get(agent));
+		}
+		expandedNodes = 0;
+		generatedNodes = 0;
+		interrupted = false;
+		occupants = new int[map.getWidthInTiles() * map.getHeightInTiles()];
+		previousOccupants = new int[occupants.length];
+		Arrays.fill(occupants, -1);
+		Arrays.fill(previousOccupants, -1);
+		
+		Node root = planRoot();
+		Deque<Node> stack = new ArrayDeque<>();
+		if (root != null)
+			stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			if (node.conflicts == 0) {
+				solutionCost = node.cost;
+				logger.debug("PBS solved: " + starts.size() + " agents, " + expandedNodes + " nodes expanded, cost " + node.cost);
+				return Arrays.asList(node.paths);
+			}
+			if (expandedNodes >= maxNodes) {
+				interrupted = true;
+				break;
+			}
+			expandedNodes++;
+			Node first = createChild(node, node.conflictAgent1, node.conflictAgent2);
+			Node second = interrupted ? null : createChild(node, node.conflictAgent2, node.conflictAgent1);
+			if (interrupted)
+				break;
+			// the cheaper one goes on the top
+			if (first != null && second != null && second.cost < first.cost) {
+				Node swapped = first;
+				first = second;
+				second = swapped;
+			}
+			if (second != null)
+				stack.push(second);
+			if (first != null)
+				stack.push(first);
+		}
+		logger.debug("PBS failed: " + starts.size() + " agents, " + expandedNodes + " nodes expanded" + (interrupted ? " - limit reached" : ""));
+		return null;
+	}
+	
+	/**
+	 * Plan every agent alone
+	 */
+	private Node planRoot() {
+		int agents = starts.size();
+		Node root = new Node(null, -1, -1, agents);
+		generatedNodes++;
+		boolean[] noHigher = new boolean[agents];
+		for (int agent = 0; agent < agents; agent++) {
+			if (!planAgent(root, agent, noHigher))
+				return null;
+		}
+		detectConflicts(root);
+		return root;
+	}
+	
+	/**
+	 * Give the higher agent the priority over the lower one and plan again the agents it affects
+	 * @return null if the priorities would be cyclic or any affected agent can't avoid its higher
+	 * agents
+	 */
+	private Node createChild(Node parent, int higher, int lower) {
+		int agents = parent.paths.length;
+		Priorities priorities = new Priorities(agents, parent);
+		if (priorities.isHigher(lower, higher))
+			return null;
+		Node child = new Node(parent, higher, lower, agents);
+		generatedNodes++;
+		priorities.add(higher, lower);
+		System.arraycopy(parent.paths, 0, child.paths, 0, agents);
+		System.arraycopy(parent.costs, 0, child.costs, 0, agents);
+		boolean[] affected = priorities.lowerThan(lower);
+		affected[lower] = true;
+		for (int agent : priorities.topologicalOrder()) {
+			if (!affected[agent])
+				continue;
+			boolean[] higherAgents = priorities.higherThan(agent);
+			if (agent != lower && !collides(child.paths, agent, higherAgents))
+				continue;
+			if (!planAgent(child, agent, higherAgents) || collides(child.paths, agent, higherAgents))
+				return null;
+		}
+		detectConflicts(child);
+		return child;
+	}
+	
+	/**
+	 * Plan the agent against the reservations of the paths of its higher agents
+	 * @return false if there is no path or the budget has been exhausted
+	 */
+	private boolean planAgent(Node node, int agent, boolean[] higherAgents) {
+		for (int other = 0; other < higherAgents.length; other++) {
+			if (higherAgents[other])
+				reserve(node.paths[other], true);
+		}
+		Point start = starts.get(agent);
+		Point target = targets.get(agent);
+		Path path = pathFinder.findPath(start.x, start.y, target.x, target.y);
+		for (int other = 0; other < higherAgents.length; other++) {
+			if (higherAgents[other])
+				reserve(node.paths[other], false);
+		}
+		if (pathFinder.isInterrupted())
+			interrupted = true;
+		if (path == null)
+			return false;
+		node.paths[agent] = path;
+		node.costs[agent] = getPathCost(path, target);
+		return true;
+	}
+	
+	/**
+	 * Reserve or release the cells and the moves of the path, the last cell till the end of the
+	 * window
+	 */
+	private void reserve(Path path, boolean blocked) {
+		for (int t = 0; t < timeDimension; t++) {
+			int x = getX(path, t);
+			int y = getY(path, t);
+			if (blocked) {
+				reservations.setBlocked(x, y, t);
+			} else {
+				reservations.setFree(x, y, t);
+			}
+			if (t > 0 && (x != getX(path, t - 1) || y != getY(path, t - 1))) {
+				if (blocked) {
+					reservations.setMoveBlocked(getX(path, t - 1), getY(path, t - 1), x, y, t - 1);
+				} else {
+					reservations.setMoveFree(getX(path, t - 1), getY(path, t - 1), t - 1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the cost of the moves plus the distance left to the target, which outweighs the moves
+	 */
+	private float getPathCost(Path path, Point target) {
+		float cost = 0;
+		for (int i = 1; i < path.getLength(); i++) {
+			cost += (float) Math.hypot(path.getX(i) - path.getX(i - 1), path.getY(i) - path.getY(i - 1));
+		}
+		ReverseResumableAStar distances = distanceCache.get(map, target.x, target.y);
+		int distance = distances.distance(path.getX(path.getLength() - 1), path.getY(path.getLength() - 1));
+		if (distance > 0)
+			cost += 2 * timeDimension * distance;
+		return cost;
+	}
+	
+	private int getX(Path path, int t) {
+		return path.getX(Math.min(t, path.getLength() - 1));
+	}
+	
+	private int getY(Path path, int t) {
+		return path.getY(Math.min(t, path.getLength() - 1));
+	}
+	
+	/**
+	 * @return true if the agent's path has a conflict with the path of any of the given agents
+	 */
+	private boolean collides(Path[] paths, int agent, boolean[] others) {
+		Path path = paths[agent];
+		for (int other = 0; other < others.length; other++) {
+			if (!others[other])
+				continue;
+			Path otherPath = paths[other];
+			for (int t = 0; t < timeDimension; t++) {
+				int x = getX(path, t);
+				int y = getY(path, t);
+				int otherX = getX(otherPath, t);
+				int otherY = getY(otherPath, t);
+				if (x == otherX && y == otherY)
+					return true;
+				// swapping the cells
+				if (t > 0 && x == getX(otherPath, t - 1) && y == getY(otherPath, t - 1) && otherX == getX(path, t - 1) && otherY == getY(path, t - 1))
+					return true;
+				if (t > 0 && (cutsCorner(path, otherX, otherY, t) || cutsCorner(otherPath, x, y, t)))
+					return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return true if the path moves diagonally to time t past the cell (x, y) at one of its corners
+	 * - the move WHCA* doesn't allow when the corner is reserved
+	 */
+	private boolean cutsCorner(Path path, int x, int y, int t) {
+		int x0 = getX(path, t - 1);
+		int y0 = getY(path, t - 1);
+		int x1 = getX(path, t);
+		int y1 = getY(path, t);
+		if (x0 == x1 || y0 == y1)
+			return false;
+		return (x == x0 && y == y1) || (x == x1 && y == y0);
+	}
+	
+	/**
+	 * Count the conflicts of the node's paths and find the earliest one
+	 */
+	private void detectConflicts(Node node) {
+		float cost = 0;
+		for (float agentCost : node.costs) {
+			cost += agentCost;
+		}
+		node.cost = cost;
+		node.conflicts = 0;
+		int width = map.getWidthInTiles();
+		Path[] paths = node.paths;
+		for (int t = 0; t < timeDimension; t++) {
+			int[] swapped = previousOccupants;
+			previousOccupants = occupants;
+			occupants = swapped;
+			for (int i = 0; t >= 2 && i < paths.length; i++) {
+				occupants[getY(paths[i], t - 2) * width + getX(paths[i], t - 2)] = -1;
+			}
+			for (int agent = 0; t > 0 && agent < paths.length; agent++) {
+				Path path = paths[agent];
+				int x = getX(path, t);
+				int y = getY(path, t);
+				int x0 = getX(path, t - 1);
+				int y0 = getY(path, t - 1);
+				// swapping with the agent which was at the entered cell
+				int other = previousOccupants[y * width + x];
+				if ((x0 != x || y0 != y) && other > agent && getX(paths[other], t) == x0 && getY(paths[other], t) == y0)
+					addConflict(node, agent, other);
+			}
+			for (int agent = 0; agent < paths.length; agent++) {
+				int cell = getY(paths[agent], t) * width + getX(paths[agent], t);
+				if (occupants[cell] >= 0) {
+					addConflict(node, occupants[cell], agent);
+				} else {
+					occupants[cell] = agent;
+				}
+			}
+			for (int agent = 0; t > 0 && agent < paths.length; agent++) {
+				// cutting the corner occupied by another agent
+				Path path = paths[agent];
+				int x0 = getX(path, t - 1);
+				int y0 = getY(path, t - 1);
+				int x = getX(path, t);
+				int y = getY(path, t);
+				if (x0 == x || y0 == y)
+					continue;
+				int other = occupants[y * width + x0];
+				if (other < 0)
+					other = occupants[y0 * width + x];
+				if (other >= 0)
+					addConflict(node, agent, other);
+			}
+		}
+		// leave the buffers clean for the next node
+		for (Path path : paths) {
+			for (int t = Math.max(0, timeDimension - 2); t < timeDimension; t++) {
+				occupants[getY(path, t) * width + getX(path, t)] = -1;
+				previousOccupants[getY(path, t) * width + getX(path, t)] = -1;
+			}
+		}
+	}
+	
+	private void addConflict(Node node, int agent1, int agent2) {
+		if (node.conflicts++ == 0) {
+			node.conflictAgent1 = agent1;
+			node.conflictAgent2 = agent2;
+		}
+	}
+	
+	/**
+	 * Priority tree node - the paths of all the agents under the priorities of the node and its
+	 * ancestors
+	 */
+	private static class Node {
+		
+		private final Node parent;
+		/** the pair ordered by this node, -1 for the root */
+		private final int higher;
+		private final int lower;
+		private final Path[] paths;
+		private final float[] costs;
+		private float cost;
+		private int conflicts;
+		/** the agents of the earliest conflict */
+		private int conflictAgent1 = -1;
+		private int conflictAgent2 = -1;
+		
+		Node(Node parent, int higher, int lower, int agents) {
+			this.parent = parent;
+			this.higher = higher;
+			this.lower = lower;
+			this.paths = new Path[agents];
+			this.costs = new float[agents];
+		}
+	}
+	
+	/**
+	 * Partial order of the agents' priorities collected from the ordered pairs of the nodes
+	 */
+	private static class Priorities {
+		
+		private final List<List<Integer>> lowerAgents = new ArrayList<>();
+		private final List<List<Integer>> higherAgents = new ArrayList<>();
+		
+		Priorities(int agents, Node node) {
+			for (int agent = 0; agent < agents; agent++) {
+				lowerAgents.add(new ArrayList<>());
+				higherAgents.add(new ArrayList<>());
+			}
+			for (; node != null && node.higher >= 0; node = node.parent) {
+				add(node.higher, node.lower);
+			}
+		}
+		
+		void add(int higher, int lower) {
+			lowerAgents.get(higher).add(lower);
+			higherAgents.get(lower).add(higher);
+		}
+		
+		boolean isHigher(int higher, int lower) {
+			return lowerThan(higher)[lower];
+		}
+		
+		/**
+		 * @return flags of all the agents below the agent (not including it)
+		 */
+		boolean[] lowerThan(int agent) {
+			return reachable(agent, lowerAgents);
+		}
+		
+		/**
+		 * @return flags of all the agents above the agent (not including it)
+		 */
+		boolean[] higherThan(int agent) {
+			return reachable(agent, higherAgents);
+		}
+		
+		private boolean[] reachable(int agent, List<List<Integer>> edges) {
+			boolean[] reached = new boolean[edges.size()];
+			Deque<Integer> queue = new ArrayDeque<>(edges.get(agent));
+			while (!queue.isEmpty()) {
+				int next = queue.poll();
+				if (!reached[next]) {
+					reached[next] = true;
+					queue.addAll(edges.get(next));
+				}
+			}
+			return reached;
+		}
+		
+		/**
+		 * @return the agents ordered so that every agent comes after all its higher agents
+		 */
+		List<Integer> topologicalOrder() {
+			int agents = lowerAgents.size();
+			int[] inDegree = new int[agents];
+			for (List<Integer> lower : lowerAgents) {
+				for (int agent : lower) {
+					inDegree[agent]++;
+				}
+			}
+			List<Integer> order = new ArrayList<>(agents);
+			for (int agent = 0; agent < agents; agent++) {
+				if (inDegree[agent] == 0)
+					order.add(agent);
+			}
+			for (int i = 0; i < order.size(); i++) {
+				for (int lower : lowerAgents.get(order.get(i))) {
+					if (--inDegree[lower] == 0)
+						order.add(lower);
+				}
+			}
+			return order;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package igrek.robopath.pathfinder.whca;
+
+/**
+ * Limit of the planning work shared by the subsequent searches - a deadline and a number of the
+ * expanded nodes. The clock is read only every few expansions, so the deadline may be overrun by
+ * the time of expanding them. The work done in between the searches (like building the heuristics
+ * ahead or the reservation table) is not limited, it only counts towards the deadline.
+ */
+public class PlanningBudget {
+	
+	private static final int CLOCK_CHECK_INTERVAL = 64;
+	
+	/** System.nanoTime() of the deadline */
+	private final long deadline;
+	private final boolean timeLimited;
+	private final long maxExpansions;
+	private long expansions = 0;
+	private boolean exhausted = false;
+	
+	/**
+	 * @param timeLimit time for planning in nanoseconds, 0 - no limit
+	 * @param maxExpansions the most nodes to be expanded, 0 - no limit
+	 */
+	public PlanningBudget(long timeLimit, long maxExpansions) {
+		if (timeLimit < 0 || maxExpansions < 0)
+			throw new IllegalArgumentException("negative planning budget");
+		this.timeLimited = timeLimit > 0;
+		this.deadline = System.nanoTime() + timeLimit;
+		this.maxExpansions = maxExpansions;
+	}
+	
+	public static PlanningBudget ofMillis(long millis) {
+		return new PlanningBudget(millis * 1000000, 0);
+	}
+	
+	public static PlanningBudget ofExpansions(long maxExpansions) {
+		return new PlanningBudget(0, maxExpansions);
+	}
+	
+	/**
+	 * Count the next expanded node
+	 * @return false if the budget is exhausted and the node should not be expanded
+	 */
+	public boolean expand() {
+		if (exhausted)
+			return false;
+		if (maxExpansions > 0 && expansions >= maxExpansions) {
+			exhausted = true;
+			return false;
+		}
+		if (timeLimited && expansions % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - deadline >= 0) {
+			exhausted = true;
+			return false;
+		}
+		expansions++;
+		return true;
+	}
+	
+	/**
+	 * Count the nodes expanded by a search which can't be stopped (the heuristic), exhausting the
+	 * budget if it's overrun
+	 */
+	public void charge(long nodes) {
+		expansions += nodes;
+		if (maxExpansions > 0 && expansions >= maxExpansions)
+			exhausted = true;
+	}
+	
+	public boolean isExhausted() {
+		if (!exhausted && timeLimited && System.nanoTime() - deadline >= 0)
+			exhausted = true;
+		return exhausted;
+	}
+	
+	/**
+	 * @return number of the nodes expanded within this budget
+	 */
+	public long getExpansions() {
+		return expansions;
+	}
+}
@@ -0,0 +1,99 @@
+package igrek.robopath.pathfinder.whca;
+
+import java.util.Arrays;
+
+/**
+ * Read-only view of the reservations recording every query and its answer (the read set).
+ * A deterministic search gives the same path again as long as all the recorded queries
+ * have the same answers - it can be checked with {@link #isValid(ReservationsView)} after the
+ * reservations have been modified.
+ */
+public class RecordingReservations implements ReservationsView {
+	
+	private static final int COORDINATE_BITS = 19;
+	private static final int TIME_BITS = 20;
+	private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+	private static final int KIND_SHIFT = 2 * COORDINATE_BITS + TIME_BITS;
+	private static final int ANSWER_SHIFT = KIND_SHIFT + 4;
+	/** kinds of the queries: 0 - (x, y, t), from 1 to 9 - move code, 10 - blocked all the time */
+	private static final int ALL_THE_TIME = 10;
+	
+	private final ReservationsView source;
+	/** packed queries: x, y, t, kind and the answer */
+	private long[] reads = new long[256];
+	private int readsCount = 0;
+	
+	public RecordingReservations(ReservationsView source) {
+		this.source = source;
+	}
+	
+	private boolean record(int x, int y, int t, int kind, boolean answer) {
+		if (readsCount == reads.length)
+			reads = Arrays.copyOf(reads, readsCount * 2);
+		reads[readsCount++] = (x & COORDINATE_MASK) | ((y & COORDINATE_MASK) << COORDINATE_BITS) | ((t & TIME_MASK) << (2 * COORDINATE_BITS)) | ((long) kind << KIND_SHIFT) | (answer ? 1L << ANSWER_SHIFT : 0);
+		return answer;
+	}
+	
+	/**
+	 * @return true if all the recorded queries give the same answers on the reservations
+	 */
+	public boolean isValid(ReservationsView reservations) {
+		for (int i = 0; i < readsCount; i++) {
+			long read = reads[i];
+			int x = (int) (read & COORDINATE_MASK);
+			int y = (int) ((read >>> COORDINATE_BITS) & COORDINATE_MASK);
+			int t = (int) ((read >>> (2 * COORDINATE_BITS)) & TIME_MASK);
+			int kind = (int) ((read >>> KIND_SHIFT) & 0xf);
+			boolean answer = (read >>> ANSWER_SHIFT) != 0;
+			boolean current;
+			if (kind == 0) {
+				current = reservations.isBlocked(x, y, t);
+			} else if (kind == ALL_THE_TIME) {
+				current = reservations.isBlocked(x, y);
+			} else {
+				current = reservations.isMoveBlocked(x, y, x + (kind - 1) / 3 - 1, y + (kind - 1) % 3 - 1, t);
+			}
+			if (current != answer)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return number of the recorded queries
+	 */
+	public int getReadsCount() {
+		return readsCount;
+	}
+	
+	@Override
+	public int getWidth() {
+		return source.getWidth();
+	}
+	
+	@Override
+	public int getHeight() {
+		return source.getHeight();
+	}
+	
+	@Override
+	public int getTimeDimension() {
+		return source.getTimeDimension();
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y, int t) {
+		return record(x, y, t, 0, source.isBlocked(x, y, t));
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y) {
+		return record(x, y, 0, ALL_THE_TIME, source.isBlocked(x, y));
+	}
+	
+	@Override
+	public boolean isMoveBlocked(int x, int y, int x2, int y2, int t) {
+		return record(x, y, t, Reservations.moveCode(x, y, x2, y2), source.isMoveBlocked(x, y, x2, y2, t));
+	}
+}
@@ -1,87 +1,167 @@
 package igrek.robopath.pathfinder.whca;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-public class ReservationTable {
+/**
+ * Dense reservations - a bit for every (x, y, t) and the reserved move from every (x, y, t)
+ */
+public class ReservationTable implements Reservations {
 	
 	private int width;
 	private int height;
 	private int timeDimension;
 	
-	private boolean availability[][][];
+	/** number of words per cell */
+	private int cellWords;
+	/** mask of the time bits used in the last word of a cell */
+	private long lastWordMask;
+	/**
+	 * reserved (blocked) bit per (x, y, t) - all the time slots of a cell are in the consecutive words
+	 */
+	private long[] blocked;
+	/** number of words with the moves per cell */
+	private int cellMoveWords;
+	/**
+	 * code of the reserved move leaving (x, y) at t, 4 bits per (x, y, t) - 0 when not reserved
+	 */
+	private long[] moves;
+	/** cells blocked all the time (static obstacles), bit per (x, y) - fill the new time slots */
+	private long[] staticBlocked;
+	/**
+	 * the slot of time t = 0 - time axis is a circular buffer moved forward by {@link #advance()}
+	 */
+	private int timeOffset = 0;
 	
 	public ReservationTable(int width, int height, int timeDimension) {
 		this.width = width;
 		this.height = height;
 		this.timeDimension = timeDimension;
-		availability = new boolean[width][height][timeDimension];
-		clear();
-	}
-	
-	private void clear() {
-		for (int x = 0; x < width; x++) {
-			for (int y = 0; y < height; y++) {
-				for (int t = 0; t < timeDimension; t++) {
-					availability[x][y][t] = true;
-				}
-			}
-		}
+		cellWords = Math.max(1, (timeDimension + 63) >>> 6);
+		lastWordMask = timeDimension == 0 ? 0 : -1L >>> (cellWords * 64 - timeDimension);
+		blocked = new long[width * height * cellWords];
+		staticBlocked = new long[(width * height + 63) >>> 6];
+		cellMoveWords = Math.max(1, (timeDimension + 15) >>> 4);
+		moves = new long[width * height * cellMoveWords];
 	}
 	
+	@Override
 	public int getWidth() {
 		return width;
 	}
 	
+	@Override
 	public int getHeight() {
 		return height;
 	}
 	
+	@Override
 	public int getTimeDimension() {
 		return timeDimension;
 	}
 	
+	private int firstWord(int x, int y) {
+		return (y * width + x) * cellWords;
+	}
+	
+	private int slot(int t) {
+		int slot = t + timeOffset;
+		return slot >= timeDimension ? slot - timeDimension : slot;
+	}
+	
+	@Override
 	public boolean isBlocked(int x, int y, int t) {
-		return !availability[x][y][t];
+		int slot = slot(t);
+		return (blocked[firstWord(x, y) + (slot >>> 6)] & (1L << slot)) != 0;
 	}
 	
+	@Override
 	public boolean isBlocked(int x, int y) {
 		// is blocked all the time
-		for (int t = 0; t < timeDimension; t++) {
-			if (availability[x][y][t])
+		int word = firstWord(x, y);
+		int lastWord = word + cellWords - 1;
+		for (; word < lastWord; word++) {
+			if (blocked[word] != -1L)
 				return false;
 		}
-		return true;
+		return blocked[lastWord] == lastWordMask;
 	}
 	
+	@Override
 	public void setBlocked(int x, int y, int t) {
-		if (xytValid(x, y, t))
-			availability[x][y][t] = false;
+		if (xytValid(x, y, t)) {
+			int slot = slot(t);
+			blocked[firstWord(x, y) + (slot >>> 6)] |= 1L << slot;
+		}
 	}
 	
+	@Override
 	public void setBlocked(int x, int y) {
-		for (int t = 0; t < timeDimension; t++) {
-			setBlocked(x, y, t);
+		if (!xytValid(x, y, 0))
+			return;
+		int cell = y * width + x;
+		staticBlocked[cell >>> 6] |= 1L << cell;
+		int word = firstWord(x, y);
+		int lastWord = word + cellWords - 1;
+		for (; word < lastWord; word++) {
+			blocked[word] = -1L;
 		}
+		blocked[lastWord] = lastWordMask;
 	}
 	
-	public boolean xytValid(int x, int y, int t) {
-		return x >= 0 && y >= 0 && t >= 0 && x < width && y < height && t < timeDimension;
+	@Override
+	public void setFree(int x, int y, int t) {
+		if (!xytValid(x, y, t))
+			return;
+		int cell = y * width + x;
+		if ((staticBlocked[cell >>> 6] & (1L << cell)) != 0)
+			return;
+		int slot = slot(t);
+		blocked[firstWord(x, y) + (slot >>> 6)] &= ~(1L << slot);
 	}
 	
-	public void log() {
-		Logger logger = LoggerFactory.getLogger(this.getClass());
-		logger.debug("Reservation table:");
-		for (int t = 0; t < getTimeDimension(); t++) {
-			logger.debug("t = " + t);
-			for (int y = 0; y < getHeight(); y++) {
-				StringBuilder line = new StringBuilder("  ");
-				for (int x = 0; x < getWidth(); x++) {
-					line.append(isBlocked(x, y, t) ? "X" : ".");
-					line.append(" ");
-				}
-				logger.debug(line.toString());
+	@Override
+	public void setMoveBlocked(int x, int y, int x2, int y2, int t) {
+		if (xytValid(x, y, t) && xytValid(x2, y2, 0)) {
+			int slot = slot(t);
+			int word = (y * width + x) * cellMoveWords + (slot >>> 4);
+			int shift = (slot & 15) << 2;
+			moves[word] = (moves[word] & ~(0xfL << shift)) | ((long) Reservations.moveCode(x, y, x2, y2) << shift);
+		}
+	}
+	
+	@Override
+	public boolean isMoveBlocked(int x, int y, int x2, int y2, int t) {
+		int slot = slot(t);
+		long word = moves[(y * width + x) * cellMoveWords + (slot >>> 4)];
+		return ((word >>> ((slot & 15) << 2)) & 0xf) == Reservations.moveCode(x, y, x2, y2);
+	}
+	
+	@Override
+	public void setMoveFree(int x, int y, int t) {
+		if (xytValid(x, y, t)) {
+			int slot = slot(t);
+			moves[(y * width + x) * cellMoveWords + (slot >>> 4)] &= ~(0xfL << ((slot & 15) << 2));
+		}
+	}
+	
+	@Override
+	public void advance() {
+		if (timeDimension == 0)
+			return;
+		// the slot of t = 0 becomes the last one
+		int slot = timeOffset;
+		long bit = 1L << slot;
+		int word = slot >>> 6;
+		for (int cell = 0; cell < width * height; cell++, word += cellWords) {
+			if ((staticBlocked[cell >>> 6] & (1L << cell)) != 0) {
+				blocked[word] |= bit;
+			} else {
+				blocked[word] &= ~bit;
 			}
 		}
+		// moves from the dropped time
+		long moveMask = ~(0xfL << ((slot & 15) << 2));
+		for (word = slot >>> 4; word < moves.length; word += cellMoveWords) {
+			moves[word] &= moveMask;
+		}
+		timeOffset = slot + 1 == timeDimension ? 0 : slot + 1;
 	}
 }
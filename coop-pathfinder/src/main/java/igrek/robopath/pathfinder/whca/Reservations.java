@@ -0,0 +1,43 @@
+package igrek.robopath.pathfinder.whca;
+
+/**
+ * Space-time reservations of the cells, made by the planners and checked by {@link WHCAPathFinder}
+ */
+public interface Reservations extends ReservationsView {
+	
+	void setBlocked(int x, int y, int t);
+	
+	/**
+	 * block the cell all the time, including the time slots added by {@link #advance()}
+	 */
+	void setBlocked(int x, int y);
+	
+	/**
+	 * release the reservation of (x, y, t) - the cells blocked all the time stay blocked
+	 */
+	void setFree(int x, int y, int t);
+	
+	/**
+	 * reserve the move from (x, y) at time t to the neighbouring cell (x2, y2) at time t + 1
+	 */
+	void setMoveBlocked(int x, int y, int x2, int y2, int t);
+	
+	/**
+	 * release the move reserved from (x, y) at time t
+	 */
+	void setMoveFree(int x, int y, int t);
+	
+	/**
+	 * Move the time window one step forward: the reservations of t = 0 are dropped,
+	 * t = 1 becomes t = 0 and so on. The last time slot becomes free, except the cells blocked all
+	 * the time.
+	 */
+	void advance();
+	
+	/**
+	 * @return code of the move to the neighbouring cell, from 1 to 9 (waiting)
+	 */
+	static int moveCode(int x, int y, int x2, int y2) {
+		return (x2 - x + 1) * 3 + (y2 - y + 1) + 1;
+	}
+}
@@ -0,0 +1,49 @@
+package igrek.robopath.pathfinder.whca;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only space-time reservations of the cells, checked by {@link WHCAPathFinder}
+ */
+public interface ReservationsView {
+	
+	int getWidth();
+	
+	int getHeight();
+	
+	int getTimeDimension();
+	
+	boolean isBlocked(int x, int y, int t);
+	
+	/**
+	 * @return true if the cell is blocked all the time
+	 */
+	boolean isBlocked(int x, int y);
+	
+	/**
+	 * @return true if the move from (x, y) at time t to the neighbouring cell (x2, y2) at time t + 1
+	 * has been reserved
+	 */
+	boolean isMoveBlocked(int x, int y, int x2, int y2, int t);
+	
+	default boolean xytValid(int x, int y, int t) {
+		return x >= 0 && y >= 0 && t >= 0 && x < getWidth() && y < getHeight() && t < getTimeDimension();
+	}
+	
+	default void log() {
+		Logger logger = LoggerFactory.getLogger(this.getClass());
+		logger.debug("Reservation table:");
+		for (int t = 0; t < getTimeDimension(); t++) {
+			logger.debug("t = " + t);
+			for (int y = 0; y < getHeight(); y++) {
+				StringBuilder line = new StringBuilder("  ");
+				for (int x = 0; x < getWidth(); x++) {
+					line.append(isBlocked(x, y, t) ? "X" : ".");
+					line.append(" ");
+				}
+				logger.debug(line.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package igrek.robopath.pathfinder.whca;
+
+import java.util.Arrays;
+
+import igrek.robopath.common.IndexedIntHeap;
+
+/**
+ * Nodes of the space-time search kept in flat primitive arrays, indexed by
+ * <code>(t * height + y) * width + x</code>. The arrays are reused by subsequent searches and
+ * grow only when a bigger space is requested. Instead of clearing them, every search bumps the
+ * generation counter - a node with an outdated stamp is treated as never visited.
+ */
+class SearchSpace implements IndexedIntHeap.Nodes {
+	
+	static final byte UNVISITED = 0;
+	static final byte OPEN = 1;
+	static final byte CLOSED = 2;
+	
+	private int width;
+	private int height;
+	private int timeDimension;
+	private int capacity = 0;
+	
+	/** The path cost for the node (g) */
+	private float[] cost;
+	/** The heuristic cost of the node (h) */
+	private float[] heuristic;
+	/** Index of the node we reached this one from, -1 if none */
+	private int[] parent;
+	/** Generation of the search in which the node was visited */
+	private int[] stamp;
+	private byte[] state;
+	/** Position of the node in the open list heap, -1 when not there */
+	private int[] heapIndex;
+	/** Order of adding to the open list - earlier nodes win the ties of F */
+	private int[] sequence;
+	/** Order of moving to the closed list */
+	private int[] closedOrder;
+	
+	private int generation = 0;
+	private float initialCost;
+	
+	/**
+	 * Prepare the nodes for a new search, all of them become unvisited
+	 * @param initialCost path cost of unvisited nodes
+	 */
+	void reset(int width, int height, int timeDimension, float initialCost) {
+		this.width = width;
+		this.height = height;
+		this.timeDimension = timeDimension;
+		this.initialCost = initialCost;
+		int size = width * height * timeDimension;
+		if (size > capacity) {
+			allocate(size);
+		} else if (++generation == Integer.MAX_VALUE) {
+			// stamps would be ambiguous after overflow
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+	
+	private void allocate(int size) {
+		capacity = size;
+		cost = new float[size];
+		heuristic = new float[size];
+		parent = new int[size];
+		stamp = new int[size];
+		state = new byte[size];
+		heapIndex = new int[size];
+		sequence = new int[size];
+		closedOrder = new int[size];
+		generation = 1;
+	}
+	
+	int index(int x, int y, int t) {
+		return (t * height + y) * width + x;
+	}
+	
+	int getX(int node) {
+		return node % width;
+	}
+	
+	int getY(int node) {
+		return (node / width) % height;
+	}
+	
+	int getT(int node) {
+		return node / (width * height);
+	}
+	
+	int getTimeDimension() {
+		return timeDimension;
+	}
+	
+	/**
+	 * Reset the node lazily if it hasn't been visited in the current search yet
+	 */
+	void visit(int node) {
+		if (stamp[node] != generation) {
+			stamp[node] = generation;
+			cost[node] = initialCost;
+			heuristic[node] = 0;
+			parent[node] = -1;
+			state[node] = UNVISITED;
+			heapIndex[node] = -1;
+		}
+	}
+	
+	float getCost(int node) {
+		return cost[node];
+	}
+	
+	void setCost(int node, float value) {
+		cost[node] = value;
+	}
+	
+	float getHeuristic(int node) {
+		return heuristic[node];
+	}
+	
+	void setHeuristic(int node, float value) {
+		heuristic[node] = value;
+	}
+	
+	float getF(int node) {
+		return heuristic[node] + cost[node];
+	}
+	
+	int getParent(int node) {
+		return parent[node];
+	}
+	
+	void setParent(int node, int value) {
+		parent[node] = value;
+	}
+	
+	byte getState(int node) {
+		return state[node];
+	}
+	
+	void setState(int node, byte value) {
+		state[node] = value;
+	}
+	
+	@Override
+	public int getHeapIndex(int node) {
+		return heapIndex[node];
+	}
+	
+	@Override
+	public void setHeapIndex(int node, int value) {
+		heapIndex[node] = value;
+	}
+	
+	void setSequence(int node, int value) {
+		sequence[node] = value;
+	}
+	
+	int getClosedOrder(int node) {
+		return closedOrder[node];
+	}
+	
+	void setClosedOrder(int node, int value) {
+		closedOrder[node] = value;
+	}
+	
+	/**
+	 * Order of expanding the nodes: lower F first, then the earlier added
+	 */
+	@Override
+	public int compare(int node1, int node2) {
+		float f1 = getF(node1);
+		float f2 = getF(node2);
+		if (f1 < f2) {
+			return -1;
+		} else if (f1 > f2) {
+			return 1;
+		} else {
+			return Integer.compare(sequence[node1], sequence[node2]);
+		}
+	}
+	
+	String toString(int node) {
+		return "(" + getX(node) + ", " + getY(node) + ", " + getT(node) + "; f=" + getF(node) + "; h=" + getHeuristic(node) + ")";
+	}
+}
@@ -0,0 +1,156 @@
+package igrek.robopath.pathfinder.whca;
+
+import igrek.robopath.common.LongIntHashMap;
+import igrek.robopath.common.TileMap;
+
+/**
+ * Sparse reservations for large maps and long time windows - only the reserved (x, y, t) are
+ * stored in a hash map, with the robot owning the reservation. The cells blocked all the time are
+ * kept separately in a map of static obstacles.
+ */
+public class SparseReservationTable implements Reservations {
+	
+	/** owner of the reservations made without giving it */
+	public static final int NO_OWNER = -1;
+	
+	private static final int COORDINATE_BITS = 21;
+	private static final int MAX_COORDINATE = (1 << COORDINATE_BITS) - 1;
+	
+	private int width;
+	private int height;
+	private int timeDimension;
+	
+	/** cells blocked all the time */
+	private TileMap staticObstacles;
+	/** owners of the reservations by packed (x, y, t) */
+	private LongIntHashMap reservations = new LongIntHashMap();
+	/** codes of the reserved moves by packed (x, y, t) of their start */
+	private LongIntHashMap moves = new LongIntHashMap();
+	/** reused by {@link #advance()} */
+	private LongIntHashMap shifted = new LongIntHashMap();
+	
+	public SparseReservationTable(int width, int height, int timeDimension) {
+		this(new TileMap(width, height), timeDimension);
+	}
+	
+	/**
+	 * @param staticObstacles copied - initially blocked cells
+	 */
+	public SparseReservationTable(TileMap staticObstacles, int timeDimension) {
+		this.width = staticObstacles.getWidthInTiles();
+		this.height = staticObstacles.getHeightInTiles();
+		this.timeDimension = timeDimension;
+		if (width > MAX_COORDINATE || height > MAX_COORDINATE || timeDimension > MAX_COORDINATE)
+			throw new IllegalArgumentException("reservation table dimensions too big: " + width + "x" + height + "x" + timeDimension);
+		this.staticObstacles = new TileMap(staticObstacles);
+	}
+	
+	private static long key(int x, int y, int t) {
+		return ((long) t << (2 * COORDINATE_BITS)) | ((long) y << COORDINATE_BITS) | x;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public int getTimeDimension() {
+		return timeDimension;
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y, int t) {
+		return staticObstacles.blocked(x, y) || reservations.containsKey(key(x, y, t));
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y) {
+		if (staticObstacles.blocked(x, y))
+			return true;
+		for (int t = 0; t < timeDimension; t++) {
+			if (!reservations.containsKey(key(x, y, t)))
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public void setBlocked(int x, int y, int t) {
+		setBlocked(x, y, t, NO_OWNER);
+	}
+	
+	public void setBlocked(int x, int y, int t, int owner) {
+		if (xytValid(x, y, t))
+			reservations.put(key(x, y, t), owner);
+	}
+	
+	/**
+	 * @return the robot which has reserved the cell, {@link #NO_OWNER} if not reserved or reserved
+	 * without giving the owner
+	 */
+	public int getOwner(int x, int y, int t) {
+		return reservations.get(key(x, y, t), NO_OWNER);
+	}
+	
+	@Override
+	public void setFree(int x, int y, int t) {
+		if (xytValid(x, y, t))
+			reservations.remove(key(x, y, t));
+	}
+	
+	@Override
+	public void setBlocked(int x, int y) {
+		staticObstacles.setCell(x, y, true);
+	}
+	
+	@Override
+	public void setMoveBlocked(int x, int y, int x2, int y2, int t) {
+		if (xytValid(x, y, t) && xytValid(x2, y2, 0))
+			moves.put(key(x, y, t), Reservations.moveCode(x, y, x2, y2));
+	}
+	
+	@Override
+	public boolean isMoveBlocked(int x, int y, int x2, int y2, int t) {
+		return moves.get(key(x, y, t), 0) == Reservations.moveCode(x, y, x2, y2);
+	}
+	
+	@Override
+	public void setMoveFree(int x, int y, int t) {
+		if (xytValid(x, y, t))
+			moves.remove(key(x, y, t));
+	}
+	
+	@Override
+	public void advance() {
+		reservations = shift(reservations);
+		moves = shift(moves);
+	}
+	
+	/**
+	 * @return the entries moved one step back in time without t = 0, the given map is reused
+	 */
+	private LongIntHashMap shift(LongIntHashMap entries) {
+		shifted.clear();
+		long timeUnit = 1L << (2 * COORDINATE_BITS);
+		entries.forEach((key, value) -> {
+			if (key >= timeUnit) // not t = 0
+				shifted.put(key - timeUnit, value);
+		});
+		LongIntHashMap result = shifted;
+		shifted = entries;
+		return result;
+	}
+	
+	/**
+	 * @return number of the reserved (x, y, t) apart from the static obstacles
+	 */
+	public int size() {
+		return reservations.size();
+	}
+}
@@ -3,182 +3,265 @@ package igrek.robopath.pathfinder.whca;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Optional;
+import java.util.Arrays;
 
-import igrek.robopath.common.BiHashMap;
+import igrek.robopath.common.IndexedIntHeap;
 import igrek.robopath.common.TileMap;
-import igrek.robopath.pathfinder.astar.Astar2DPathFinder;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.astar.DistanceOracle;
+import igrek.robopath.pathfinder.astar.ReverseResumableAStar;
 
 public class WHCAPathFinder {
 	
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 	
-	/** The set of nodes that have been searched through */
-	private List<Node> closed = new ArrayList<>();
+	/** The nodes of the search, reused by subsequent calls */
+	private SearchSpace space = new SearchSpace();
+	/** The nodes that have been moved to the closed list (may repeat if reopened) */
+	private int[] closed = new int[64];
+	private int closedSize;
 	/** The set of nodes that we do not yet consider fully searched */
-	private SortedList<Node> open = new SortedList<>();
-	private Node[][][] nodes;
+	private IndexedIntHeap open = new IndexedIntHeap(space);
+	/** counters giving the order of opening and closing nodes */
+	private int openedCount;
+	private int closedCount;
 	
-	private ReservationTable reservation;
+	private ReservationsView reservation;
 	private TileMap map;
-	private BiHashMap<Integer, Integer, igrek.robopath.pathfinder.astar.Path> heuristicCache = new BiHashMap<>();
+	/** true distances to the current target */
+	private ReverseResumableAStar heuristic;
+	private DistanceFieldCache distanceCache;
+	/** all-pairs distances used instead of the distance fields, when built for the current map */
+	private DistanceOracle distanceOracle;
+	/** the oracle used by the current search or null */
+	private DistanceOracle currentOracle;
+	/** limit of the expanded nodes and the time, null for no limit */
+	private PlanningBudget budget;
+	private boolean interrupted;
 	
-	public WHCAPathFinder(ReservationTable reservation, TileMap map) {
+	public WHCAPathFinder(ReservationsView reservation, TileMap map) {
+		this(reservation, map, new DistanceFieldCache());
+	}
+	
+	/**
+	 * @param distanceCache heuristic distance fields, may be shared with other path finders
+	 */
+	public WHCAPathFinder(ReservationsView reservation, TileMap map, DistanceFieldCache distanceCache) {
+		this.reservation = reservation;
+		this.map = map;
+		this.distanceCache = distanceCache;
+	}
+	
+	/**
+	 * Change the reservations and the map for the next searches - the search buffers are kept
+	 */
+	public void reset(ReservationsView reservation, TileMap map) {
 		this.reservation = reservation;
 		this.map = map;
 	}
 	
+	/**
+	 * @param distanceOracle precomputed distances of the map, or null to compute them on demand
+	 */
+	public void setDistanceOracle(DistanceOracle distanceOracle) {
+		this.distanceOracle = distanceOracle;
+	}
+	
+	/**
+	 * @param budget limit of the next searches, null for no limit
+	 */
+	public void setBudget(PlanningBudget budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * @return true if the last search has been stopped due to the exhausted budget
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
 	
+	/**
+	 * @return the path or null if there is no path or the budget has been exhausted
+	 */
 	public Path findPath(int sx, int sy, int tx, int ty) {
 		// initial state for A*. The closed group is empty. Only the starting
 		// tile is in the open list and it'e're already there
-		closed.clear();
+		closedSize = 0;
 		open.clear();
-		heuristicCache.clear();
-		
-		nodes = new Node[reservation.getWidth()][reservation.getHeight()][reservation.getTimeDimension()];
-		for (int x = 0; x < reservation.getWidth(); x++) {
-			for (int y = 0; y < reservation.getHeight(); y++) {
-				for (int t = 0; t < reservation.getTimeDimension(); t++) {
-					nodes[x][y][t] = new Node(x, y, t);
-					nodes[x][y][t].setCost(maxF());
-				}
-			}
+		openedCount = 0;
+		closedCount = 0;
+		interrupted = false;
+		if (distanceOracle != null && distanceOracle.isValidFor(map)) {
+			currentOracle = distanceOracle;
+			heuristic = null;
+		} else {
+			currentOracle = null;
+			heuristic = distanceCache.get(map, tx, ty);
 		}
 		
+		space.reset(reservation.getWidth(), reservation.getHeight(), reservation.getTimeDimension(), maxF());
+		
 		//Dodajemy pole startowe (lub węzeł) do Listy Otwartych.
-		Node startNode = nodes[sx][sy][0];
-		startNode.setCost(0);
+		int startNode = space.index(sx, sy, 0);
+		space.visit(startNode);
+		space.setCost(startNode, 0);
 		Float heuristicCost = getHeuristicCost(sx, sy, 0, tx, ty);
 		if (heuristicCost == null) {
 			heuristicCost = maxF(); // FIXME kind of max
 		}
-		startNode.setHeuristic(heuristicCost);
-		open.add(startNode);
-		
-		// first check, if the destination is blocked, we can't get there
-		//		if (reservation.isBlocked(tx, ty))
-		//			return null;
-		//		//jeśli punkt docelowy jest punktem startowym - brak ścieżki
-		//		if (sx == tx && sy == ty)
-		//			return null;
+		space.setHeuristic(startNode, heuristicCost);
+		addToOpen(startNode);
 		
+		int lastT = reservation.getTimeDimension() - 1;
 		//dopóki lista otwartych nie jest pusta
 		while (!open.isEmpty()) {
 			// pull out the first node in our open list, this is determined to
 			// be the most likely to be the next step based on our heuristic
 			//Szukamy pola o najniższej wartości F na Liście Otwartych. Czynimy je aktualnym polem
-			Node current = open.first();
+			int current = open.first();
+			int cx = space.getX(current);
+			int cy = space.getY(current);
+			int ct = space.getT(current);
 			//jeśli current jest węzłem docelowym
-			if (current.getX() == tx && current.getY() == ty && current.getT() == reservation.getTimeDimension() - 1) {
+			if (cx == tx && cy == ty && ct == lastT) {
 				// At this point we've definitely found a path so we can uses the parent
 				// references of the nodes to find out way from the target location back
 				// to the start recording the nodes on the way.
-				//Zapisujemy ścieżkę. Krocząc w kierunku od pola docelowego do startowego, przeskakujemy z kolejnych pól na im przypisane pola rodziców, aż do osiągnięcia pola startowego.
-				Path path = new Path();
-				Node node = nodes[tx][ty][current.getT()];
-				while (node != startNode) {
-					path.prependStep(node.getX(), node.getY(), node.getT());
-					node = node.getParent();
-					if (node == null)
-						throw new AssertionError("target == null");
-				}
-				path.prependStep(sx, sy, 0);
-				return path;
+				return buildPath(current, startNode);
+			}
+			if (budget != null && !budget.expand()) {
+				interrupted = true;
+				return null;
 			}
 			//Aktualne pole przesuwamy do Listy Zamkniętych.
-			open.remove(current);
-			closed.add(current);
+			open.poll();
+			space.setState(current, SearchSpace.CLOSED);
+			space.setClosedOrder(current, closedCount++);
+			addToClosed(current);
 			// search through all the neighbours of the current node evaluating
 			// them as next steps
 			//Dla każdego z wybranych przyległych pól (sasiad) do pola aktualnego
-			List<Node> neighbours = availableNeighbours(current);
-			for (Node neighbour : neighbours) {
-				
-				//jeśli NIE-MOŻNA go przejść, ignorujemy je.
-				if (!isValidLocation(sx, sy, neighbour.getX(), neighbour.getY(), neighbour.getT()))
-					continue;
-				
-				if (!isValidMove(current.getX(), current.getY(), current.getT(), neighbour.getX(), neighbour
-						.getY(), neighbour.getT()))
-					continue;
-				
-				// the cost to get to this node is cost the current plus the movement
-				// cost to reach this node. Note that the heursitic value is only used
-				// in the sorted open list
-				float nextStepCost = current.getCost() + getMovementCost(current.getX(), current.getY(), neighbour
-						.getX(), neighbour.getY(), tx, ty);
-				
-				// if the new cost we've determined for this node is lower than
-				// it has been previously makes sure the node hasn'e've
-				// determined that there might have been a better path to get to
-				// this node so it needs to be re-evaluated
-				if (nextStepCost < neighbour.getCost()) {
-					if (open.contains(neighbour)) {
-						open.remove(neighbour);
-					}
-					if (closed.contains(neighbour)) {
-						closed.remove(neighbour);
-					}
-				}
-				// if the node hasn't already been processed and discarded then
-				// reset it's cost to our current cost and add it as a next possible
-				// step (i.e. to the open list)
-				if (!open.contains(neighbour) && !closed.contains(neighbour)) {
-					neighbour.setCost(nextStepCost);
-					heuristicCost = getHeuristicCost(neighbour.getX(), neighbour.getY(), neighbour.getT(), tx, ty);
-					if (heuristicCost == null) {
-						heuristicCost = maxF();
-					}
-					neighbour.setHeuristic(heuristicCost);
-					neighbour.setParent(current);
-					open.add(neighbour);
+			int t = ct + 1;
+			if (t > lastT)
+				continue;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (dx == 0 && dy == 0)
+						continue;
+					// determine the location of the neighbour and evaluate it
+					expandNeighbour(current, cx, cy, cx + dx, cy + dy, t, sx, sy, tx, ty);
 				}
-				
 			}
+			// possible waiting in the same place - the last offer
+			expandNeighbour(current, cx, cy, cx, cy, t, sx, sy, tx, ty);
 		}
 		
 		// time window could be too little - find most promising path
-		Optional<Node> mostPromising = closed.stream()
-				.filter(node -> node.getHeuristic() < maxF()) // not max
-				.min((o1, o2) -> {
-					// first - compare H
-					int cmp = Float.compare(o1.getHeuristic(), o2.getHeuristic());
-					if (cmp != 0)
-						return cmp;
-					// if equal - compare F
-					cmp = Float.compare(o1.getF(), o2.getF());
-					if (cmp != 0)
-						return cmp;
-					// if equal - compare T
-					cmp = Integer.compare(o1.getT(), o2.getT());
-					return cmp;
-				});
-		if (mostPromising.isPresent()) {
-			Path path = new Path();
-			Node target = mostPromising.get();
-			while (target != startNode) {
-				path.prependStep(target.getX(), target.getY(), target.getT());
-				target = target.getParent();
-				if (target == null)
-					throw new AssertionError("target = null - this should not happen");
-			}
-			path.prependStep(sx, sy, 0);
-			
-			//			reservation.log();
-			//			logger.debug("most promising node: " + mostPromising.get());
-			//			logger.debug("path: " + path);
-			
-			return path;
+		int mostPromising = -1;
+		for (int i = 0; i < closedSize; i++) {
+			int node = closed[i];
+			if (space.getState(node) != SearchSpace.CLOSED)
+				continue;
+			if (space.getHeuristic(node) >= maxF()) // not max
+				continue;
+			if (mostPromising < 0 || isMorePromising(node, mostPromising))
+				mostPromising = node;
+		}
+		if (mostPromising >= 0) {
+			return buildPath(mostPromising, startNode);
 		}
 		
 		// since we'e've run out of search there was no path
 		return null;
 	}
 	
+	private void expandNeighbour(int current, int cx, int cy, int x, int y, int t, int sx, int sy, int tx, int ty) {
+		// validate out of bounds
+		if (x < 0 || y < 0 || x >= reservation.getWidth() || y >= reservation.getHeight())
+			return;
+		
+		//jeśli NIE-MOŻNA go przejść, ignorujemy je.
+		if (!isValidLocation(sx, sy, x, y, t))
+			return;
+		
+		if (!isValidMove(cx, cy, t - 1, x, y, t))
+			return;
+		
+		int neighbour = space.index(x, y, t);
+		space.visit(neighbour);
+		// the cost to get to this node is cost the current plus the movement
+		// cost to reach this node. Note that the heursitic value is only used
+		// in the sorted open list
+		float nextStepCost = space.getCost(current) + getMovementCost(cx, cy, x, y, tx, ty);
+		
+		// if the new cost we've determined for this node is lower than
+		// it has been previously makes sure the node hasn'e've
+		// determined that there might have been a better path to get to
+		// this node so it needs to be re-evaluated.
+		// if the node hasn't already been processed and discarded then
+		// reset it's cost to our current cost and add it as a next possible
+		// step (i.e. to the open list)
+		byte state = space.getState(neighbour);
+		if (state == SearchSpace.UNVISITED || nextStepCost < space.getCost(neighbour)) {
+			space.setCost(neighbour, nextStepCost);
+			Float heuristicCost = getHeuristicCost(x, y, t, tx, ty);
+			if (heuristicCost == null) {
+				heuristicCost = maxF();
+			}
+			space.setHeuristic(neighbour, heuristicCost);
+			space.setParent(neighbour, current);
+			if (state == SearchSpace.OPEN) {
+				// decrease-key - it goes behind the nodes of the same F, as if added again
+				space.setSequence(neighbour, openedCount++);
+				open.update(neighbour);
+			} else {
+				addToOpen(neighbour);
+			}
+		}
+	}
+	
+	private boolean isMorePromising(int node, int than) {
+		// first - compare H
+		int cmp = Float.compare(space.getHeuristic(node), space.getHeuristic(than));
+		if (cmp == 0) // if equal - compare F
+			cmp = Float.compare(space.getF(node), space.getF(than));
+		if (cmp == 0) // if equal - compare T
+			cmp = Integer.compare(space.getT(node), space.getT(than));
+		if (cmp == 0) // if equal - the earliest closed
+			cmp = Integer.compare(space.getClosedOrder(node), space.getClosedOrder(than));
+		return cmp < 0;
+	}
+	
+	/**
+	 * Build the path by walking back along the parents from the given node to the start node
+	 */
+	private Path buildPath(int target, int startNode) {
+		//Zapisujemy ścieżkę. Krocząc w kierunku od pola docelowego do startowego, przeskakujemy z kolejnych pól na im przypisane pola rodziców, aż do osiągnięcia pola startowego.
+		Path path = new Path();
+		int node = target;
+		while (node != startNode) {
+			path.prependStep(space.getX(node), space.getY(node), space.getT(node));
+			node = space.getParent(node);
+			if (node < 0)
+				throw new AssertionError("target == null");
+		}
+		path.prependStep(space.getX(startNode), space.getY(startNode), 0);
+		return path;
+	}
+	
+	private void addToOpen(int node) {
+		space.setState(node, SearchSpace.OPEN);
+		space.setSequence(node, openedCount++);
+		open.add(node);
+	}
+	
+	private void addToClosed(int node) {
+		if (closedSize == closed.length)
+			closed = Arrays.copyOf(closed, closedSize * 2);
+		closed[closedSize++] = node;
+	}
+	
 	private float maxF() {
 		return (float) (map.getWidthInTiles() * map.getHeightInTiles() * 2); // FIXME kind of max
 	}
@@ -208,6 +291,10 @@ public class WHCAPathFinder {
 				return false;
 			}
 		}
+		// swapping the cells with another robot
+		if ((dx != 0 || dy != 0) && reservation.isMoveBlocked(x, y, sx, sy, st)) {
+			return false;
+		}
 		
 		return true;
 	}
@@ -233,45 +320,23 @@ public class WHCAPathFinder {
 	protected Float getHeuristicCost(int x, int y, int t, int tx, int ty) {
 		if (x == tx && y == ty)
 			return 0f;
-		igrek.robopath.pathfinder.astar.Path path = heuristicCache.get(x, y);
-		if (path == null) {
-			Astar2DPathFinder pathFinder = new Astar2DPathFinder(map);
-			path = pathFinder.findPath(x, y, tx, ty);
-			if (path == null) {
-				// there is no path
-				return null;
-			}
-			heuristicCache.put(x, y, path);
+		int distance;
+		if (currentOracle != null) {
+			distance = currentOracle.distance(x, y, tx, ty);
+		} else if (budget != null) {
+			// the heuristic search resumed for the cell is charged to the budget
+			long expansions = heuristic.getExpansions();
+			distance = heuristic.distance(x, y);
+			budget.charge(heuristic.getExpansions() - expansions);
+		} else {
+			distance = heuristic.distance(x, y);
 		}
-		float distance = path.getLength() - 1;
-		if (distance < 0)
-			throw new AssertionError("distance < 0");
-		return distance;
-		//		return (distance) * (1 + ((float) t) / reservation.getTimeDimension());
-	}
-	
-	private List<Node> availableNeighbours(Node current) {
-		List<Node> neighbours = new LinkedList<>();
-		int t = current.getT() + 1;
-		if (t < reservation.getTimeDimension()) {
-			for (int dx = -1; dx <= 1; dx++) {
-				for (int dy = -1; dy <= 1; dy++) {
-					if (dx == 0 && dy == 0)
-						continue;
-					// determine the location of the neighbour and evaluate it
-					int xp = current.getX() + dx;
-					int yp = current.getY() + dy;
-					// validate out of bounds
-					if ((xp < 0) || (yp < 0) || (xp >= reservation.getWidth()) || (yp >= reservation
-							.getHeight()))
-						continue;
-					neighbours.add(nodes[xp][yp][t]);
-				}
-			}
-			// possible waiting in the same place - the last offer
-			neighbours.add(nodes[current.getX()][current.getY()][t]);
+		if (distance < 0) {
+			// there is no path
+			return null;
 		}
-		return neighbours;
+		return (float) distance;
+		//		return (distance) * (1 + ((float) t) / reservation.getTimeDimension());
 	}
 	
 }
@@ -5,14 +5,24 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
+import igrek.robopath.common.OccupancyIndex;
+import igrek.robopath.common.OverlayMap;
 import igrek.robopath.common.Point;
 import igrek.robopath.common.TileMap;
 import igrek.robopath.mazegenerator.MazeGenerator;
 import igrek.robopath.pathfinder.astar.Astar2DPathFinder;
+import igrek.robopath.pathfinder.astar.DStarLite;
+import igrek.robopath.pathfinder.astar.DistanceOracle;
+import igrek.robopath.pathfinder.astar.JumpPointPathFinder;
 import igrek.robopath.pathfinder.astar.Path;
+import igrek.robopath.pathfinder.hpa.HierarchicalPathFinder;
 
 public class LRAController {
 	
@@ -23,6 +33,20 @@ public class LRAController {
 	private TileMap map;
 	private List<MobileRobot> robots = new ArrayList<>();
 	private LRASimulationParams params;
+	/** all-pairs distances of the map, built when enabled */
+	private DistanceOracle.Cache distanceOracles = new DistanceOracle.Cache();
+	/** D* Lite searches of the robots, kept between the replans (when enabled), in the order of use */
+	private Map<MobileRobot, DStarLite> incrementalSearches = new LinkedHashMap<>(16, 0.75f, true);
+	/** HPA* of the map, built for the big maps when enabled */
+	private HierarchicalPathFinder hierarchicalPathFinder;
+	/** the map with the robots on top of it, filled in for a search only */
+	private OverlayMap mapWithRobots;
+	/** robots (by their index in the list) on their positions and nearest targets, updated as they move */
+	private OccupancyIndex positions;
+	private OccupancyIndex nearestTargets;
+	/** the robots have been added or removed since they have been indexed */
+	private boolean robotsStale = true;
+	private int indexedRobots;
 	
 	public LRAController(LRAPresenter presenter, LRASimulationParams params) {
 		this.params = params;
@@ -50,10 +74,18 @@ public class LRAController {
 	synchronized void resetMap() {
 		map = new TileMap(params.mapSizeW, params.mapSizeH);
 		robots.clear();
+		robotsStale = true;
+		clearIncrementalSearches();
+		if (hierarchicalPathFinder != null) {
+			hierarchicalPathFinder.dispose();
+			hierarchicalPathFinder = null;
+		}
 	}
 	
 	public synchronized void placeRobots() {
 		robots.clear();
+		robotsStale = true;
+		clearIncrementalSearches();
 		for (int i = 0; i < params.robotsCount; i++) {
 			Point cell = randomUnoccupiedCellForRobot(map);
 			createMobileRobot(cell, i);
@@ -63,6 +95,7 @@ public class LRAController {
 	public synchronized MobileRobot createMobileRobot(Point point, int i) {
 		MobileRobot robo = new MobileRobot(point, robot -> onTargetReached(robot), i);
 		robots.add(robo);
+		robotsStale = true;
 		return robo;
 	}
 	
@@ -88,12 +121,28 @@ public class LRAController {
 		mazegen.generateMaze(map);
 	}
 	
-	MobileRobot occupiedByRobot(Point point) {
-		for (MobileRobot robot : robots) {
-			if (robot.getPosition().equals(point))
-				return robot;
+	synchronized MobileRobot occupiedByRobot(Point point) {
+		indexRobots();
+		int robot = positions.get(point);
+		return robot == OccupancyIndex.NONE ? null : robots.get(robot);
+	}
+	
+	/**
+	 * Index the robots anew if they or the map have changed
+	 */
+	private void indexRobots() {
+		// robots may be removed from the list by the presenter
+		if (!robotsStale && robots.size() == indexedRobots && positions != null && positions.getWidth() == map
+				.getWidthInTiles() && positions.getHeight() == map.getHeightInTiles())
+			return;
+		positions = new OccupancyIndex(map.getWidthInTiles(), map.getHeightInTiles());
+		nearestTargets = new OccupancyIndex(map.getWidthInTiles(), map.getHeightInTiles());
+		for (int i = 0; i < robots.size(); i++) {
+			positions.set(i, robots.get(i).getPosition());
 		}
-		return null;
+		disposeRemovedSearches();
+		indexedRobots = robots.size();
+		robotsStale = false;
 	}
 	
 	private void randomRobotTarget(MobileRobot robot) {
@@ -153,9 +202,27 @@ public class LRAController {
 		Point start = robot.getPosition();
 		Point target = robot.getTarget();
 		if (target != null && !target.equals(start)) {
-			TileMap map2 = mapWithRobots();
-			Astar2DPathFinder pathFinder = new Astar2DPathFinder(map2);
-			Path path = pathFinder.findPath(start.getX(), start.getY(), target.getX(), target.getY());
+			DistanceOracle oracle = distanceOracle(map);
+			if (oracle != null && oracle.distance(start.getX(), start.getY(), target.getX(), target.getY()) < 0) {
+				logger.debug("robot: " + robot.getPriority() + " - target unreachable");
+				return;
+			}
+			Path path;
+			if (params.incrementalSearch) {
+				path = findPathIncrementally(robot, start, target);
+			} else {
+				OverlayMap map2 = mapWithRobots();
+				try {
+					path = findPathHierarchically(map2, start, target);
+					if (path == null) {
+						Astar2DPathFinder pathFinder = params.jumpPointSearch ? new JumpPointPathFinder(map2) : new Astar2DPathFinder(map2);
+						pathFinder.setDistanceOracle(oracle);
+						path = pathFinder.findPath(start.getX(), start.getY(), target.getX(), target.getY());
+					}
+				} finally {
+					removeRobots(map2);
+				}
+			}
 			if (path != null) {
 				for (int i = 1; i < path.getLength(); i++) {
 					Path.Step step = path.getStep(i);
@@ -165,39 +232,180 @@ public class LRAController {
 		}
 	}
 	
-	private TileMap mapWithRobots() {
-		TileMap map2 = new TileMap(map);
+	/**
+	 * Repair the robot's search after the other robots' moves, start a new one for a new target
+	 */
+	private Path findPathIncrementally(MobileRobot robot, Point start, Point target) {
+		DStarLite search = incrementalSearches.get(robot);
+		if (search == null || search.getMap() != map || search.getGoalX() != target.getX() || search.getGoalY() != target
+				.getY()) {
+			if (search != null)
+				search.dispose();
+			search = new DStarLite(map, target.getX(), target.getY());
+			incrementalSearches.put(robot, search);
+			disposeLeastRecentSearches();
+		}
+		// the same obstacles as in mapWithRobots, except the robot itself
+		List<Point> obstacles = new ArrayList<>(robots.size() * 2);
+		for (MobileRobot other : robots) {
+			if (other != robot) {
+				obstacles.add(other.getPosition());
+				obstacles.add(other.nearestTarget());
+			}
+		}
+		search.updateObstacles(obstacles);
+		return search.findPath(start.getX(), start.getY());
+	}
+	
+	/**
+	 * Find the path on a big map with HPA*, which doesn't see the robots
+	 * @return null if not enabled for the map, there's no path or it crosses the cells of the robots
+	 * - A* has to find the way around them
+	 */
+	private Path findPathHierarchically(OverlayMap map2, Point start, Point target) {
+		if (!params.hierarchicalSearch || map.getWidthInTiles() * map.getHeightInTiles() < params.hierarchicalSearchMinCells)
+			return null;
+		if (hierarchicalPathFinder == null || hierarchicalPathFinder.getMap() != map) {
+			if (hierarchicalPathFinder != null)
+				hierarchicalPathFinder.dispose();
+			hierarchicalPathFinder = new HierarchicalPathFinder(map);
+		}
+		Path path = hierarchicalPathFinder.findPath(start.getX(), start.getY(), target.getX(), target.getY());
+		if (path == null)
+			return null;
+		for (int i = 1; i < path.getLength(); i++) {
+			Path.Step step = path.getStep(i);
+			if (map2.blocked(step.getX(), step.getY())) {
+				logger.debug("robot path crossing another robot - searching with A*");
+				return null;
+			}
+		}
+		return path;
+	}
+	
+	HierarchicalPathFinder getHierarchicalPathFinder() {
+		return hierarchicalPathFinder;
+	}
+	
+	/**
+	 * Drop the searches of the robots removed from the list
+	 */
+	private void disposeRemovedSearches() {
+		if (incrementalSearches.isEmpty())
+			return;
+		HashSet<MobileRobot> present = new HashSet<>(robots);
+		Iterator<Map.Entry<MobileRobot, DStarLite>> it = incrementalSearches.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<MobileRobot, DStarLite> entry = it.next();
+			if (!present.contains(entry.getKey())) {
+				entry.getValue().dispose();
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Keep at most incrementalSearchesMax searches - the robots of the dropped ones start anew
+	 */
+	private void disposeLeastRecentSearches() {
+		Iterator<DStarLite> it = incrementalSearches.values().iterator();
+		while (incrementalSearches.size() > Math.max(params.incrementalSearchesMax, 1)) {
+			it.next().dispose();
+			it.remove();
+		}
+	}
+	
+	int getIncrementalSearchesCount() {
+		return incrementalSearches.size();
+	}
+	
+	private void clearIncrementalSearches() {
+		for (DStarLite search : incrementalSearches.values()) {
+			search.dispose();
+		}
+		incrementalSearches.clear();
+	}
+	
+	/**
+	 * @return the distance oracle of the map if enabled, null if disabled or refused for the map size
+	 */
+	private DistanceOracle distanceOracle(TileMap map) {
+		if (!params.distanceOracle)
+			return null;
+		return distanceOracles.get(map, params.distanceOracleMaxCells);
+	}
+	
+	/**
+	 * @return the map with the robots' cells blocked, to be cleared with removeRobots after the search
+	 */
+	private OverlayMap mapWithRobots() {
+		if (mapWithRobots == null || mapWithRobots.getBase() != map)
+			mapWithRobots = new OverlayMap(map);
 		for (MobileRobot robot : robots) {
-			map2.setCell(robot.getPosition(), true);
-			map2.setCell(robot.nearestTarget(), true);
+			mapWithRobots.addObstacle(robot.getPosition());
+			mapWithRobots.addObstacle(robot.nearestTarget());
 		}
-		return map2;
+		return mapWithRobots;
 	}
 	
-	public synchronized void stepSimulation() {
+	private void removeRobots(OverlayMap map2) {
 		for (MobileRobot robot : robots) {
+			map2.removeObstacle(robot.getPosition());
+			map2.removeObstacle(robot.nearestTarget());
+		}
+	}
+	
+	public synchronized void stepSimulation() {
+		indexRobots();
+		// the moves may have been planned since the last step
+		for (int i = 0; i < robots.size(); i++) {
+			nearestTargets.set(i, robots.get(i).nearestTarget());
+		}
+		for (int i = 0; i < robots.size(); i++) {
+			MobileRobot robot = robots.get(i);
 			if (robot.hasNextMove()) {
 				robot.setPosition(robot.pollNextMove());
+				positions.set(i, robot.getPosition());
 			}
 			if (robot.hasReachedTarget() && params.robotAutoTarget) {
 				robot.targetReached();
 			}
-			MobileRobot collidedRobot = collisionDetected(robot);
+			nearestTargets.set(i, robot.nearestTarget());
+			MobileRobot collidedRobot = collisionDetected(i, robot);
 			if (collidedRobot != null || (!robot.hasNextMove() && !robot.hasReachedTarget())) {
 				findPath(robot);
+				nearestTargets.set(i, robot.nearestTarget());
 			}
 		}
 	}
 	
-	public MobileRobot collisionDetected(MobileRobot robot) {
-		for (MobileRobot otherRobot : robots) {
-			if (otherRobot == robot)
-				continue;
-			if (otherRobot.getPosition().equals(robot.nearestTarget()) || otherRobot.nearestTarget()
-					.equals(robot.nearestTarget())) {
-				// throw new CollisionDetectedException(); // collisions frequency tests
-				return otherRobot;
-			}
+	/**
+	 * @return other robot standing on or heading for the robot's nearest target
+	 */
+	public synchronized MobileRobot collisionDetected(MobileRobot robot) {
+		indexRobots();
+		// the robots may have been moved since the last step
+		for (int i = 0; i < robots.size(); i++) {
+			positions.set(i, robots.get(i).getPosition());
+			nearestTargets.set(i, robots.get(i).nearestTarget());
+		}
+		int index = robots.indexOf(robot);
+		// a robot not on the list may collide with any of them
+		return collisionDetected(index < 0 ? robots.size() : index, robot);
+	}
+	
+	/**
+	 * @param index index of the robot in the list, with the robots indexed already
+	 * @return other robot standing on or heading for the robot's nearest target
+	 */
+	private MobileRobot collisionDetected(int index, MobileRobot robot) {
+		Point nearestTarget = robot.nearestTarget();
+		int other = positions.getOther(nearestTarget, index);
+		if (other == OccupancyIndex.NONE)
+			other = nearestTargets.getOther(nearestTarget, index);
+		if (other != OccupancyIndex.NONE) {
+			// throw new CollisionDetectedException(); // collisions frequency tests
+			return robots.get(other);
 		}
 		return null;
 	}
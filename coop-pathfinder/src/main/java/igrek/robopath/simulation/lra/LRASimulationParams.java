@@ -3,6 +3,7 @@ package igrek.robopath.simulation.lra;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import igrek.robopath.pathfinder.astar.DistanceOracle;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.TextField;
 
@@ -16,6 +17,21 @@ public class LRASimulationParams {
 	
 	public boolean robotAutoTarget = false;
 	
+	/** use precomputed distances between all the cells as the heuristic */
+	public boolean distanceOracle = false;
+	/** the oracle is not built for maps with more free cells */
+	public int distanceOracleMaxCells = DistanceOracle.DEFAULT_MAX_CELLS;
+	/** find the paths with Jump Point Search instead of plain A* - same lengths, fewer expanded nodes */
+	public boolean jumpPointSearch = false;
+	/** keep the search of every robot between the replans and repair it (D* Lite) instead of searching anew */
+	public boolean incrementalSearch = false;
+	/** number of the robots' searches kept at most, the least recently used ones are dropped (each takes ~22 bytes per cell) */
+	public int incrementalSearchesMax = 16;
+	/** find the paths on the big maps with HPA*, falling back to A* when the path crosses a robot */
+	public boolean hierarchicalSearch = false;
+	/** HPA* is used for the maps of at least that many cells */
+	public int hierarchicalSearchMinCells = 64 * 64;
+	
 	private TextField paramMapSizeW;
 	private TextField paramMapSizeH;
 	private TextField paramRobotsCount;
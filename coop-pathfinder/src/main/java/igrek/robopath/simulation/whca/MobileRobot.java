@@ -1,14 +1,12 @@
 package igrek.robopath.simulation.whca;
 
-import java.util.LinkedList;
-
 import igrek.robopath.common.Point;
 
 public class MobileRobot {
 	
 	private Point position;
 	private Point target;
-	private LinkedList<Point> movesQue = new LinkedList<>();
+	private MovesQueue movesQue = new MovesQueue();
 	private TargetReachedHandler targetReachedHandler;
 	private int id;
 	private int priority;
@@ -24,11 +22,14 @@ public class MobileRobot {
 		this.priority = priority;
 	}
 	
+	/**
+	 * @return copy of the robot sharing the planned moves, in O(1)
+	 */
 	@Override
 	protected MobileRobot clone() {
 		MobileRobot clone = new MobileRobot(this.position, null, this.id, this.priority);
 		clone.target = this.target;
-		clone.movesQue = new LinkedList<>(this.movesQue);
+		clone.movesQue = this.movesQue.share();
 		return clone;
 	}
 	
@@ -48,7 +49,7 @@ public class MobileRobot {
 		this.target = target;
 	}
 	
-	LinkedList<Point> getMovesQue() {
+	MovesQueue getMovesQue() {
 		return movesQue;
 	}
 	
@@ -65,9 +66,7 @@ public class MobileRobot {
 	}
 	
 	Point getNextMove() {
-		if (movesQue.isEmpty())
-			return null;
-		return movesQue.getFirst();
+		return movesQue.first();
 	}
 	
 	boolean hasNextMove() {
@@ -75,32 +74,52 @@ public class MobileRobot {
 	}
 	
 	Point pollNextMove() {
-		if (movesQue.isEmpty())
-			return null;
-		return movesQue.pollFirst();
+		return movesQue.poll();
 	}
 	
 	Point lastTarget() {
 		if (movesQue.isEmpty())
 			return position;
-		return movesQue.getLast();
+		return movesQue.last();
 	}
 	
 	Point nearestTarget() {
 		if (movesQue.isEmpty())
 			return position;
-		return movesQue.getFirst();
+		return movesQue.first();
+	}
+	
+	/**
+	 * the same as {@link #nearestTarget()}, without allocating a point
+	 */
+	int nearestTargetX() {
+		return movesQue.isEmpty() ? position.x : movesQue.getX(0);
+	}
+	
+	int nearestTargetY() {
+		return movesQue.isEmpty() ? position.y : movesQue.getY(0);
 	}
 	
 	MobileRobot enqueueMove(Point target) {
-		if (!lastTarget().isAdjacentOrEqual(target))
+		return enqueueMove(target.x, target.y);
+	}
+	
+	public MobileRobot enqueueMove(int x, int y) {
+		int lastX = movesQue.isEmpty() ? position.x : movesQue.getX(movesQue.size() - 1);
+		int lastY = movesQue.isEmpty() ? position.y : movesQue.getY(movesQue.size() - 1);
+		if (!Point.isAdjacentOrEqual(lastX, lastY, x, y))
 			throw new IllegalArgumentException("appended move is not adjacent or equal to last target");
-		movesQue.add(target);
+		movesQue.add(x, y);
 		return this;
 	}
 	
-	public MobileRobot enqueueMove(int x, int y) {
-		return enqueueMove(new Point(x, y));
+	/**
+	 * Append all the moves, starting next to the last target
+	 */
+	void enqueueMoves(MovesQueue moves) {
+		for (int i = 0; i < moves.size(); i++) {
+			enqueueMove(moves.getX(i), moves.getY(i));
+		}
 	}
 	
 	public synchronized void resetMovesQue() {
@@ -108,23 +127,17 @@ public class MobileRobot {
 	}
 	
 	void resetNextMoves() {
-		Point currentMove = movesQue.peekFirst();
-		movesQue.clear();
-		if (currentMove != null) {
-			movesQue.add(currentMove);
-		}
+		movesQue.keepFirst();
 	}
 	
 	double getInterpolatedX(double moveProgress) {
 		moveProgress = cutOff(moveProgress, 0, 1);
-		Point nearest = nearestTarget();
-		return position.x + (nearest.x - position.x) * moveProgress;
+		return position.x + (nearestTargetX() - position.x) * moveProgress;
 	}
 	
 	double getInterpolatedY(double moveProgress) {
 		moveProgress = cutOff(moveProgress, 0, 1);
-		Point nearest = nearestTarget();
-		return position.y + (nearest.y - position.y) * moveProgress;
+		return position.y + (nearestTargetY() - position.y) * moveProgress;
 	}
 	
 	private double cutOff(double num, double min, double max) {
@@ -0,0 +1,155 @@
+package igrek.robopath.simulation.whca;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import igrek.robopath.common.Point;
+
+/**
+ * Planned moves of a robot, packed into an int array with a head cursor. Polling only moves the
+ * cursor, so the array may be shared by the copies ({@link #share()}) - it's copied when one of
+ * them appends a move after sharing.
+ */
+final class MovesQueue implements Iterable<Point> {
+	
+	private static final int[] EMPTY = new int[0];
+	private static final int MAX_COORDINATE = 0xffff;
+	
+	/** cells packed as (x << 16) | y */
+	private int[] moves = EMPTY;
+	private int head = 0;
+	private int tail = 0;
+	/** the array may be referenced by another queue, so it can't be written anymore */
+	private boolean shared = false;
+	
+	/**
+	 * @return queue of the same moves, in O(1) - not affected by the later changes of this queue
+	 */
+	synchronized MovesQueue share() {
+		MovesQueue copy = new MovesQueue();
+		copy.moves = moves;
+		copy.head = head;
+		copy.tail = tail;
+		copy.shared = true;
+		shared = true;
+		return copy;
+	}
+	
+	boolean isEmpty() {
+		return head == tail;
+	}
+	
+	int size() {
+		return tail - head;
+	}
+	
+	int getX(int index) {
+		return moves[head + index] >>> 16;
+	}
+	
+	int getY(int index) {
+		return moves[head + index] & MAX_COORDINATE;
+	}
+	
+	Point get(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("move " + index + " of " + size());
+		return new Point(getX(index), getY(index));
+	}
+	
+	/**
+	 * @return the first move, null if empty
+	 */
+	Point first() {
+		return isEmpty() ? null : get(0);
+	}
+	
+	/**
+	 * @return the last move, null if empty
+	 */
+	Point last() {
+		return isEmpty() ? null : get(size() - 1);
+	}
+	
+	/**
+	 * @return the removed first move, null if empty
+	 */
+	synchronized Point poll() {
+		if (isEmpty())
+			return null;
+		Point first = get(0);
+		head++;
+		return first;
+	}
+	
+	synchronized void add(int x, int y) {
+		if (x < 0 || y < 0 || x > MAX_COORDINATE || y > MAX_COORDINATE)
+			throw new IllegalArgumentException("move out of range: (" + x + ", " + y + ")");
+		if (shared || tail == moves.length) {
+			int size = size();
+			int[] grown = new int[Math.max(8, size * 2)];
+			System.arraycopy(moves, head, grown, 0, size);
+			moves = grown;
+			head = 0;
+			tail = size;
+			shared = false;
+		}
+		moves[tail++] = (x << 16) | y;
+	}
+	
+	synchronized void clear() {
+		if (shared) {
+			moves = EMPTY;
+			shared = false;
+		}
+		head = 0;
+		tail = 0;
+	}
+	
+	/**
+	 * Remove all the moves but the first one
+	 */
+	synchronized void keepFirst() {
+		if (!isEmpty())
+			tail = head + 1;
+	}
+	
+	/**
+	 * Iterates over the moves as they were when it has been created, use {@link #share()} to keep
+	 * them while the queue is being modified. A point is allocated per move - the hot paths read
+	 * {@link #getX(int)} and {@link #getY(int)} instead.
+	 */
+	@Override
+	public Iterator<Point> iterator() {
+		int[] array = moves;
+		int end = tail;
+		return new Iterator<Point>() {
+			private int index = head;
+			
+			@Override
+			public boolean hasNext() {
+				return index < end;
+			}
+			
+			@Override
+			public Point next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				int move = array[index++];
+				return new Point(move >>> 16, move & MAX_COORDINATE);
+			}
+		};
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size(); i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(get(i));
+		}
+		return sb.append("]").toString();
+	}
+}
@@ -0,0 +1,44 @@
+package igrek.robopath.simulation.whca;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Paths planned for all the robots of a world snapshot
+ */
+final class PlanSet {
+	
+	private final WorldSnapshot snapshot;
+	/** robots' ids to their planned robots - the new moves and priorities */
+	private final Map<Integer, MobileRobot> planned;
+	/** planning time in nanoseconds */
+	private final long time;
+	
+	PlanSet(WorldSnapshot snapshot, List<MobileRobot> robots, long time) {
+		this.snapshot = snapshot;
+		Map<Integer, MobileRobot> byId = new HashMap<>();
+		for (MobileRobot robot : robots) {
+			byId.put(robot.getId(), robot);
+		}
+		this.planned = Collections.unmodifiableMap(byId);
+		this.time = time;
+	}
+	
+	WorldSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	MovesQueue getMoves(int robotId) {
+		return planned.get(robotId).getMovesQue();
+	}
+	
+	int getPriority(int robotId) {
+		return planned.get(robotId).getPriority();
+	}
+	
+	long getTime() {
+		return time;
+	}
+}
@@ -0,0 +1,16 @@
+package igrek.robopath.simulation.whca;
+
+/**
+ * How the paths of all the robots are planned
+ */
+public enum PlanningAlgorithm {
+	
+	/** prioritized planning of the robots one by one (WHCA*) */
+	WHCA,
+	/** Conflict-Based Search of all the robots at once, optimal within the time window */
+	CBS,
+	/** Enhanced CBS - bounded-suboptimal, solves more robots in the same time */
+	ECBS,
+	/** Priority-Based Search - prioritized planning ordering only the robots which get in each other's way */
+	PBS
+}
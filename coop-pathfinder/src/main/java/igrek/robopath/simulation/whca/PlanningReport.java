@@ -0,0 +1,75 @@
+package igrek.robopath.simulation.whca;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of the planning limited by a budget - which robots got new paths and which were deferred
+ */
+public class PlanningReport {
+	
+	private final List<MobileRobot> planned = new ArrayList<>();
+	/** deferred robots continuing along their previous paths */
+	private final List<MobileRobot> keptPaths = new ArrayList<>();
+	/** deferred robots waiting in place */
+	private final List<MobileRobot> waiting = new ArrayList<>();
+	private long expansions;
+	private long time;
+	
+	void addPlanned(MobileRobot robot) {
+		planned.add(robot);
+	}
+	
+	void addKeptPath(MobileRobot robot) {
+		keptPaths.add(robot);
+	}
+	
+	void addWaiting(MobileRobot robot) {
+		waiting.add(robot);
+	}
+	
+	void finish(long expansions, long time) {
+		this.expansions = expansions;
+		this.time = time;
+	}
+	
+	public List<MobileRobot> getPlanned() {
+		return planned;
+	}
+	
+	public List<MobileRobot> getKeptPaths() {
+		return keptPaths;
+	}
+	
+	public List<MobileRobot> getWaiting() {
+		return waiting;
+	}
+	
+	public int getDeferredCount() {
+		return keptPaths.size() + waiting.size();
+	}
+	
+	/**
+	 * @return true if all the robots have been planned within the budget
+	 */
+	public boolean isComplete() {
+		return getDeferredCount() == 0;
+	}
+	
+	public long getExpansions() {
+		return expansions;
+	}
+	
+	/**
+	 * @return planning time in nanoseconds
+	 */
+	public long getTime() {
+		return time;
+	}
+	
+	@Override
+	public String toString() {
+		return "planned: " + planned.size() + ", kept paths: " + keptPaths.size() + ", waiting: " + waiting
+				.size() + ", expansions: " + expansions + ", time: " + time / 1000000 + " ms";
+	}
+}
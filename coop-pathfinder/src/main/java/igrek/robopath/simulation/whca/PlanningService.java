@@ -0,0 +1,90 @@
+package igrek.robopath.simulation.whca;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Plans the paths in a background thread, so the robots keep moving along their current paths in
+ * the meantime. Only the latest submitted snapshot is planned, the completed plan set replaces the
+ * previous one not taken yet.
+ */
+class PlanningService {
+	
+	private Logger logger = LoggerFactory.getLogger(this.getClass());
+	
+	private final Function<WorldSnapshot, PlanSet> planner;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "planning-service");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicReference<WorldSnapshot> pending = new AtomicReference<>();
+	private final AtomicReference<PlanSet> published = new AtomicReference<>();
+	private final AtomicBoolean planning = new AtomicBoolean(false);
+	
+	/**
+	 * @param planner plans a snapshot, always called by the same thread
+	 */
+	PlanningService(Function<WorldSnapshot, PlanSet> planner) {
+		this.planner = planner;
+	}
+	
+	/**
+	 * Plan the snapshot when the current planning is done, replacing a snapshot waiting for it
+	 */
+	void submit(WorldSnapshot snapshot) {
+		pending.set(snapshot);
+		if (planning.compareAndSet(false, true))
+			executor.execute(this::planPending);
+	}
+	
+	private void planPending() {
+		do {
+			WorldSnapshot snapshot;
+			while ((snapshot = pending.getAndSet(null)) != null) {
+				try {
+					published.set(planner.apply(snapshot));
+				} catch (RuntimeException e) {
+					logger.error(e.getMessage(), e);
+				}
+			}
+			planning.set(false);
+			// a snapshot could have been submitted after the last check
+		} while (pending.get() != null && planning.compareAndSet(false, true));
+	}
+	
+	/**
+	 * Run the task on the planning thread, after the planning in progress
+	 */
+	Future<?> execute(Runnable task) {
+		return executor.submit(() -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				logger.error(e.getMessage(), e);
+			}
+		});
+	}
+	
+	/**
+	 * @return the latest completed plan set not taken yet, or null
+	 */
+	PlanSet poll() {
+		return published.getAndSet(null);
+	}
+	
+	boolean isPlanning() {
+		return planning.get();
+	}
+	
+	void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,29 @@
+package igrek.robopath.simulation.whca;
+
+/**
+ * When the paths are planned again during the simulation
+ */
+public enum ReplanningSchedule {
+	
+	/** whenever any robot reaches its target or runs out of moves */
+	EVENT_DRIVEN(false),
+	/** all the robots every replanning period */
+	PERIODIC(false),
+	/** all the robots every period, in between only the robots needing it, limited per step */
+	HYBRID(true),
+	/** every step a different part of the robots, so that each one is planned once a period */
+	STAGGERED(true);
+	
+	private final boolean partial;
+	
+	ReplanningSchedule(boolean partial) {
+		this.partial = partial;
+	}
+	
+	/**
+	 * @return true if some robots are planned while the others keep their paths
+	 */
+	public boolean isPartial() {
+		return partial;
+	}
+}
@@ -0,0 +1,354 @@
+package igrek.robopath.simulation.whca;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import igrek.robopath.common.LongIntHashMap;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.whca.Reservations;
+
+/**
+ * Reservations of the robots' paths kept between the simulation steps, so that only the robots
+ * needing a new plan have to be planned again. Every reservation remembers the robot which has
+ * made it, so the paths can be released one by one. While a robot is being planned, the
+ * reservations of the robots of lower priorities are not blocking - the paths crossing the new one
+ * are released and have to be planned again.
+ */
+class RobotReservations implements Reservations {
+	
+	private static final int COORDINATE_BITS = 20;
+	private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+	private static final int TIME_SHIFT = 2 * COORDINATE_BITS;
+	private static final int TIME_BITS = 22;
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+	/** marks the keys of the moves in the holdings */
+	private static final long MOVE_FLAG = 1L << 62;
+	private static final int NO_OWNER = -1;
+	
+	private final Reservations table;
+	/** map of the static obstacles */
+	private final TileMap map;
+	/**
+	 * number of the simulation steps since creation - the absolute time of t = 0. The keys keep
+	 * the absolute times modulo 2^22, so they are compared by {@link #relativeTime(long)} only.
+	 */
+	private int tick = 0;
+	
+	private final Map<MobileRobot, Holding> holdings = new IdentityHashMap<>();
+	/** holdings by their serials - the serials of the released holdings are reused */
+	private final List<Holding> holdingsBySerial = new ArrayList<>();
+	private final Deque<Integer> freeSerials = new ArrayDeque<>();
+	/** serials of the holdings by packed (x, y, absolute time) */
+	private final LongIntHashMap cellOwners = new LongIntHashMap();
+	private final LongIntHashMap moveOwners = new LongIntHashMap();
+	
+	/** order of the robots' priorities in the current planning */
+	private final Map<MobileRobot, Integer> ranks = new IdentityHashMap<>();
+	/** the robot being planned - owner of the new reservations */
+	private Holding owner;
+	/** robots which paths have been released due to crossing the path of a higher priority */
+	private final List<MobileRobot> released = new ArrayList<>();
+	
+	/**
+	 * Reserved cells and moves of a robot
+	 */
+	private static class Holding {
+		
+		private final int serial;
+		private final MobileRobot robot;
+		/** position in the order of priorities, the lower the more important */
+		private int rank;
+		/** packed keys in the order of reserving (by time) */
+		private long[] keys = new long[16];
+		private int head = 0;
+		private int tail = 0;
+		/** the last reserved cell and its absolute time */
+		private int lastX;
+		private int lastY;
+		private int lastTime = -1;
+		
+		Holding(int serial, MobileRobot robot, int rank) {
+			this.serial = serial;
+			this.robot = robot;
+			this.rank = rank;
+		}
+		
+		void add(long key) {
+			if (tail == keys.length) {
+				// drop the forgotten keys, growing if still full
+				long[] moved = head > keys.length / 2 ? keys : new long[keys.length * 2];
+				System.arraycopy(keys, head, moved, 0, tail - head);
+				keys = moved;
+				tail -= head;
+				head = 0;
+			}
+			keys[tail++] = key;
+		}
+	}
+	
+	RobotReservations(Reservations table, TileMap map) {
+		this.table = table;
+		this.map = map;
+	}
+	
+	TileMap getMap() {
+		return map;
+	}
+	
+	/**
+	 * @return true if the robot keeps a planned path
+	 */
+	boolean isHolding(MobileRobot robot) {
+		return holdings.containsKey(robot);
+	}
+	
+	/**
+	 * Set the order of priorities for the next planning, releasing the robots not simulated anymore
+	 */
+	void setPriorityOrder(List<MobileRobot> robots) {
+		ranks.clear();
+		for (int i = 0; i < robots.size(); i++) {
+			ranks.put(robots.get(i), i);
+		}
+		for (MobileRobot robot : new ArrayList<>(holdings.keySet())) {
+			Integer rank = ranks.get(robot);
+			if (rank == null) {
+				release(robot);
+			} else {
+				holdings.get(robot).rank = rank;
+			}
+		}
+	}
+	
+	/**
+	 * Set the robot being planned - it owns the new reservations and isn't blocked by the robots
+	 * of lower priorities
+	 */
+	void setOwner(MobileRobot robot) {
+		if (robot == null) {
+			owner = null;
+			return;
+		}
+		release(robot);
+		int serial;
+		if (freeSerials.isEmpty()) {
+			serial = holdingsBySerial.size();
+			holdingsBySerial.add(null);
+		} else {
+			serial = freeSerials.pop();
+		}
+		owner = new Holding(serial, robot, ranks.getOrDefault(robot, Integer.MAX_VALUE));
+		holdings.put(robot, owner);
+		holdingsBySerial.set(serial, owner);
+	}
+	
+	/**
+	 * @return the robots released since the last call, due to crossing the paths of higher priorities
+	 */
+	List<MobileRobot> pollReleased() {
+		List<MobileRobot> result = new ArrayList<>(released);
+		released.clear();
+		return result;
+	}
+	
+	/**
+	 * Release all the reservations of the robot
+	 */
+	void release(MobileRobot robot) {
+		Holding holding = holdings.remove(robot);
+		if (holding == null)
+			return;
+		for (int i = holding.head; i < holding.tail; i++) {
+			long key = holding.keys[i];
+			boolean move = (key & MOVE_FLAG) != 0;
+			key &= ~MOVE_FLAG;
+			LongIntHashMap owners = move ? moveOwners : cellOwners;
+			if (owners.get(key, NO_OWNER) != holding.serial)
+				continue;
+			owners.remove(key);
+			int x = (int) (key & COORDINATE_MASK);
+			int y = (int) ((key >>> COORDINATE_BITS) & COORDINATE_MASK);
+			int t = relativeTime(key);
+			if (move) {
+				table.setMoveFree(x, y, t);
+			} else {
+				table.setFree(x, y, t);
+			}
+		}
+		holdingsBySerial.set(holding.serial, null);
+		freeSerials.push(holding.serial);
+		if (holding == owner)
+			owner = null;
+	}
+	
+	private long key(int x, int y, int t) {
+		return (((long) (tick + t) & TIME_MASK) << TIME_SHIFT) | ((long) y << COORDINATE_BITS) | x;
+	}
+	
+	/**
+	 * @return time of the key relative to the current tick, negative for the past - correct as
+	 * long as it's within 2^21 steps from the tick, whatever the tick
+	 */
+	private int relativeTime(long key) {
+		long time = (key & ~MOVE_FLAG) >>> TIME_SHIFT;
+		int shift = 32 - TIME_BITS;
+		return (int) ((time - tick) & TIME_MASK) << shift >> shift;
+	}
+	
+	/**
+	 * @return true if the reservation of the owner doesn't block the robot being planned
+	 */
+	private boolean isSeeThrough(int serial) {
+		if (serial == NO_OWNER || owner == null)
+			return false;
+		return holdingsBySerial.get(serial).rank > owner.rank;
+	}
+	
+	/**
+	 * Take over the reservation for the owner, releasing the robot of a lower priority holding it
+	 * @return false if it's held by a robot of higher priority
+	 */
+	private boolean claim(LongIntHashMap owners, long key) {
+		int serial = owners.get(key, NO_OWNER);
+		if (serial != NO_OWNER && serial != owner.serial) {
+			if (!isSeeThrough(serial))
+				return false;
+			MobileRobot robot = holdingsBySerial.get(serial).robot;
+			release(robot);
+			released.add(robot);
+		}
+		owners.put(key, owner.serial);
+		return true;
+	}
+	
+	@Override
+	public int getWidth() {
+		return table.getWidth();
+	}
+	
+	@Override
+	public int getHeight() {
+		return table.getHeight();
+	}
+	
+	@Override
+	public int getTimeDimension() {
+		return table.getTimeDimension();
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y, int t) {
+		return table.isBlocked(x, y, t) && !isSeeThrough(cellOwners.get(key(x, y, t), NO_OWNER));
+	}
+	
+	@Override
+	public boolean isBlocked(int x, int y) {
+		return table.isBlocked(x, y);
+	}
+	
+	@Override
+	public boolean isMoveBlocked(int x, int y, int x2, int y2, int t) {
+		return table.isMoveBlocked(x, y, x2, y2, t) && !isSeeThrough(moveOwners.get(key(x, y, t), NO_OWNER));
+	}
+	
+	@Override
+	public void setBlocked(int x, int y, int t) {
+		if (owner == null) {
+			table.setBlocked(x, y, t);
+			return;
+		}
+		if (!xytValid(x, y, t))
+			return;
+		long key = key(x, y, t);
+		if (claim(cellOwners, key)) {
+			table.setBlocked(x, y, t);
+			owner.add(key);
+		}
+		owner.lastX = x;
+		owner.lastY = y;
+		owner.lastTime = tick + t;
+	}
+	
+	/**
+	 * Block the cell for the rest of the time window (not as a static obstacle, when reserved by a
+	 * robot)
+	 */
+	@Override
+	public void setBlocked(int x, int y) {
+		if (owner == null) {
+			table.setBlocked(x, y);
+			return;
+		}
+		for (int t = 0; t < getTimeDimension(); t++) {
+			setBlocked(x, y, t);
+		}
+	}
+	
+	@Override
+	public void setFree(int x, int y, int t) {
+		table.setFree(x, y, t);
+	}
+	
+	@Override
+	public void setMoveBlocked(int x, int y, int x2, int y2, int t) {
+		if (owner == null) {
+			table.setMoveBlocked(x, y, x2, y2, t);
+			return;
+		}
+		if (!xytValid(x, y, t))
+			return;
+		// the robot moving the opposite way has to give way
+		long reverseKey = key(x2, y2, t);
+		int reverseOwner = moveOwners.get(reverseKey, NO_OWNER);
+		if (reverseOwner != NO_OWNER && table.isMoveBlocked(x2, y2, x, y, t) && isSeeThrough(reverseOwner)) {
+			MobileRobot robot = holdingsBySerial.get(reverseOwner).robot;
+			release(robot);
+			released.add(robot);
+		}
+		long key = key(x, y, t);
+		if (claim(moveOwners, key)) {
+			table.setMoveBlocked(x, y, x2, y2, t);
+			owner.add(key | MOVE_FLAG);
+		}
+	}
+	
+	@Override
+	public void setMoveFree(int x, int y, int t) {
+		table.setMoveFree(x, y, t);
+	}
+	
+	/**
+	 * Move the time window one step forward. The robots staying in their last cells till the end of
+	 * the window keep staying there. The reservations from the past are forgotten.
+	 */
+	@Override
+	public void advance() {
+		table.advance();
+		tick++;
+		int lastT = getTimeDimension() - 1;
+		for (Holding holding : holdings.values()) {
+			// forget the past
+			while (holding.head < holding.tail && relativeTime(holding.keys[holding.head]) < 0) {
+				long key = holding.keys[holding.head++];
+				LongIntHashMap owners = (key & MOVE_FLAG) != 0 ? moveOwners : cellOwners;
+				key &= ~MOVE_FLAG;
+				if (owners.get(key, NO_OWNER) == holding.serial)
+					owners.remove(key);
+			}
+			// keep staying
+			if (holding.lastTime == tick + lastT - 1) {
+				long key = key(holding.lastX, holding.lastY, lastT);
+				if (cellOwners.get(key, NO_OWNER) == NO_OWNER) {
+					cellOwners.put(key, holding.serial);
+					table.setBlocked(holding.lastX, holding.lastY, lastT);
+					holding.add(key);
+				}
+				holding.lastTime = tick + lastT;
+			}
+		}
+	}
+}
@@ -9,15 +9,37 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import igrek.robopath.common.OccupancyIndex;
 import igrek.robopath.common.Point;
 import igrek.robopath.common.TileMap;
 import igrek.robopath.mazegenerator.MazeGenerator;
 import igrek.robopath.mazegenerator.NoNextFieldException;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.astar.DistanceOracle;
+import igrek.robopath.pathfinder.astar.ReverseResumableAStar;
+import igrek.robopath.pathfinder.cbs.CBSSolver;
+import igrek.robopath.pathfinder.pbs.PBSSolver;
 import igrek.robopath.pathfinder.whca.Path;
+import igrek.robopath.pathfinder.whca.PlanningBudget;
+import igrek.robopath.pathfinder.whca.RecordingReservations;
 import igrek.robopath.pathfinder.whca.ReservationTable;
+import igrek.robopath.pathfinder.whca.Reservations;
+import igrek.robopath.pathfinder.whca.SparseReservationTable;
 import igrek.robopath.pathfinder.whca.WHCAPathFinder;
 import javafx.util.Pair;
 
@@ -34,13 +56,40 @@ public class WHCAController {
 		return Integer.compare(o2.getPriority(), o1.getPriority());
 	};
 	private List<MobileRobot> robots = new ArrayList<>();
-	private List<MobileRobot> robotsReached = new ArrayList<>();
+	/** robots which have reached their targets in the current step, in the order of the list */
+	private Set<MobileRobot> robotsReached = new LinkedHashSet<>();
 	
 	private WHCASimulationParams params;
-	private boolean reorderNeeded = false;
 	private volatile boolean calculatingPaths = false;
 	private boolean prioritiesPromotion = true;
 	private boolean timeWindowScaling = true;
+	/** reused by all the searches to avoid allocating the search space every time */
+	private WHCAPathFinder pathFinder;
+	/** distances to the targets, valid until the map gets modified */
+	private DistanceFieldCache distanceCache = new DistanceFieldCache();
+	/** all-pairs distances of the map, built when enabled */
+	private DistanceOracle.Cache distanceOracles = new DistanceOracle.Cache();
+	/** runs the planning work which can be done in parallel */
+	private ExecutorService planningExecutor = ForkJoinPool.commonPool();
+	/** reservations kept between the steps by the incremental replanning */
+	private RobotReservations robotReservations;
+	private long steps = 0;
+	private int stepsSinceReplan = 0;
+	/** path finders of the speculative planning threads */
+	private ThreadLocal<WHCAPathFinder> speculativePathFinders = ThreadLocal.withInitial(() -> new WHCAPathFinder(null, null, distanceCache));
+	private double lastReplanRate;
+	private double lastSpeedup;
+	/** plans the snapshots of the world in the background, created when needed */
+	private PlanningService planningService;
+	/** committed moves of the asynchronous planning, grows when the plans come too late */
+	private int asyncHorizon = 1;
+	/** robots (by their index in the list) on their positions, updated as they move */
+	private OccupancyIndex positions;
+	/** the robots have been added, removed or reordered since the positions have been indexed */
+	private boolean positionsStale = true;
+	private int indexedRobots;
+	/** robots (by their index in the list) on their nearest targets, rebuilt by the collision checks */
+	private OccupancyIndex nearestTargets;
 	
 	public WHCAController(WHCAPresenter presenter, WHCASimulationParams params) {
 		this.params = params;
@@ -65,6 +114,10 @@ public class WHCAController {
 		this.timeWindowScaling = timeWindowScaling;
 	}
 	
+	public void setPlanningExecutor(ExecutorService planningExecutor) {
+		this.planningExecutor = planningExecutor;
+	}
+	
 	public TileMap getMap() {
 		return map;
 	}
@@ -78,12 +131,33 @@ public class WHCAController {
 	}
 	
 	synchronized void resetMap() {
+		stopPlanningService();
 		map = new TileMap(params.mapSizeW, params.mapSizeH);
 		robots.clear();
+		positionsStale = true;
+		distanceCache.clear();
+	}
+	
+	/**
+	 * Stop the background planning, the controller can be used again afterwards
+	 */
+	public synchronized void dispose() {
+		stopPlanningService();
+	}
+	
+	/**
+	 * Stop the planning thread, dropping the plans not taken over yet
+	 */
+	private void stopPlanningService() {
+		if (planningService != null) {
+			planningService.shutdown();
+			planningService = null;
+		}
 	}
 	
 	public synchronized void placeRobots() {
 		robots.clear();
+		positionsStale = true;
 		for (int i = 0; i < params.robotsCount; i++) {
 			Point cell = randomUnoccupiedCellForRobot(map);
 			if (cell == null)
@@ -96,6 +170,7 @@ public class WHCAController {
 		int id = nextRobotId(robots);
 		MobileRobot robo = new MobileRobot(point, robot -> onTargetReached(robot), id, id);
 		robots.add(robo);
+		positionsStale = true;
 		return robo;
 	}
 	
@@ -108,7 +183,6 @@ public class WHCAController {
 			if (robot.getTarget() == null || robot.hasReachedTarget()) {
 				logger.info("robot: " + robot + " - assigning new target");
 				randomRobotTarget(robot);
-				reorderNeeded = true;
 			}
 		}
 	}
@@ -120,7 +194,6 @@ public class WHCAController {
 		for (MobileRobot robot : robots) {
 			randomRobotTarget(robot);
 		}
-		reorderNeeded = true;
 	}
 	
 	public synchronized void generateMaze() {
@@ -133,14 +206,39 @@ public class WHCAController {
 	
 	public synchronized void setRobots(List<MobileRobot> robots) {
 		this.robots = robots;
+		positionsStale = true;
 	}
 	
-	MobileRobot occupiedByRobot(Point point) {
-		for (MobileRobot robot : robots) {
-			if (robot.getPosition().equals(point))
-				return robot;
+	synchronized MobileRobot occupiedByRobot(Point point) {
+		int robot = robotPositions().get(point);
+		return robot == OccupancyIndex.NONE ? null : robots.get(robot);
+	}
+	
+	/**
+	 * @return index of the robots' positions, built anew if the robots or the map have changed
+	 */
+	private OccupancyIndex robotPositions() {
+		// robots may be removed from the list by the presenter
+		OccupancyIndex fitting = occupancyIndex(positions);
+		if (positionsStale || robots.size() != indexedRobots || fitting != positions) {
+			positions = fitting;
+			positions.clear();
+			for (int i = 0; i < robots.size(); i++) {
+				positions.set(i, robots.get(i).getPosition());
+			}
+			indexedRobots = robots.size();
+			positionsStale = false;
 		}
-		return null;
+		return positions;
+	}
+	
+	/**
+	 * @return the index if it fits the map, a new one otherwise
+	 */
+	private OccupancyIndex occupancyIndex(OccupancyIndex index) {
+		if (index != null && index.getWidth() == map.getWidthInTiles() && index.getHeight() == map.getHeightInTiles())
+			return index;
+		return new OccupancyIndex(map.getWidthInTiles(), map.getHeightInTiles());
 	}
 	
 	private void randomRobotTarget(MobileRobot robot) {
@@ -200,9 +298,12 @@ public class WHCAController {
 		resetAllCollidedRobots();
 		robotsReached.clear();
 		//		logger.debug("moving robots...");
-		for (MobileRobot robot : robots) {
+		OccupancyIndex positions = robotPositions();
+		for (int i = 0; i < robots.size(); i++) {
+			MobileRobot robot = robots.get(i);
 			if (robot.hasNextMove()) {
 				robot.setPosition(robot.pollNextMove());
+				positions.set(i, robot.getPosition());
 			}
 			if (robot.hasReachedTarget() && params.robotAutoTarget) {
 				robotsReached.add(robot);
@@ -215,77 +316,714 @@ public class WHCAController {
 		for (MobileRobot robot : robotsReached) {
 			robot.targetReached();
 		}
-		if (replan) {
-			logger.debug("replanning all paths...");
-			findPaths();
+		if (robotReservations != null)
+			robotReservations.advance();
+		steps++;
+		stepsSinceReplan++;
+		boolean plansDropped = planningService != null && !applyPublishedPlans();
+		if (params.asynchronousPlanning) {
+			if (replan || plansDropped)
+				requestPaths();
+			resetAllCollidedRobots();
+			return;
+		}
+		switch (params.replanningSchedule) {
+			case PERIODIC:
+				if (stepsSinceReplan >= replanningPeriod())
+					replanAll();
+				break;
+			case HYBRID:
+				if (robotReservations == null || stepsSinceReplan >= replanningPeriod()) {
+					findPaths();
+				} else if (replan) {
+					findPathsIncrementally(robot -> false, params.replanningBudget);
+				}
+				break;
+			case STAGGERED:
+				if (robotReservations == null) {
+					findPaths();
+				} else {
+					// the robots of a slice are planned once a period
+					int period = replanningPeriod();
+					int slice = (int) (steps % period);
+					findPathsIncrementally(robot -> robot.getId() % period == slice, Integer.MAX_VALUE);
+				}
+				break;
+			default:
+				if (replan) {
+					if (robotReservations != null && params.incrementalReplanning) {
+						findPathsIncrementally(robot -> false, Integer.MAX_VALUE);
+					} else {
+						logger.debug("replanning all paths...");
+						replanAll();
+					}
+				}
 		}
 		//		logger.debug("collision detection (after)...");
 		resetAllCollidedRobots();
 	}
 	
+	/**
+	 * Plan the paths of all the robots in the background. The robots keep moving along their current
+	 * paths, the new ones are taken over at one of the next steps.
+	 */
+	public synchronized void requestPaths() {
+		params.readFromUI();
+		planningService().submit(snapshot());
+	}
+	
+	/**
+	 * Plan the paths of all the robots on the planning thread, not to block the caller. Unlike
+	 * {@link #requestPaths()}, the robots wait for the paths, which are taken over right away.
+	 */
+	public synchronized Future<?> findPathsInBackground() {
+		return planningService().execute(this::findPaths);
+	}
+	
+	private synchronized PlanningService planningService() {
+		if (planningService == null)
+			planningService = new PlanningService(new SnapshotPlanner());
+		return planningService;
+	}
+	
+	/**
+	 * @return the current state of the world, committing the moves of the current horizon
+	 */
+	synchronized WorldSnapshot snapshot() {
+		sortRobots();
+		int horizon = params.asynchronousHorizon > 0 ? params.asynchronousHorizon : asyncHorizon;
+		return new WorldSnapshot(steps, horizon, params, map, robots);
+	}
+	
+	/**
+	 * @return true if the paths are being planned in the background
+	 */
+	synchronized boolean isPlanningInBackground() {
+		return planningService != null && planningService.isPlanning();
+	}
+	
+	int getAsyncHorizon() {
+		return asyncHorizon;
+	}
+	
+	/**
+	 * Take over the paths planned in the background, if the robots are still where they were expected
+	 * @return false if the plan set has been dropped
+	 */
+	private boolean applyPublishedPlans() {
+		PlanSet plans = planningService.poll();
+		return plans == null || applyPlans(plans);
+	}
+	
+	/**
+	 * Take over the paths of the plan set, if the robots are still where they were expected
+	 * @return false if the plan set has been dropped
+	 */
+	synchronized boolean applyPlans(PlanSet plans) {
+		WorldSnapshot snapshot = plans.getSnapshot();
+		long executed = steps - snapshot.getStep();
+		if (executed > snapshot.getHorizon()) {
+			if (params.asynchronousHorizon <= 0 && asyncHorizon < params.timeDimension - 1)
+				asyncHorizon++;
+			logger.debug("plans dropped - planned too late, committed moves: " + asyncHorizon);
+			return false;
+		}
+		if (snapshot.getRobots().size() != robots.size())
+			return false;
+		Map<Integer, MobileRobot> robotsById = new HashMap<>();
+		for (MobileRobot robot : robots) {
+			robotsById.put(robot.getId(), robot);
+		}
+		for (WorldSnapshot.RobotState state : snapshot.getRobots()) {
+			MobileRobot robot = robotsById.get(state.getId());
+			if (robot == null || !robot.getPosition().equals(state.getPositionAfter((int) executed))) {
+				logger.debug("plans dropped - the robots have changed");
+				return false;
+			}
+		}
+		for (WorldSnapshot.RobotState state : snapshot.getRobots()) {
+			MobileRobot robot = robotsById.get(state.getId());
+			robot.resetMovesQue();
+			List<Point> committed = state.getCommitted();
+			for (int i = (int) executed; i < committed.size(); i++) {
+				robot.enqueueMove(committed.get(i).x, committed.get(i).y);
+			}
+			robot.enqueueMoves(plans.getMoves(robot.getId()));
+			robot.setPriority(plans.getPriority(robot.getId()));
+			scaleTimeWindow(robot.getPriority());
+		}
+		if (params.asynchronousHorizon <= 0 && executed + 1 < asyncHorizon)
+			asyncHorizon--;
+		robotReservations = null;
+		logger.debug("plans taken over after " + executed + " steps, planned in " + plans.getTime() / 1000000 + " ms");
+		return true;
+	}
+	
+	/**
+	 * Plans the snapshots on the planning service thread. It has its own search and heuristics, so
+	 * nothing is shared with the simulation thread - every planning service gets a new one. The
+	 * params are taken from the snapshot, not to be read while the UI thread is changing them.
+	 */
+	private class SnapshotPlanner implements Function<WorldSnapshot, PlanSet> {
+		
+		private final DistanceFieldCache distanceCache = new DistanceFieldCache();
+		private final DistanceOracle.Cache distanceOracles = new DistanceOracle.Cache();
+		private WHCAPathFinder pathFinder;
+		
+		/**
+		 * Plan all the robots of the snapshot in the order of priorities
+		 */
+		@Override
+		public PlanSet apply(WorldSnapshot snapshot) {
+			long startTime = System.nanoTime();
+			TileMap map2 = snapshot.getMap();
+			WHCASimulationParams snapshotParams = snapshot.getParams();
+			distanceCache.setMemoryBudget(snapshotParams.distanceCacheBudget);
+			DistanceOracle oracle = snapshotParams.distanceOracle ? distanceOracles.get(map2, snapshotParams.distanceOracleMaxCells) : null;
+			Reservations reservationTable = createReservationTable(snapshotParams, map2, snapshot.getTimeDimension());
+			if (pathFinder == null)
+				pathFinder = new WHCAPathFinder(reservationTable, map2, distanceCache);
+			pathFinder.reset(reservationTable, map2);
+			pathFinder.setDistanceOracle(oracle);
+			List<MobileRobot> planned = snapshot.createRobots();
+			if (snapshotParams.planningAlgorithm != PlanningAlgorithm.WHCA && findPathsConflictBased(snapshotParams, planned, map2, snapshot
+					.getTimeDimension(), distanceCache, oracle))
+				return new PlanSet(snapshot, planned, System.nanoTime() - startTime);
+			for (MobileRobot robot : planned) {
+				Point start = robot.getPosition();
+				Point target = robot.getTarget();
+				if (target == null)
+					continue;
+				Path path = pathFinder.findPath(start.getX(), start.getY(), target.getX(), target.getY());
+				reservePath(robot, path, reservationTable, false);
+			}
+			return new PlanSet(snapshot, planned, System.nanoTime() - startTime);
+		}
+	}
+	
+	/**
+	 * Plan all the robots, within the planning limits if they are set
+	 */
+	private void replanAll() {
+		boolean limited = params.planningTimeLimit > 0 || params.planningExpansionsLimit > 0;
+		if (limited && params.planningAlgorithm == PlanningAlgorithm.WHCA) {
+			PlanningReport report = findPaths(new PlanningBudget(params.planningTimeLimit * 1000000, params.planningExpansionsLimit));
+			logger.debug("budgeted planning - " + report);
+		} else {
+			findPaths();
+		}
+	}
+	
 	synchronized void findPaths() {
 		calculatingPaths = true;
 		params.readFromUI();
-		int tDim = params.timeDimension;
-		TileMap map2 = new TileMap(map);
-		ReservationTable reservationTable = new ReservationTable(map2.getWidthInTiles(), map2.getHeightInTiles(), tDim);
+		distanceCache.setMemoryBudget(params.distanceCacheBudget);
+		// planning on a snapshot not to be disturbed by the modifications of the map
+		TileMap map2 = map.snapshot();
+		Reservations reservationTable = createReservationTable(params, map2, params.timeDimension);
+		sortRobots();
+		
+		robotReservations = null;
+		stepsSinceReplan = 0;
+		if (params.planningAlgorithm != PlanningAlgorithm.WHCA && findPathsConflictBased(params, robots, map2, params.timeDimension, distanceCache, distanceOracle(map2))) {
+			calculatingPaths = false;
+			return;
+		}
+		if (params.incrementalReplanning || params.replanningSchedule.isPartial()) {
+			if (params.parallelHeuristics)
+				precomputeHeuristics(map2);
+			robotReservations = new RobotReservations(reservationTable, map2);
+			planUnreservedRobots();
+		} else if (params.speculativePlanning) {
+			findPathsSpeculatively(reservationTable, map2);
+		} else {
+			if (params.parallelHeuristics)
+				precomputeHeuristics(map2);
+			for (MobileRobot robot : robots) {
+				findPath(robot, reservationTable, map2);
+			}
+		}
+		calculatingPaths = false;
+	}
+	
+	/**
+	 * Plan all the robots at once with CBS, ECBS or PBS, within the planning limits if they are set
+	 * @param params the params of the planning - the controller's ones or of a snapshot
+	 * @return false if no solution has been found - the robots' moves are left untouched
+	 */
+	private boolean findPathsConflictBased(WHCASimulationParams params, List<MobileRobot> robots, TileMap map, int timeDimension, DistanceFieldCache distanceCache, DistanceOracle oracle) {
+		PlanningBudget budget = null;
+		if (params.planningTimeLimit > 0 || params.planningExpansionsLimit > 0)
+			budget = new PlanningBudget(params.planningTimeLimit * 1000000, params.planningExpansionsLimit);
+		List<Point> starts = new ArrayList<>(robots.size());
+		List<Point> targets = new ArrayList<>(robots.size());
+		for (MobileRobot robot : robots) {
+			starts.add(robot.getPosition());
+			targets.add(robot.getTarget());
+		}
+		List<Path> paths;
+		int expandedNodes;
+		if (params.planningAlgorithm == PlanningAlgorithm.PBS) {
+			PBSSolver solver = new PBSSolver(map, timeDimension, distanceCache);
+			solver.setDistanceOracle(oracle);
+			solver.setMaxNodes(params.pbsMaxNodes);
+			solver.setBudget(budget);
+			paths = solver.solve(starts, targets);
+			expandedNodes = solver.getExpandedNodes();
+		} else {
+			CBSSolver solver = new CBSSolver(map, timeDimension, distanceCache);
+			if (params.planningAlgorithm == PlanningAlgorithm.ECBS)
+				solver.setSuboptimality(params.ecbsSuboptimality);
+			solver.setMaxNodes(params.cbsMaxNodes);
+			solver.setBudget(budget);
+			paths = solver.solve(starts, targets);
+			expandedNodes = solver.getExpandedNodes();
+		}
+		if (paths == null) {
+			logger.debug(params.planningAlgorithm + " found no solution (" + expandedNodes + " nodes expanded), planning with WHCA*");
+			return false;
+		}
+		for (int i = 0; i < robots.size(); i++) {
+			MobileRobot robot = robots.get(i);
+			Path path = paths.get(i);
+			robot.resetMovesQue();
+			for (int t = 1; t < path.getLength(); t++) {
+				robot.enqueueMove(path.getX(t), path.getY(t));
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Plan the robots in the order of priorities until the budget is exhausted. Each deferred robot
+	 * keeps the rest of its previous path if it's still free, otherwise it waits in place.
+	 * The searches and their heuristics are charged to the budget, but building the distance oracle
+	 * and the reservation table is not limited - it's done once per planning, before the robots.
+	 * @param budget limit of the time and the expanded nodes
+	 * @return which robots have been planned and which deferred
+	 */
+	public synchronized PlanningReport findPaths(PlanningBudget budget) {
+		calculatingPaths = true;
+		long startTime = System.nanoTime();
+		params.readFromUI();
+		distanceCache.setMemoryBudget(params.distanceCacheBudget);
+		TileMap map2 = map.snapshot();
+		Reservations reservationTable = createReservationTable(params, map2, params.timeDimension);
+		sortRobots();
+		robotReservations = null;
+		stepsSinceReplan = 0;
+		
+		PlanningReport report = new PlanningReport();
+		for (MobileRobot robot : robots) {
+			MovesQueue previousMoves = robot.getMovesQue().share();
+			if (!budget.isExhausted()) {
+				pathFinder = pathFinder(reservationTable, map2);
+				pathFinder.setBudget(budget);
+				try {
+					findPath(robot, reservationTable, map2);
+				} finally {
+					pathFinder.setBudget(null);
+				}
+				if (robot.getTarget() == null || !pathFinder.isInterrupted()) {
+					report.addPlanned(robot);
+					continue;
+				}
+			}
+			robot.resetMovesQue();
+			if (reservePreviousPath(robot, previousMoves, reservationTable)) {
+				report.addKeptPath(robot);
+			} else {
+				Point position = robot.getPosition();
+				reservationTable.setBlocked(position.x, position.y);
+				report.addWaiting(robot);
+			}
+		}
+		report.finish(budget.getExpansions(), System.nanoTime() - startTime);
+		calculatingPaths = false;
+		return report;
+	}
+	
+	/**
+	 * Enqueue and reserve the previously planned moves, if they don't collide with the reserved paths
+	 * @return false if the moves are not free anymore
+	 */
+	private boolean reservePreviousPath(MobileRobot robot, MovesQueue moves, Reservations reservationTable) {
+		int tDim = reservationTable.getTimeDimension();
+		Point start = robot.getPosition();
+		if (moves.isEmpty() || reservationTable.isBlocked(start.x, start.y, 0))
+			return false;
+		int length = Math.min(moves.size(), tDim - 1);
+		int lastX = start.x;
+		int lastY = start.y;
+		for (int t = 0; t < length; t++) {
+			int nextX = moves.getX(t);
+			int nextY = moves.getY(t);
+			if (!Point.isAdjacentOrEqual(lastX, lastY, nextX, nextY) || reservationTable.isBlocked(nextX, nextY, t + 1))
+				return false;
+			if ((nextX != lastX || nextY != lastY) && reservationTable.isMoveBlocked(nextX, nextY, lastX, lastY, t))
+				return false;
+			// diagonal move not possible when one cell is blocked
+			if (nextX != lastX && nextY != lastY && (reservationTable.isBlocked(lastX, lastY, t + 1) || reservationTable
+					.isBlocked(lastX, nextY, t + 1) || reservationTable.isBlocked(nextX, lastY, t + 1)))
+				return false;
+			lastX = nextX;
+			lastY = nextY;
+		}
+		for (int t = length + 1; t < tDim; t++) {
+			if (reservationTable.isBlocked(lastX, lastY, t))
+				return false;
+		}
+		Path path = new Path();
+		for (int t = length; t > 0; t--) {
+			path.prependStep(moves.getX(t - 1), moves.getY(t - 1), t);
+		}
+		path.prependStep(start.x, start.y, 0);
+		reservePath(robot, path, reservationTable);
+		return true;
+	}
+	
+	private Reservations createReservationTable(WHCASimulationParams params, TileMap map2, int tDim) {
+		if (params.sparseReservations)
+			return new SparseReservationTable(map2, tDim);
+		ReservationTable denseTable = new ReservationTable(map2.getWidthInTiles(), map2.getHeightInTiles(), tDim);
 		map2.foreach((x, y, occupied) -> {
 			if (occupied)
-				reservationTable.setBlocked(x, y);
+				denseTable.setBlocked(x, y);
 		});
-		
-		reorderNeeded = true; // TODO reorder only when needed
-		if (reorderNeeded) {
-			Collections.sort(robots, robotsPriorityComparator);
-			logger.debug("the new order: " + Joiner.on(", ").join(robots));
-			reorderNeeded = false;
+		return denseTable;
+	}
+	
+	/**
+	 * Sort the robots by priorities, unless they are in order already - the priorities are changed
+	 * in many places (promotions, plans taken over) and the robots are added by the presenter
+	 */
+	private void sortRobots() {
+		if (isSorted())
+			return;
+		Collections.sort(robots, robotsPriorityComparator);
+		positionsStale = true;
+		logger.debug("the new order: " + Joiner.on(", ").join(robots));
+	}
+	
+	private boolean isSorted() {
+		for (int i = 1; i < robots.size(); i++) {
+			if (robotsPriorityComparator.compare(robots.get(i - 1), robots.get(i)) > 0)
+				return false;
 		}
-		
+		return true;
+	}
+	
+	private WHCAPathFinder pathFinder(Reservations reservationTable, TileMap map) {
+		if (pathFinder == null) {
+			pathFinder = new WHCAPathFinder(reservationTable, map, distanceCache);
+		} else {
+			pathFinder.reset(reservationTable, map);
+		}
+		return pathFinder;
+	}
+	
+	/**
+	 * @return number of steps between planning all the robots
+	 */
+	private int replanningPeriod() {
+		if (params.replanningPeriod > 0)
+			return params.replanningPeriod;
+		return Math.max(1, params.timeDimension / 2);
+	}
+	
+	/**
+	 * Plan again only the robots needing a new path: the ones which have reached their targets or
+	 * have run out of moves, and the scheduled ones. The reservations of the other robots are kept,
+	 * unless a new path of a higher priority crosses them.
+	 * It's a trade-off: the kept paths were planned around the old paths of the others and they
+	 * aren't made better when the others move on, so the robots are planned much less, but they
+	 * wait and go around more than when all of them are planned again.
+	 * @param scheduled robots to be planned again anyway
+	 * @param budget the most robots needing a new path to be planned, the rest wait for the next step
+	 */
+	private synchronized void findPathsIncrementally(Predicate<MobileRobot> scheduled, int budget) {
+		params.readFromUI();
+		TileMap reservedMap = robotReservations.getMap();
+		if (reservedMap.getVersion() != map.getVersion() || robotReservations.getTimeDimension() != params.timeDimension) {
+			logger.debug("replanning all paths - the map or the time window has changed");
+			findPaths();
+			return;
+		}
+		calculatingPaths = true;
+		sortRobots();
+		int deferred = 0;
 		for (MobileRobot robot : robots) {
-			findPath(robot, reservationTable, map);
+			if (robot.getTarget() == null)
+				continue;
+			boolean needed = robotsReached.contains(robot) || (!robot.hasNextMove() && !robot.hasReachedTarget());
+			if (needed && budget > 0) {
+				budget--;
+				robotReservations.release(robot);
+			} else if (scheduled.test(robot)) {
+				robotReservations.release(robot);
+			} else if (needed) {
+				deferred++;
+			}
 		}
+		if (deferred > 0)
+			logger.debug(deferred + " robots deferred to the next step");
+		planUnreservedRobots();
 		calculatingPaths = false;
 	}
 	
-	public void findPath(MobileRobot robot, ReservationTable reservationTable, TileMap map) {
+	/**
+	 * Plan the robots without reserved paths in the order of priorities
+	 */
+	private void planUnreservedRobots() {
+		robotReservations.setPriorityOrder(robots);
+		int planned = 0;
+		for (MobileRobot robot : robots) {
+			if (robotReservations.isHolding(robot))
+				continue;
+			robotReservations.setOwner(robot);
+			findPath(robot, robotReservations, robotReservations.getMap());
+			robotReservations.setOwner(null);
+			planned++;
+		}
+		int crossed = robotReservations.pollReleased().size();
+		logger.debug("planned " + planned + " of " + robots.size() + " robots, " + crossed + " due to crossed paths");
+	}
+	
+	public void findPath(MobileRobot robot, Reservations reservationTable, TileMap map) {
 		//		logger.info("robot: " + robot.getId() + " - planning path");
 		robot.resetMovesQue();
 		Point start = robot.getPosition();
 		Point target = robot.getTarget();
 		if (target != null) {
-			WHCAPathFinder pathFinder = new WHCAPathFinder(reservationTable, map);
+			pathFinder = pathFinder(reservationTable, map);
+			pathFinder.setDistanceOracle(distanceOracle(map));
 			Path path = pathFinder.findPath(start.getX(), start.getY(), target.getX(), target.getY());
 			//			logger.debug("path planned (" + robot.toString() + "): " + path);
-			if (path != null) {
-				// enque path
-				int t = 0;
-				reservationTable.setBlocked(start.x, start.y, t);
-				reservationTable.setBlocked(start.x, start.y, t + 1);
-				Path.Step step = null;
-				for (int i = 1; i < path.getLength(); i++) {
-					step = path.getStep(i);
-					robot.enqueueMove(step.getX(), step.getY());
-					t++;
-					reservationTable.setBlocked(step.getX(), step.getY(), t);
-					reservationTable.setBlocked(step.getX(), step.getY(), t + 1);
+			if (pathFinder.isInterrupted())
+				return;
+			reservePath(robot, path, reservationTable);
+		}
+	}
+	
+	/**
+	 * Enqueue the moves of the planned path and reserve it for the next robots
+	 */
+	private void reservePath(MobileRobot robot, Path path, Reservations reservationTable) {
+		reservePath(robot, path, reservationTable, true);
+	}
+	
+	/**
+	 * @param scaleTimeWindow whether the time window may grow due to the promoted priority
+	 */
+	private void reservePath(MobileRobot robot, Path path, Reservations reservationTable, boolean scaleTimeWindow) {
+		Point start = robot.getPosition();
+		if (path != null) {
+			// enque path
+			int t = 0;
+			reservationTable.setBlocked(start.x, start.y, t);
+			Path.Step step = null;
+			int lastX = start.x;
+			int lastY = start.y;
+			for (int i = 1; i < path.getLength(); i++) {
+				step = path.getStep(i);
+				robot.enqueueMove(step.getX(), step.getY());
+				// reserving the move prevents swapping, so the next robot can follow right behind
+				if (step.getX() != lastX || step.getY() != lastY)
+					reservationTable.setMoveBlocked(lastX, lastY, step.getX(), step.getY(), t);
+				t++;
+				reservationTable.setBlocked(step.getX(), step.getY(), t);
+				lastX = step.getX();
+				lastY = step.getY();
+			}
+			// fill the rest with last position
+			if (step != null) {
+				for (int i = t + 1; i < reservationTable.getTimeDimension(); i++) {
+					reservationTable.setBlocked(step.getX(), step.getY(), i);
 				}
-				// fill the rest with last position
-				if (step != null) {
-					for (int i = t + 1; i < reservationTable.getTimeDimension(); i++) {
-						reservationTable.setBlocked(step.getX(), step.getY(), i);
+			}
+			// cant find a way - it's waiting, then promote its priority
+			if (path.getLength() <= 1) {
+				promotePriority(robot, " - due to path not found", scaleTimeWindow);
+			}
+		} else {
+			logger.warn("path not found due to static obstacles");
+			reservationTable.setBlocked(start.x, start.y);
+		}
+	}
+	
+	/**
+	 * Plan the paths of all the robots in parallel, each one against the reservations of the static
+	 * obstacles only, recording the reservations it has read. Then the paths are reserved in the
+	 * priority order - a robot is planned again only if the paths reserved before have changed
+	 * anything it had read. Deterministic searches make the paths the same as planned one by one.
+	 * The distance fields are shared the same way as by {@link #precomputeHeuristics(TileMap)} -
+	 * only the owner of a field is planned in parallel, the other robots going to its target wait
+	 * for the sequential phase. With the oracle there are no fields in use, so all the robots are.
+	 */
+	private void findPathsSpeculatively(Reservations reservationTable, TileMap map) {
+		long startTime = System.nanoTime();
+		DistanceOracle oracle = distanceOracle(map);
+		Map<ReverseResumableAStar, MobileRobot> fieldOwners = fetchDistanceFields(map);
+		if (fieldOwners == null) {
+			for (MobileRobot robot : robots) {
+				findPath(robot, reservationTable, map);
+			}
+			return;
+		}
+		// a robot sharing the distance field with another one is planned only in order
+		Map<MobileRobot, Future<SpeculativePlan>> plans = new IdentityHashMap<>();
+		List<Callable<SpeculativePlan>> tasks = new ArrayList<>();
+		List<MobileRobot> speculated = new ArrayList<>();
+		if (oracle != null) {
+			for (MobileRobot robot : robots) {
+				Point target = robot.getTarget();
+				if (target != null && !target.equals(robot.getPosition()))
+					speculated.add(robot);
+			}
+		} else {
+			speculated.addAll(fieldOwners.values());
+		}
+		for (MobileRobot robot : speculated) {
+			tasks.add(() -> planSpeculatively(robot, reservationTable, map, oracle));
+		}
+		try {
+			List<Future<SpeculativePlan>> futures = planningExecutor.invokeAll(tasks);
+			for (int i = 0; i < speculated.size(); i++) {
+				plans.put(speculated.get(i), futures.get(i));
+			}
+			long sequentialTime = 0;
+			int replanned = 0;
+			for (MobileRobot robot : robots) {
+				Future<SpeculativePlan> future = plans.get(robot);
+				if (future != null) {
+					SpeculativePlan plan = future.get();
+					if (plan.reads.isValid(reservationTable)) {
+						robot.resetMovesQue();
+						reservePath(robot, plan.path, reservationTable);
+						sequentialTime += plan.time;
+						continue;
 					}
+					replanned++;
 				}
-				// cant find a way - it's waiting, then promote its priority
-				if (path.getLength() <= 1) {
-					promotePriority(robot, " - due to path not found");
-				}
-			} else {
-				logger.warn("path not found due to static obstacles");
-				reservationTable.setBlocked(start.x, start.y);
+				long replanStart = System.nanoTime();
+				findPath(robot, reservationTable, map);
+				sequentialTime += System.nanoTime() - replanStart;
 			}
+			lastReplanRate = speculated.isEmpty() ? 0 : (double) replanned / speculated.size();
+			lastSpeedup = (double) sequentialTime / (System.nanoTime() - startTime);
+			logger.debug("speculative planning: " + replanned + " of " + speculated.size() + " robots replanned, speedup: " + String
+					.format("%.2f", lastSpeedup));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	private SpeculativePlan planSpeculatively(MobileRobot robot, Reservations reservationTable, TileMap map, DistanceOracle oracle) {
+		long startTime = System.nanoTime();
+		RecordingReservations reads = new RecordingReservations(reservationTable);
+		WHCAPathFinder finder = speculativePathFinders.get();
+		finder.reset(reads, map);
+		finder.setDistanceOracle(oracle);
+		Point start = robot.getPosition();
+		Point target = robot.getTarget();
+		Path path = finder.findPath(start.getX(), start.getY(), target.getX(), target.getY());
+		return new SpeculativePlan(path, reads, System.nanoTime() - startTime);
+	}
+	
+	private static class SpeculativePlan {
+		
+		private final Path path;
+		private final RecordingReservations reads;
+		/** planning time in nanoseconds */
+		private final long time;
+		
+		SpeculativePlan(Path path, RecordingReservations reads, long time) {
+			this.path = path;
+			this.reads = reads;
+			this.time = time;
 		}
 	}
 	
+	/**
+	 * @return the ratio of the robots planned again to all the speculatively planned robots
+	 * during the last speculative planning
+	 */
+	public double getLastReplanRate() {
+		return lastReplanRate;
+	}
+	
+	/**
+	 * @return the time the last speculative planning would take one robot after another divided
+	 * by its actual time
+	 */
+	public double getLastSpeedup() {
+		return lastSpeedup;
+	}
+	
+	/**
+	 * Compute the distance fields to the robots' targets in parallel, before the prioritized
+	 * planning needs them. The fields are taken from the cache in the planning order and the
+	 * searches are started from the robots' positions, so the distances and the cache content are
+	 * the same as when computed on demand.
+	 */
+	private void precomputeHeuristics(TileMap map) {
+		if (distanceOracle(map) != null)
+			return;
+		Map<ReverseResumableAStar, MobileRobot> fieldOwners = fetchDistanceFields(map);
+		if (fieldOwners == null)
+			return;
+		List<Callable<Integer>> tasks = new ArrayList<>();
+		fieldOwners.forEach((field, robot) -> tasks.add(() -> field.distance(robot.getPosition()
+				.getX(), robot.getPosition().getY())));
+		try {
+			for (Future<Integer> future : planningExecutor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+	
+	/**
+	 * Take the distance fields of the robots' targets from the cache in the planning order.
+	 * That's the threading policy of the parallel planning: a field is used by the task of its
+	 * owner only, the other robots going to the same target use it after the tasks are done
+	 * (invokeAll and Future.get synchronize the hand-over). Nothing else is shared by the tasks -
+	 * the map is a snapshot and the cache is synchronized.
+	 * @return the first robot going to the target of every field - the one starting its search,
+	 * null if the fields can't be kept in the cache all at once
+	 */
+	private Map<ReverseResumableAStar, MobileRobot> fetchDistanceFields(TileMap map) {
+		long fieldMemory = ReverseResumableAStar.getMemoryUsage(map.getWidthInTiles(), map.getHeightInTiles());
+		if (fieldMemory * robots.size() > distanceCache.getMemoryBudget())
+			return null; // the first fields would be evicted before being used
+		Map<ReverseResumableAStar, MobileRobot> fieldOwners = new IdentityHashMap<>();
+		if (distanceOracle(map) != null)
+			return fieldOwners;
+		for (MobileRobot robot : robots) {
+			Point start = robot.getPosition();
+			Point target = robot.getTarget();
+			if (target == null || target.equals(start))
+				continue;
+			ReverseResumableAStar field = distanceCache.get(map, target.getX(), target.getY());
+			fieldOwners.putIfAbsent(field, robot);
+		}
+		return fieldOwners;
+	}
+	
+	/**
+	 * @return the distance oracle of the map if enabled, null if disabled or refused for the map size
+	 */
+	private DistanceOracle distanceOracle(TileMap map) {
+		if (!params.distanceOracle)
+			return null;
+		return distanceOracles.get(map, params.distanceOracleMaxCells);
+	}
+	
 	private void resetAllCollidedRobots() {
 		int iterations = 1;
 		while (resetCollidedRobots()) {
@@ -296,8 +1034,11 @@ public class WHCAController {
 	private boolean resetCollidedRobots() {
 		boolean collisionHappened = false;
 		List<Pair<MobileRobot, MobileRobot>> collidedRobots = new ArrayList<>();
-		for (MobileRobot robot : robots) {
-			MobileRobot collidedRobot = collisionDetected(robot);
+		nearestTargets = occupancyIndex(nearestTargets);
+		nearestTargets.clear();
+		for (int i = 0; i < robots.size(); i++) {
+			MobileRobot robot = robots.get(i);
+			MobileRobot collidedRobot = collisionDetected(i, robot);
 			if (collidedRobot != null) {
 				logger.debug("Collision detected between robots: " + robot.getId() + ", " + collidedRobot
 						.getId());
@@ -322,25 +1063,31 @@ public class WHCAController {
 		return collisionHappened;
 	}
 	
-	private MobileRobot collisionDetected(MobileRobot robot) {
-		for (MobileRobot otherRobot : robots) {
-			if (otherRobot == robot)
-				continue;
-			if (otherRobot.nearestTarget().equals(robot.nearestTarget())) {
-				return otherRobot;
-			}
-		}
-		return null;
+	/**
+	 * Index the robot's nearest target
+	 * @return one of the robots indexed before, which has the same nearest target
+	 */
+	private MobileRobot collisionDetected(int index, MobileRobot robot) {
+		int x = robot.nearestTargetX();
+		int y = robot.nearestTargetY();
+		int other = nearestTargets.get(x, y);
+		nearestTargets.set(index, x, y);
+		return other == OccupancyIndex.NONE ? null : robots.get(other);
 	}
 	
-	private void promotePriority(MobileRobot robot, String reason) {
+	private void promotePriority(MobileRobot robot, String reason, boolean scaleTimeWindow) {
 		if (!prioritiesPromotion)
 			return;
 		robot.setPriority(robot.getPriority() + 1);
-		reorderNeeded = true;
 		logger.debug("robot " + robot.getId() + " promoted to priority " + robot.getPriority() + reason);
-		if (robot.getPriority() > params.timeDimension && timeWindowScaling) {
-			params.timeDimension = robot.getPriority();
+		if (scaleTimeWindow) {
+			scaleTimeWindow(robot.getPriority());
+		}
+	}
+	
+	private void scaleTimeWindow(int priority) {
+		if (priority > params.timeDimension && timeWindowScaling) {
+			params.timeDimension = priority;
 			params.sendToUI();
 			//			logger.debug("Time dimension increased to " + params.timeDimension);
 		}
@@ -5,8 +5,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-import java.util.LinkedList;
 import java.util.List;
+import javax.annotation.PreDestroy;
 
 import de.felixroske.jfxsupport.FXMLController;
 import igrek.robopath.common.Point;
@@ -101,6 +101,15 @@ public class WHCAPresenter {
 		});
 	}
 	
+	@PreDestroy
+	public void dispose() {
+		if (simulationTimeline != null)
+			simulationTimeline.stop();
+		if (animationTimeline != null)
+			animationTimeline.stop();
+		controller.dispose();
+	}
+	
 	TileMap getMap() {
 		return controller.getMap();
 	}
@@ -345,15 +354,17 @@ public class WHCAPresenter {
 		}
 		// draw path
 		gc.setStroke(robotColor);
-		LinkedList<Point> movesQue = robot.getMovesQue();
-		Point previous = robot.getPosition();
-		for (Point move : movesQue) {
-			double fromX = previous.getX() * cellW + cellW / 2;
-			double fromY = previous.getY() * cellH + cellH / 2;
-			double toX = move.getX() * cellW + cellW / 2;
-			double toY = move.getY() * cellH + cellH / 2;
+		MovesQueue movesQue = robot.getMovesQue();
+		int previousX = robot.getPosition().getX();
+		int previousY = robot.getPosition().getY();
+		for (int i = 0; i < movesQue.size(); i++) {
+			double fromX = previousX * cellW + cellW / 2;
+			double fromY = previousY * cellH + cellH / 2;
+			double toX = movesQue.getX(i) * cellW + cellW / 2;
+			double toY = movesQue.getY(i) * cellH + cellH / 2;
 			gc.strokeLine(fromX, fromY, toX, toY);
-			previous = move;
+			previousX = movesQue.getX(i);
+			previousY = movesQue.getY(i);
 		}
 	}
 	
@@ -392,7 +403,11 @@ public class WHCAPresenter {
 	private void buttonPathfind() {
 		params.readFromUI();
 		restartTimelines();
-		new Thread(() -> controller.findPaths()).start();
+		if (params.asynchronousPlanning) {
+			controller.requestPaths();
+		} else {
+			controller.findPathsInBackground();
+		}
 	}
 	
 	private void restartTimelines() {
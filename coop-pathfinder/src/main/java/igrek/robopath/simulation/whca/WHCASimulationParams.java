@@ -3,11 +3,15 @@ package igrek.robopath.simulation.whca;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.astar.DistanceOracle;
+import igrek.robopath.pathfinder.cbs.CBSSolver;
+import igrek.robopath.pathfinder.pbs.PBSSolver;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.TextField;
 
 
-public class WHCASimulationParams {
+public class WHCASimulationParams implements Cloneable {
 	
 	public int mapSizeW = 11;
 	public int mapSizeH = 11;
@@ -18,6 +22,60 @@ public class WHCASimulationParams {
 	
 	public int timeDimension = 8;
 	
+	/** memory limit for the heuristic distance fields kept between replans (in bytes) */
+	public long distanceCacheBudget = DistanceFieldCache.DEFAULT_MEMORY_BUDGET;
+	
+	/** use precomputed distances between all the cells as the heuristic */
+	public boolean distanceOracle = false;
+	/** the oracle is not built for maps with more free cells */
+	public int distanceOracleMaxCells = DistanceOracle.DEFAULT_MAX_CELLS;
+	
+	/** keep only the robots' reservations in a hash map instead of a bit for every (x, y, t) */
+	public boolean sparseReservations = false;
+	
+	/** compute the robots' heuristics in parallel before planning their paths */
+	public boolean parallelHeuristics = true;
+	
+	/**
+	 * plan the robots in parallel, planning again only those affected by the higher priorities - pays
+	 * off only when few robots are planned again (see WHCAController.getLastReplanRate), on the
+	 * crowded maps most of them are and the parallel searches are an overhead
+	 */
+	public boolean speculativePlanning = false;
+	
+	/**
+	 * keep the reservations between the steps and plan again only the robots needing it - much less
+	 * planning per step, but the kept paths aren't improved when the others change, so fewer robots
+	 * reach their targets in the same number of steps than with planning all of them again
+	 */
+	public boolean incrementalReplanning = false;
+	
+	/** when to plan the paths again */
+	public ReplanningSchedule replanningSchedule = ReplanningSchedule.EVENT_DRIVEN;
+	/** number of steps between planning all the robots, 0 - a half of the time window */
+	public int replanningPeriod = 0;
+	/** the most robots needing a new path planned in one step between the periodic replans */
+	public int replanningBudget = 10;
+	
+	/** time for planning all the robots (in milliseconds), 0 - no limit */
+	public long planningTimeLimit = 0;
+	/** the most nodes expanded by planning all the robots, 0 - no limit */
+	public long planningExpansionsLimit = 0;
+	
+	/** plan the robots one by one or all at once, falling back to WHCA* when there is no solution */
+	public PlanningAlgorithm planningAlgorithm = PlanningAlgorithm.WHCA;
+	/** how many times the ECBS paths may cost more than the optimal ones */
+	public double ecbsSuboptimality = 1.5;
+	/** the most constraint tree nodes expanded by CBS and ECBS */
+	public int cbsMaxNodes = CBSSolver.DEFAULT_MAX_NODES;
+	/** the most priority tree nodes expanded by PBS */
+	public int pbsMaxNodes = PBSSolver.DEFAULT_MAX_NODES;
+	
+	/** plan in the background while the robots keep moving along their current paths */
+	public boolean asynchronousPlanning = false;
+	/** moves committed before the paths planned in the background start, 0 - adjusted to the planning time */
+	public int asynchronousHorizon = 0;
+	
 	private TextField paramMapSizeW;
 	private TextField paramMapSizeH;
 	private TextField paramRobotsCount;
@@ -32,6 +90,24 @@ public class WHCASimulationParams {
 		this.paramTimeDimension = presenter.paramTimeDimension;
 	}
 	
+	/**
+	 * @return copy of the values, not bound to the UI - for planning on another thread while these
+	 * ones are changed
+	 */
+	public synchronized WHCASimulationParams copy() {
+		try {
+			WHCASimulationParams copy = (WHCASimulationParams) super.clone();
+			copy.paramMapSizeW = null;
+			copy.paramMapSizeH = null;
+			copy.paramRobotsCount = null;
+			copy.paramRobotAutoTarget = null;
+			copy.paramTimeDimension = null;
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
 	public synchronized void sendToUI() {
 		if (paramMapSizeW != null) {
 			paramMapSizeW.setText(Integer.toString(mapSizeW));
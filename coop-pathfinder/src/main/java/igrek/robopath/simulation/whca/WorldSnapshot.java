@@ -0,0 +1,122 @@
+package igrek.robopath.simulation.whca;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+
+/**
+ * Immutable state of the world to be planned in the background. The robots keep moving during the
+ * planning, so the first moves of their current paths (the horizon) are committed - the new paths
+ * start where the committed moves end.
+ */
+final class WorldSnapshot {
+	
+	/** number of the simulation step when the snapshot has been taken */
+	private final long step;
+	private final int horizon;
+	/** the planning params at the time of the snapshot, never modified */
+	private final WHCASimulationParams params;
+	/** snapshot of the map, never modified */
+	private final TileMap map;
+	/** in the order of priorities */
+	private final List<RobotState> robots;
+	
+	WorldSnapshot(long step, int horizon, WHCASimulationParams params, TileMap map, List<MobileRobot> robots) {
+		this.step = step;
+		this.horizon = horizon;
+		this.params = params.copy();
+		this.map = map.snapshot();
+		List<RobotState> states = new ArrayList<>(robots.size());
+		for (MobileRobot robot : robots) {
+			states.add(new RobotState(robot, horizon));
+		}
+		this.robots = Collections.unmodifiableList(states);
+	}
+	
+	long getStep() {
+		return step;
+	}
+	
+	int getHorizon() {
+		return horizon;
+	}
+	
+	int getTimeDimension() {
+		return params.timeDimension;
+	}
+	
+	WHCASimulationParams getParams() {
+		return params;
+	}
+	
+	TileMap getMap() {
+		return map;
+	}
+	
+	List<RobotState> getRobots() {
+		return robots;
+	}
+	
+	/**
+	 * @return new robots to be planned, placed at the end of their committed moves
+	 */
+	List<MobileRobot> createRobots() {
+		List<MobileRobot> created = new ArrayList<>(robots.size());
+		for (RobotState state : robots) {
+			MobileRobot robot = new MobileRobot(state.getPositionAfter(horizon), null, state.id, state.priority);
+			robot.setTarget(state.target == null ? null : new Point(state.target.x, state.target.y));
+			created.add(robot);
+		}
+		return created;
+	}
+	
+	static final class RobotState {
+		
+		private final int id;
+		private final int priority;
+		private final Point position;
+		private final Point target;
+		/** the moves made before the new path starts, the last position repeated when there's no more */
+		private final List<Point> committed;
+		
+		private RobotState(MobileRobot robot, int horizon) {
+			id = robot.getId();
+			priority = robot.getPriority();
+			position = copy(robot.getPosition());
+			target = robot.getTarget() == null ? null : copy(robot.getTarget());
+			List<Point> moves = new ArrayList<>(horizon);
+			Point last = position;
+			MovesQueue movesQue = robot.getMovesQue();
+			for (int i = 0; i < movesQue.size() && moves.size() < horizon; i++) {
+				last = new Point(movesQue.getX(i), movesQue.getY(i));
+				moves.add(last);
+			}
+			while (moves.size() < horizon)
+				moves.add(last);
+			committed = Collections.unmodifiableList(moves);
+		}
+		
+		private static Point copy(Point point) {
+			return new Point(point.x, point.y);
+		}
+		
+		int getId() {
+			return id;
+		}
+		
+		List<Point> getCommitted() {
+			return committed;
+		}
+		
+		/**
+		 * @return position of the robot after making the given number of the committed moves
+		 */
+		Point getPositionAfter(int moves) {
+			Point point = moves == 0 ? position : committed.get(moves - 1);
+			return copy(point);
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package igrek.robopath.common;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class LongIntHashMapTest {
+	
+	@Test
+	public void testSameAsHashMap() {
+		Random random = new Random(5);
+		LongIntHashMap map = new LongIntHashMap();
+		Map<Long, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 20000; i++) {
+			long key = random.nextInt(500);
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key) != null, map.remove(key));
+			} else {
+				expected.put(key, i);
+				map.put(key, i);
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = 0; key < 500; key++) {
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+			assertEquals((int) expected.getOrDefault(key, -1), map.get(key, -1));
+		}
+		map.forEach((key, value) -> assertEquals((int) expected.get(key), value));
+	}
+	
+}
@@ -0,0 +1,148 @@
+package igrek.robopath.common;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class OccupancyIndexTest {
+	
+	@Test
+	public void testMovingRobots() {
+		OccupancyIndex index = new OccupancyIndex(4, 3);
+		index.set(0, 1, 1);
+		index.set(1, 2, 1);
+		index.set(2, new Point(2, 1));
+		assertEquals(0, index.get(1, 1));
+		assertEquals(OccupancyIndex.NONE, index.get(0, 0));
+		assertEquals(OccupancyIndex.NONE, index.get(5, 0));
+		// several robots on one cell
+		int first = index.get(2, 1);
+		int other = index.getOther(2, 1, first);
+		assertEquals(3, first + other);
+		assertEquals(OccupancyIndex.NONE, index.getOther(1, 1, 0));
+		// moving
+		index.set(1, 3, 2);
+		assertEquals(2, index.get(2, 1));
+		assertEquals(OccupancyIndex.NONE, index.getOther(2, 1, 2));
+		assertEquals(1, index.get(3, 2));
+		index.set(0, -1, 0);
+		assertEquals(OccupancyIndex.NONE, index.get(1, 1));
+		index.clear();
+		assertEquals(OccupancyIndex.NONE, index.get(2, 1));
+		assertEquals(OccupancyIndex.NONE, index.get(3, 2));
+		index.set(2, 3, 2);
+		assertEquals(2, index.get(3, 2));
+	}
+	
+	@Test
+	public void testSeveralRobotsOnOneCell() {
+		OccupancyIndex index = new OccupancyIndex(3, 3);
+		for (int robot = 0; robot < 4; robot++) {
+			index.set(robot, 1, 1);
+		}
+		for (int robot = 0; robot < 4; robot++) {
+			assertTrue(index.getOther(1, 1, robot) != robot);
+			assertTrue(index.getOther(1, 1, robot) != OccupancyIndex.NONE);
+		}
+		// from the middle of the cell's robots, then the first one
+		index.remove(1);
+		index.remove(index.get(1, 1));
+		int left = index.get(1, 1);
+		int other = index.getOther(1, 1, left);
+		assertTrue(left != 1 && other != 1 && left != other);
+		assertEquals(left, index.getOther(1, 1, other));
+		index.remove(left);
+		assertEquals(other, index.get(1, 1));
+		assertEquals(OccupancyIndex.NONE, index.getOther(1, 1, other));
+		index.remove(other);
+		assertEquals(OccupancyIndex.NONE, index.get(1, 1));
+	}
+	
+	@Test
+	public void testMoveThenRemove() {
+		OccupancyIndex index = new OccupancyIndex(3, 3);
+		index.set(0, 0, 0);
+		index.set(1, 0, 0);
+		index.set(0, 2, 2);
+		assertEquals(1, index.get(0, 0));
+		assertEquals(OccupancyIndex.NONE, index.getOther(0, 0, 1));
+		index.remove(0);
+		assertEquals(OccupancyIndex.NONE, index.get(2, 2));
+		assertEquals(1, index.get(0, 0));
+		// removed already, never placed
+		index.remove(0);
+		index.remove(7);
+		assertEquals(1, index.get(0, 0));
+		index.set(0, 0, 0);
+		assertEquals(0, index.getOther(0, 0, 1));
+	}
+	
+	@Test
+	public void testLeaveAndReenterInOnePass() {
+		OccupancyIndex index = new OccupancyIndex(3, 3);
+		index.set(0, 1, 1);
+		index.set(1, 1, 1);
+		index.set(2, 1, 1);
+		// robot 0 steps out and back, robot 2 stays on the cell
+		index.set(0, 2, 1);
+		index.set(0, 1, 1);
+		index.set(2, 1, 1);
+		assertEquals(OccupancyIndex.NONE, index.get(2, 1));
+		index.remove(1);
+		index.remove(2);
+		assertEquals(0, index.get(1, 1));
+		assertEquals(OccupancyIndex.NONE, index.getOther(1, 1, 0));
+		index.remove(0);
+		assertEquals(OccupancyIndex.NONE, index.get(1, 1));
+	}
+	
+	@Test
+	public void testSameAsNaiveIndex() {
+		Random random = new Random(5);
+		int robots = 12;
+		OccupancyIndex index = new OccupancyIndex(4, 4);
+		// cell of each robot, -1 if removed
+		int[] cells = new int[robots];
+		Arrays.fill(cells, -1);
+		for (int i = 0; i < 2000; i++) {
+			int robot = random.nextInt(robots);
+			if (random.nextInt(5) == 0) {
+				index.remove(robot);
+				cells[robot] = -1;
+			} else {
+				int x = random.nextInt(4);
+				int y = random.nextInt(4);
+				index.set(robot, x, y);
+				cells[robot] = y * 4 + x;
+			}
+			for (int cell = 0; cell < 16; cell++) {
+				int count = 0;
+				for (int r = 0; r < robots; r++) {
+					if (cells[r] == cell)
+						count++;
+				}
+				int first = index.get(cell % 4, cell / 4);
+				if (count == 0) {
+					assertEquals(OccupancyIndex.NONE, first);
+					continue;
+				}
+				assertEquals(cell, cells[first]);
+				for (int r = 0; r < robots; r++) {
+					if (cells[r] != cell)
+						continue;
+					int other = index.getOther(cell % 4, cell / 4, r);
+					if (count == 1) {
+						assertEquals(OccupancyIndex.NONE, other);
+					} else {
+						assertTrue(other != r && cells[other] == cell);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package igrek.robopath.common;
+
+import org.junit.Test;
+
+import igrek.robopath.pathfinder.astar.Astar2DPathFinder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class OverlayMapTest {
+	
+	@Test
+	public void testObstaclesOnTopOfMap() {
+		TileMap map = new TileMap(4, 3);
+		map.setCell(1, 1, true);
+		OverlayMap overlay = new OverlayMap(map);
+		assertTrue(overlay.blocked(1, 1));
+		assertFalse(overlay.blocked(2, 1));
+		// counted obstacles
+		overlay.addObstacle(2, 1);
+		overlay.addObstacle(new Point(2, 1));
+		overlay.addObstacle(1, 1);
+		overlay.addObstacle(5, 5);
+		assertTrue(overlay.blocked(2, 1));
+		overlay.removeObstacle(2, 1);
+		assertTrue(overlay.blocked(2, 1));
+		overlay.removeObstacle(new Point(2, 1));
+		assertFalse(overlay.blocked(2, 1));
+		overlay.removeObstacle(1, 1);
+		assertTrue(overlay.blocked(1, 1));
+		// changes of the map are seen through
+		map.setCell(3, 2, true);
+		assertTrue(overlay.blocked(3, 2));
+		assertFalse(map.blocked(2, 1));
+	}
+	
+	@Test
+	public void testOutOfMapBlocked() {
+		OverlayMap map = new OverlayMap(new TileMap(3, 3));
+		assertFalse(map.blocked(2, 0));
+		assertTrue(map.blocked(-1, 1));
+		assertTrue(map.blocked(3, 1));
+		assertTrue(map.blocked(1, 3));
+	}
+	
+	@Test
+	public void testPathFinderReadsThroughOverlay() {
+		TileMap map = new TileMap(3, 3);
+		map.setCell(1, 0, true);
+		map.setCell(1, 2, true);
+		OverlayMap overlay = new OverlayMap(map);
+		overlay.addObstacle(1, 1);
+		assertNull(new Astar2DPathFinder(overlay).findPath(0, 1, 2, 1));
+		overlay.removeObstacle(1, 1);
+		assertEquals(3, new Astar2DPathFinder(overlay).findPath(0, 1, 2, 1).getLength());
+	}
+}
@@ -0,0 +1,74 @@
+package igrek.robopath.common;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class TileMapTest {
+	
+	@Test
+	public void testCellsAcrossWords() {
+		Random random = new Random(3);
+		TileMap map = new TileMap(13, 11);
+		boolean[][] expected = new boolean[13][11];
+		for (int i = 0; i < 500; i++) {
+			int x = random.nextInt(13);
+			int y = random.nextInt(11);
+			boolean occupied = random.nextBoolean();
+			map.setCell(x, y, occupied);
+			expected[x][y] = occupied;
+		}
+		for (int x = 0; x < 13; x++) {
+			for (int y = 0; y < 11; y++) {
+				assertEquals(expected[x][y], map.blocked(x, y));
+				assertEquals(expected[x][y], map.getCell(x, y));
+			}
+		}
+		assertNull(map.getCell(13, 0));
+		map.setCell(-1, 0, true);
+	}
+	
+	@Test
+	public void testOutOfMapBlocked() {
+		TileMap map = new TileMap(3, 3);
+		// the neighbouring rows are free
+		assertFalse(map.blocked(2, 0));
+		assertFalse(map.blocked(0, 2));
+		assertTrue(map.blocked(-1, 1));
+		assertTrue(map.blocked(3, 1));
+		assertTrue(map.blocked(1, -1));
+		assertTrue(map.blocked(1, 3));
+	}
+	
+	@Test
+	public void testCopyOnWrite() {
+		TileMap map = new TileMap(70, 2);
+		map.setCell(65, 0, true);
+		TileMap snapshot = map.snapshot();
+		TileMap copy = new TileMap(map);
+		assertEquals(map.getVersion(), snapshot.getVersion());
+		assertSame(snapshot, snapshot.snapshot());
+		map.setCell(65, 0, false);
+		map.setCell(3, 1, true);
+		copy.setCell(0, 0, true);
+		assertTrue(snapshot.blocked(65, 0));
+		assertFalse(snapshot.blocked(3, 1));
+		assertFalse(snapshot.blocked(0, 0));
+		assertTrue(copy.blocked(65, 0));
+		assertFalse(copy.blocked(3, 1));
+		assertFalse(map.blocked(0, 0));
+		assertTrue(map.getVersion() != snapshot.getVersion());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotImmutable() {
+		new TileMap(3, 3).snapshot().setCell(1, 1, true);
+	}
+}
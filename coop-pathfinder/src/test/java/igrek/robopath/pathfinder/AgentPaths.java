@@ -0,0 +1,103 @@
+package igrek.robopath.pathfinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.whca.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Random instances of the multi-agent planning and the checks of their solutions, shared by the
+ * solvers' tests
+ */
+public final class AgentPaths {
+	
+	private AgentPaths() {
+	}
+	
+	/**
+	 * Map with random obstacles and distinct starts and targets of the agents
+	 */
+	public static final class Instance {
+		
+		public final TileMap map;
+		public final List<Point> starts = new ArrayList<>();
+		public final List<Point> targets = new ArrayList<>();
+		
+		private Instance(TileMap map) {
+			this.map = map;
+		}
+	}
+	
+	public static Instance randomInstance(Random random, int size, int obstacles, int agents) {
+		Instance instance = new Instance(new TileMap(size, size));
+		for (int i = 0; i < obstacles; i++) {
+			instance.map.setCell(random.nextInt(size), random.nextInt(size), true);
+		}
+		while (instance.starts.size() < agents) {
+			Point start = new Point(random.nextInt(size), random.nextInt(size));
+			Point target = new Point(random.nextInt(size), random.nextInt(size));
+			if (!instance.map.blocked(start.x, start.y) && !instance.map.blocked(target.x, target.y) && !instance.starts
+					.contains(start) && !instance.targets.contains(target)) {
+				instance.starts.add(start);
+				instance.targets.add(target);
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Check the agents don't meet at a cell, swap their cells nor cut the corners occupied by each
+	 * other, staying at the last steps of their paths till the end of the window
+	 */
+	public static void assertNoConflicts(List<Path> paths, int timeDimension) {
+		for (int a = 0; a < paths.size(); a++) {
+			for (int b = a + 1; b < paths.size(); b++) {
+				Path pathA = paths.get(a);
+				Path pathB = paths.get(b);
+				for (int t = 0; t < timeDimension; t++) {
+					Point cellA = cell(pathA, t);
+					Point cellB = cell(pathB, t);
+					assertFalse("vertex conflict " + a + ", " + b + " at " + t, cellA.equals(cellB));
+					if (t == 0)
+						continue;
+					assertFalse("swap " + a + ", " + b + " at " + t, cellA.equals(cell(pathB, t - 1)) && cellB.equals(cell(pathA, t - 1)));
+					assertFalse("corner cut " + a + ", " + b + " at " + t, cutsCorner(pathA, pathB, t));
+					assertFalse("corner cut " + b + ", " + a + " at " + t, cutsCorner(pathB, pathA, t));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the first path moves diagonally to t past the second one standing at a corner
+	 */
+	private static boolean cutsCorner(Path path, Path other, int t) {
+		Point from = cell(path, t - 1);
+		Point to = cell(path, t);
+		if (from.x == to.x || from.y == to.y)
+			return false;
+		Point otherCell = cell(other, t);
+		return otherCell.equals(new Point(from.x, to.y)) || otherCell.equals(new Point(to.x, from.y));
+	}
+	
+	public static void assertReached(List<Path> paths, List<Point> targets) {
+		for (int i = 0; i < paths.size(); i++) {
+			Path path = paths.get(i);
+			assertEquals(targets.get(i), cell(path, path.getLength() - 1));
+		}
+	}
+	
+	/**
+	 * @return cell of the path at time t - the agent stays at the last step of its path
+	 */
+	public static Point cell(Path path, int t) {
+		int step = Math.min(t, path.getLength() - 1);
+		return new Point(path.getX(step), path.getY(step));
+	}
+}
@@ -0,0 +1,135 @@
+package igrek.robopath.pathfinder.astar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class DStarLiteTest {
+	
+	@Test
+	public void testObstacleOnTheWay() {
+		TileMap map = new TileMap(5, 3);
+		DStarLite dStar = new DStarLite(map, 4, 1);
+		assertEquals("[(0, 1), (1, 1), (2, 1), (3, 1), (4, 1)]", dStar.findPath(0, 1).toString());
+		dStar.updateObstacles(Arrays.asList(new Point(2, 1)));
+		Path path = dStar.findPath(1, 1);
+		assertEquals(3 + Math.sqrt(2), getCost(path), 0.001);
+		assertEquals(1, path.getX(0));
+		// static and dynamic obstacles together
+		map.setCell(2, 0, true);
+		map.setCell(2, 2, true);
+		assertNull(dStar.findPath(1, 1));
+		dStar.updateObstacles(new ArrayList<>());
+		assertEquals(3.0, getCost(dStar.findPath(1, 1)), 0.001);
+		dStar.dispose();
+	}
+	
+	@Test
+	public void testSameAsAStarWhileMoving() {
+		Random random = new Random(9);
+		for (int m = 0; m < 6; m++) {
+			TileMap map = new TileMap(25, 21);
+			new MazeGenerator(random).generateMaze(map);
+			for (int i = 0; i < 60; i++) {
+				map.setCell(random.nextInt(25), random.nextInt(21), false);
+			}
+			Point goal = randomFreeCell(map, random);
+			Point start = randomFreeCell(map, random);
+			DStarLite dStar = new DStarLite(map, goal.x, goal.y);
+			for (int step = 0; step < 30 && !start.equals(goal); step++) {
+				List<Point> obstacles = new ArrayList<>();
+				for (int i = 0; i < 5; i++) {
+					Point obstacle = randomFreeCell(map, random);
+					if (!obstacle.equals(start))
+						obstacles.add(obstacle);
+				}
+				dStar.updateObstacles(obstacles);
+				if (step % 10 == 5) {
+					int x = random.nextInt(25);
+					int y = random.nextInt(21);
+					if (!start.equals(new Point(x, y)))
+						map.setCell(x, y, !map.blocked(x, y));
+				}
+				TileMap expectedMap = new TileMap(map);
+				for (Point obstacle : obstacles) {
+					expectedMap.setCell(obstacle, true);
+				}
+				Path expected = new Astar2DPathFinder(expectedMap).findPath(start.x, start.y, goal.x, goal.y);
+				Path path = dStar.findPath(start.x, start.y);
+				if (expected == null) {
+					assertNull(path);
+					break;
+				}
+				assertNotNull(path);
+				assertEquals(getCost(expected), getCost(path), 0.001);
+				start = new Point(path.getX(1), path.getY(1));
+			}
+			dStar.dispose();
+		}
+	}
+	
+	@Test
+	public void testRepairCheaperThanNewSearch() {
+		Random random = new Random(2);
+		TileMap map = new TileMap(61, 61);
+		new MazeGenerator(random).generateMaze(map);
+		for (int i = 0; i < 300; i++) {
+			map.setCell(random.nextInt(61), random.nextInt(61), false);
+		}
+		map.setCell(0, 0, false);
+		map.setCell(60, 60, false);
+		DStarLite dStar = new DStarLite(map, 60, 60);
+		Path path = dStar.findPath(0, 0);
+		int repairExpanded = 0;
+		int searchExpanded = 0;
+		// moving along the path among the moving obstacles
+		for (int step = 0; step < 30 && path != null && path.getLength() > 1; step++) {
+			Point start = new Point(path.getX(1), path.getY(1));
+			List<Point> obstacles = new ArrayList<>();
+			TileMap mapWithObstacles = new TileMap(map);
+			for (int i = 0; i < 5; i++) {
+				Point obstacle = randomFreeCell(map, random);
+				if (!obstacle.equals(start)) {
+					obstacles.add(obstacle);
+					mapWithObstacles.setCell(obstacle, true);
+				}
+			}
+			dStar.updateObstacles(obstacles);
+			path = dStar.findPath(start.x, start.y);
+			repairExpanded += dStar.getExpandedNodes();
+			Astar2DPathFinder aStar = new Astar2DPathFinder(mapWithObstacles);
+			aStar.findPath(start.x, start.y, 60, 60);
+			searchExpanded += aStar.getExpandedNodes();
+		}
+		assertTrue(repairExpanded + " vs " + searchExpanded, repairExpanded * 5 < searchExpanded);
+	}
+	
+	private Point randomFreeCell(TileMap map, Random random) {
+		while (true) {
+			Point point = new Point(random.nextInt(map.getWidthInTiles()), random.nextInt(map.getHeightInTiles()));
+			if (!map.blocked(point.x, point.y))
+				return point;
+		}
+	}
+	
+	private double getCost(Path path) {
+		double cost = 0;
+		for (int i = 1; i < path.getLength(); i++) {
+			cost += Math.hypot(path.getX(i) - path.getX(i - 1), path.getY(i) - path.getY(i - 1));
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,96 @@
+package igrek.robopath.pathfinder.astar;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class DistanceOracleTest {
+	
+	@Test
+	public void testSimpleDistances() {
+		/*
+		 * TileMap:
+		 * .  .  .
+		 * .  X  .
+		 * .  X  .
+		 */
+		TileMap map = new TileMap(3, 3);
+		map.setCell(1, 1, true);
+		map.setCell(1, 2, true);
+		DistanceOracle oracle = DistanceOracle.build(map, 100);
+		assertEquals(7, oracle.getCellsCount());
+		assertEquals(0, oracle.distance(2, 2, 2, 2));
+		assertEquals(2, oracle.distance(2, 2, 2, 0));
+		// no cutting corners
+		assertEquals(3, oracle.distance(2, 2, 1, 0));
+		assertEquals(6, oracle.distance(2, 2, 0, 2));
+		assertEquals(6, oracle.distance(0, 2, 2, 2));
+		assertEquals(-1, oracle.distance(2, 2, 1, 1));
+		assertEquals(-1, oracle.distance(2, 2, 3, 0));
+		assertTrue(oracle.isValidFor(map));
+		map.setCell(1, 1, false);
+		assertTrue(!oracle.isValidFor(map));
+	}
+	
+	@Test
+	public void testCacheRebuiltOnMapChange() {
+		TileMap map = new TileMap(5, 4);
+		DistanceOracle.Cache cache = new DistanceOracle.Cache();
+		DistanceOracle oracle = cache.get(map, 100);
+		assertSame(oracle, cache.get(new TileMap(map), 100));
+		map.setCell(2, 2, true);
+		DistanceOracle rebuilt = cache.get(map, 100);
+		assertTrue(rebuilt != oracle);
+		assertTrue(rebuilt.isValidFor(map));
+		assertEquals(19, rebuilt.getCellsCount());
+		// refused for the map size
+		assertNull(cache.get(new TileMap(10, 10), 99));
+		cache.clear();
+		assertTrue(cache.get(map, 100) != rebuilt);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testSizeLimit() {
+		DistanceOracle.build(new TileMap(10, 10), 99);
+	}
+	
+	@Test
+	public void testConsistentWithDistanceFields() {
+		Random random = new Random(11);
+		for (int m = 0; m < 5; m++) {
+			TileMap map = new TileMap(15, 13);
+			new MazeGenerator(random).generateMaze(map);
+			for (int i = 0; i < 30; i++) {
+				map.setCell(random.nextInt(15), random.nextInt(13), false);
+			}
+			DistanceOracle oracle = DistanceOracle.build(map, DistanceOracle.DEFAULT_MAX_CELLS);
+			int gx = random.nextInt(8) * 2;
+			int gy = random.nextInt(7) * 2;
+			ReverseResumableAStar rra = new ReverseResumableAStar(map, gx, gy);
+			for (int x = 0; x < 15; x++) {
+				for (int y = 0; y < 13; y++) {
+					if (map.blocked(x, y))
+						continue;
+					int expected = rra.distance(x, y);
+					int distance = oracle.distance(x, y, gx, gy);
+					// the fewest steps may be shorter than the steps of the shortest path
+					if (expected < 0) {
+						assertEquals(-1, distance);
+					} else {
+						assertTrue(distance >= 0 && distance <= expected);
+					}
+				}
+			}
+		}
+	}
+	
+}
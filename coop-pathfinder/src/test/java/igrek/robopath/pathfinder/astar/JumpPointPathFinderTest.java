@@ -0,0 +1,95 @@
+package igrek.robopath.pathfinder.astar;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class JumpPointPathFinderTest {
+	
+	@Test
+	public void testNoCuttingCorners() {
+		/*
+		 * TileMap:
+		 * S  .  .
+		 * .  X  .
+		 * .  X  G
+		 */
+		TileMap map = new TileMap(3, 3);
+		map.setCell(1, 1, true);
+		map.setCell(1, 2, true);
+		Path path = new JumpPointPathFinder(map).findPath(0, 0, 2, 2);
+		assertEquals("[(0, 0), (1, 0), (2, 0), (2, 1), (2, 2)]", path.toString());
+		assertNull(new JumpPointPathFinder(map).findPath(0, 0, 1, 1));
+	}
+	
+	@Test
+	public void testSameAsAStar() {
+		Random random = new Random(3);
+		for (int m = 0; m < 10; m++) {
+			TileMap map = new TileMap(21, 17);
+			if (m % 2 == 0) {
+				new MazeGenerator(random).generateMaze(map);
+				for (int i = 0; i < 40; i++) {
+					map.setCell(random.nextInt(21), random.nextInt(17), false);
+				}
+			} else {
+				for (int i = 0; i < 80; i++) {
+					map.setCell(random.nextInt(21), random.nextInt(17), true);
+				}
+			}
+			Astar2DPathFinder aStar = new Astar2DPathFinder(map);
+			JumpPointPathFinder jps = new JumpPointPathFinder(map);
+			for (int i = 0; i < 50; i++) {
+				int sx = random.nextInt(21);
+				int sy = random.nextInt(17);
+				int tx = random.nextInt(21);
+				int ty = random.nextInt(17);
+				if (map.blocked(sx, sy))
+					continue;
+				Path expected = aStar.findPath(sx, sy, tx, ty);
+				Path path = jps.findPath(sx, sy, tx, ty);
+				if (expected == null) {
+					assertNull(path);
+					continue;
+				}
+				assertEquals(getCost(expected), getCost(path), 0.001);
+				assertEquals(sx, path.getX(0));
+				assertEquals(sy, path.getY(0));
+				assertEquals(tx, path.getX(path.getLength() - 1));
+				assertEquals(ty, path.getY(path.getLength() - 1));
+				for (int s = 1; s < path.getLength(); s++) {
+					assertTrue(path.toString(), jps.isValidMove(path.getX(s - 1), path.getY(s - 1), path.getX(s), path.getY(s)));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testFewerExpansionsOnOpenMap() {
+		TileMap map = new TileMap(100, 100);
+		Random random = new Random(1);
+		for (int i = 0; i < 10; i++) {
+			map.setCell(random.nextInt(100), random.nextInt(100), true);
+		}
+		Astar2DPathFinder aStar = new Astar2DPathFinder(map);
+		JumpPointPathFinder jps = new JumpPointPathFinder(map);
+		assertEquals(getCost(aStar.findPath(1, 2, 98, 60)), getCost(jps.findPath(1, 2, 98, 60)), 0.001);
+		assertTrue(aStar.getExpandedNodes() + " vs " + jps.getExpandedNodes(), jps.getExpandedNodes() * 10 < aStar.getExpandedNodes());
+	}
+	
+	private double getCost(Path path) {
+		double cost = 0;
+		for (int i = 1; i < path.getLength(); i++) {
+			cost += Math.hypot(path.getX(i) - path.getX(i - 1), path.getY(i) - path.getY(i - 1));
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,74 @@
+package igrek.robopath.pathfinder.astar;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class ReverseResumableAStarTest {
+	
+	@Test
+	public void testSimpleDistances() {
+		/*
+		 * TileMap:
+		 * .  .  .
+		 * .  X  .
+		 * .  X  G
+		 */
+		TileMap map = new TileMap(3, 3);
+		map.setCell(1, 1, true);
+		map.setCell(1, 2, true);
+		ReverseResumableAStar rra = new ReverseResumableAStar(map, 2, 2);
+		assertEquals(0, rra.distance(2, 2));
+		assertEquals(1, rra.distance(2, 1));
+		assertEquals(2, rra.distance(2, 0));
+		// no cutting corners
+		assertEquals(3, rra.distance(1, 0));
+		assertEquals(4, rra.distance(0, 0));
+		assertEquals(6, rra.distance(0, 2));
+		assertEquals(-1, rra.distance(3, 0));
+	}
+	
+	@Test
+	public void testUnreachableGoal() {
+		TileMap map = new TileMap(3, 3);
+		map.setCell(1, 0, true);
+		map.setCell(1, 1, true);
+		map.setCell(1, 2, true);
+		ReverseResumableAStar rra = new ReverseResumableAStar(map, 2, 2);
+		assertEquals(-1, rra.distance(0, 0));
+		assertEquals(1, rra.distance(2, 1));
+	}
+	
+	@Test
+	public void testSameAsForwardSearch() {
+		Random random = new Random(7);
+		for (int m = 0; m < 5; m++) {
+			TileMap map = new TileMap(15, 13);
+			new MazeGenerator(random).generateMaze(map);
+			// open some shortcuts
+			for (int i = 0; i < 30; i++) {
+				map.setCell(random.nextInt(15), random.nextInt(13), false);
+			}
+			Astar2DPathFinder pathFinder = new Astar2DPathFinder(map);
+			int gx = random.nextInt(8) * 2;
+			int gy = random.nextInt(7) * 2;
+			ReverseResumableAStar rra = new ReverseResumableAStar(map, gx, gy);
+			for (int x = 0; x < 15; x++) {
+				for (int y = 0; y < 13; y++) {
+					if (map.blocked(x, y) || (x == gx && y == gy))
+						continue;
+					Path path = pathFinder.findPath(x, y, gx, gy);
+					int expected = path == null ? -1 : path.getLength() - 1;
+					assertEquals("distance from (" + x + ", " + y + ")", expected, rra.distance(x, y));
+				}
+			}
+		}
+	}
+	
+}
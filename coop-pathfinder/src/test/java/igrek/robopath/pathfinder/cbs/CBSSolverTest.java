@@ -0,0 +1,121 @@
+package igrek.robopath.pathfinder.cbs;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.AgentPaths.Instance;
+import igrek.robopath.pathfinder.whca.Path;
+
+import static igrek.robopath.pathfinder.AgentPaths.assertNoConflicts;
+import static igrek.robopath.pathfinder.AgentPaths.assertReached;
+import static igrek.robopath.pathfinder.AgentPaths.randomInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class CBSSolverTest {
+	
+	@Test
+	public void testSwapWithPocket() {
+		/*
+		 * TileMap:
+		 * S1 .  S2
+		 * X  .  X
+		 * G2 is S1, G1 is S2
+		 */
+		TileMap map = new TileMap(3, 2);
+		map.setCell(0, 1, true);
+		map.setCell(2, 1, true);
+		CBSSolver solver = new CBSSolver(map, 6, new DistanceFieldCache());
+		List<Point> starts = Arrays.asList(new Point(0, 0), new Point(2, 0));
+		List<Point> targets = Arrays.asList(new Point(2, 0), new Point(0, 0));
+		List<Path> paths = solver.solve(starts, targets);
+		assertNotNull(paths);
+		assertNoConflicts(paths, 6);
+		assertReached(paths, targets);
+		assertTrue(solver.getExpandedNodes() > 0);
+	}
+	
+	@Test
+	public void testSwapInCorridor() {
+		// no room to pass each other - they only get closer
+		TileMap map = new TileMap(4, 1);
+		CBSSolver solver = new CBSSolver(map, 6, new DistanceFieldCache());
+		List<Path> paths = solver.solve(Arrays.asList(new Point(0, 0), new Point(3, 0)), Arrays.asList(new Point(3, 0), new Point(0, 0)));
+		assertNotNull(paths);
+		assertNoConflicts(paths, 6);
+		assertTrue(paths.get(0).getX(5) < paths.get(1).getX(5));
+		assertFalse(solver.isInterrupted());
+	}
+	
+	@Test
+	public void testDiagonalSqueeze() {
+		/*
+		 * TileMap:
+		 * S1 S2
+		 * G2 G1
+		 * the crossing diagonal moves would cut the corners occupied by each other
+		 */
+		TileMap map = new TileMap(2, 2);
+		CBSSolver solver = new CBSSolver(map, 4, new DistanceFieldCache());
+		List<Point> targets = Arrays.asList(new Point(1, 1), new Point(0, 1));
+		List<Path> paths = solver.solve(Arrays.asList(new Point(0, 0), new Point(1, 0)), targets);
+		assertNotNull(paths);
+		assertNoConflicts(paths, 4);
+		assertReached(paths, targets);
+		assertTrue(solver.getExpandedNodes() > 0);
+		// one of them has to go around or wait
+		assertTrue(solver.getSolutionCost() > 1 + Math.sqrt(2) + 0.01);
+	}
+	
+	@Test
+	public void testSameStart() {
+		TileMap map = new TileMap(4, 1);
+		CBSSolver solver = new CBSSolver(map, 4, new DistanceFieldCache());
+		assertNull(solver.solve(Arrays.asList(new Point(0, 0), new Point(0, 0)), Arrays.asList(new Point(3, 0), null)));
+	}
+	
+	@Test
+	public void testMoveConstraint() {
+		TileMap map = new TileMap(3, 1);
+		ConstraintTable constraints = new ConstraintTable(map, 3);
+		constraints.addConstraint(Constraint.move(0, 0, 0, 1, 0, 0));
+		LowLevelSearch search = new LowLevelSearch(new DistanceFieldCache());
+		Path path = search.findPath(constraints, map, 0, 0, 2, 0, null, 1);
+		assertEquals("[(0, 0, 0), (0, 0, 1), (1, 0, 2)]", path.toString());
+		assertEquals(search.getLowerBound(), search.getPathCost(), 0.01);
+	}
+	
+	@Test
+	public void testSuboptimalWithinBound() {
+		Random random = new Random(5);
+		for (int m = 0; m < 10; m++) {
+			Instance instance = randomInstance(random, 8, 10, 6);
+			TileMap map = instance.map;
+			List<Point> starts = instance.starts;
+			List<Point> targets = instance.targets;
+			DistanceFieldCache distanceCache = new DistanceFieldCache();
+			CBSSolver cbs = new CBSSolver(map, 12, distanceCache);
+			List<Path> optimal = cbs.solve(starts, targets);
+			CBSSolver ecbs = new CBSSolver(map, 12, distanceCache);
+			ecbs.setSuboptimality(1.5);
+			List<Path> bounded = ecbs.solve(starts, targets);
+			if (optimal == null)
+				continue;
+			assertNoConflicts(optimal, 12);
+			assertNotNull(bounded);
+			assertNoConflicts(bounded, 12);
+			assertTrue(ecbs.getSolutionCost() <= 1.5 * cbs.getSolutionCost() + 0.01);
+			assertTrue(ecbs.getSolutionCost() >= cbs.getSolutionCost() - 0.01);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package igrek.robopath.pathfinder.hpa;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+import igrek.robopath.pathfinder.astar.Astar2DPathFinder;
+import igrek.robopath.pathfinder.astar.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class HierarchicalPathFinderTest {
+	
+	@Test
+	public void testAcrossClusters() {
+		/*
+		 * TileMap (clusters 3x3):
+		 * S  .  .  |  X  .  .
+		 * .  .  .  |  X  .  .
+		 * .  .  .  |  .  .  G
+		 */
+		TileMap map = new TileMap(6, 3);
+		map.setCell(3, 0, true);
+		map.setCell(3, 1, true);
+		HierarchicalPathFinder pathFinder = new HierarchicalPathFinder(map, 3);
+		Path path = pathFinder.findPath(0, 0, 5, 2);
+		assertNotNull(path);
+		assertValid(map, path, 0, 0, 5, 2);
+		assertEquals(2, pathFinder.getAbstractNodesCount());
+		assertNull(pathFinder.findPath(0, 0, 3, 0));
+	}
+	
+	@Test
+	public void testCloseToShortest() {
+		Random random = new Random(11);
+		for (int m = 0; m < 6; m++) {
+			TileMap map = new TileMap(41, 33);
+			if (m % 2 == 0) {
+				new MazeGenerator(random).generateMaze(map);
+				for (int i = 0; i < 100; i++) {
+					map.setCell(random.nextInt(41), random.nextInt(33), false);
+				}
+			} else {
+				for (int i = 0; i < 250; i++) {
+					map.setCell(random.nextInt(41), random.nextInt(33), true);
+				}
+			}
+			HierarchicalPathFinder pathFinder = new HierarchicalPathFinder(map, 8);
+			Astar2DPathFinder aStar = new Astar2DPathFinder(map);
+			for (int i = 0; i < 50; i++) {
+				int sx = random.nextInt(41);
+				int sy = random.nextInt(33);
+				int tx = random.nextInt(41);
+				int ty = random.nextInt(33);
+				if (map.blocked(sx, sy))
+					continue;
+				Path shortest = aStar.findPath(sx, sy, tx, ty);
+				Path path = pathFinder.findPath(sx, sy, tx, ty);
+				if (shortest == null) {
+					assertNull(path);
+					continue;
+				}
+				assertNotNull(path);
+				assertValid(map, path, sx, sy, tx, ty);
+				assertTrue(getCost(path) + " vs " + getCost(shortest), getCost(path) <= 1.5 * getCost(shortest) + 0.001);
+			}
+			pathFinder.dispose();
+		}
+	}
+	
+	@Test
+	public void testIncrementalUpdate() {
+		Random random = new Random(4);
+		TileMap map = new TileMap(48, 40);
+		for (int i = 0; i < 200; i++) {
+			map.setCell(random.nextInt(48), random.nextInt(40), true);
+		}
+		HierarchicalPathFinder pathFinder = new HierarchicalPathFinder(map, 8);
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 30; i++) {
+				int x = random.nextInt(48);
+				int y = random.nextInt(40);
+				map.setCell(x, y, !map.blocked(x, y));
+			}
+			HierarchicalPathFinder rebuilt = new HierarchicalPathFinder(map, 8);
+			assertEquals(rebuilt.getAbstractNodesCount(), pathFinder.getAbstractNodesCount(), 0);
+			for (int i = 0; i < 20; i++) {
+				int sx = random.nextInt(48);
+				int sy = random.nextInt(40);
+				int tx = random.nextInt(48);
+				int ty = random.nextInt(40);
+				if (map.blocked(sx, sy))
+					continue;
+				Path expected = rebuilt.findPath(sx, sy, tx, ty);
+				Path path = pathFinder.findPath(sx, sy, tx, ty);
+				if (expected == null) {
+					assertNull(path);
+					continue;
+				}
+				assertValid(map, path, sx, sy, tx, ty);
+				assertEquals(getCost(expected), getCost(path), 0.001);
+			}
+			rebuilt.dispose();
+		}
+	}
+	
+	private void assertValid(TileMap map, Path path, int sx, int sy, int tx, int ty) {
+		assertEquals(sx, path.getX(0));
+		assertEquals(sy, path.getY(0));
+		assertEquals(tx, path.getX(path.getLength() - 1));
+		assertEquals(ty, path.getY(path.getLength() - 1));
+		for (int i = 1; i < path.getLength(); i++) {
+			int x = path.getX(i);
+			int y = path.getY(i);
+			int px = path.getX(i - 1);
+			int py = path.getY(i - 1);
+			assertTrue(path.toString(), Math.abs(x - px) <= 1 && Math.abs(y - py) <= 1);
+			assertFalse(path.toString(), map.blocked(x, y));
+			if (x != px && y != py)
+				assertFalse("cutting corner: " + path, map.blocked(px, y) || map.blocked(x, py));
+		}
+	}
+	
+	private double getCost(Path path) {
+		double cost = 0;
+		for (int i = 1; i < path.getLength(); i++) {
+			cost += Math.hypot(path.getX(i) - path.getX(i - 1), path.getY(i) - path.getY(i - 1));
+		}
+		return cost;
+	}
+}
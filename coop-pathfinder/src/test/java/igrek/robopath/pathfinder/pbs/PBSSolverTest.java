@@ -0,0 +1,77 @@
+package igrek.robopath.pathfinder.pbs;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.astar.DistanceFieldCache;
+import igrek.robopath.pathfinder.AgentPaths.Instance;
+import igrek.robopath.pathfinder.whca.Path;
+
+import static igrek.robopath.pathfinder.AgentPaths.assertNoConflicts;
+import static igrek.robopath.pathfinder.AgentPaths.assertReached;
+import static igrek.robopath.pathfinder.AgentPaths.randomInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class PBSSolverTest {
+	
+	@Test
+	public void testCrossing() {
+		// both going through the middle cell at the same time
+		TileMap map = new TileMap(3, 3);
+		PBSSolver solver = new PBSSolver(map, 6, new DistanceFieldCache());
+		List<Point> starts = Arrays.asList(new Point(0, 1), new Point(1, 0));
+		List<Point> targets = Arrays.asList(new Point(2, 1), new Point(1, 2));
+		List<Path> paths = solver.solve(starts, targets);
+		assertNotNull(paths);
+		assertNoConflicts(paths, 6);
+		assertReached(paths, targets);
+		assertEquals(1, solver.getExpandedNodes());
+	}
+	
+	@Test
+	public void testIndependentAgents() {
+		TileMap map = new TileMap(5, 5);
+		PBSSolver solver = new PBSSolver(map, 6, new DistanceFieldCache());
+		List<Point> targets = Arrays.asList(new Point(4, 0), new Point(4, 4));
+		List<Path> paths = solver.solve(Arrays.asList(new Point(0, 0), new Point(0, 4)), targets);
+		assertNotNull(paths);
+		assertReached(paths, targets);
+		// no priorities needed
+		assertEquals(0, solver.getExpandedNodes());
+		assertEquals(1, solver.getGeneratedNodes());
+	}
+	
+	@Test
+	public void testSameStart() {
+		TileMap map = new TileMap(4, 1);
+		PBSSolver solver = new PBSSolver(map, 4, new DistanceFieldCache());
+		assertNull(solver.solve(Arrays.asList(new Point(0, 0), new Point(0, 0)), Arrays.asList(new Point(3, 0), null)));
+		assertFalse(solver.isInterrupted());
+	}
+	
+	@Test
+	public void testCrowdedMaps() {
+		Random random = new Random(7);
+		int solved = 0;
+		for (int m = 0; m < 10; m++) {
+			Instance instance = randomInstance(random, 8, 10, 8);
+			PBSSolver solver = new PBSSolver(instance.map, 16, new DistanceFieldCache());
+			List<Path> paths = solver.solve(instance.starts, instance.targets);
+			if (paths == null)
+				continue;
+			solved++;
+			assertNoConflicts(paths, 16);
+		}
+		assertTrue(solved > 0);
+	}
+}
@@ -0,0 +1,175 @@
+package igrek.robopath.pathfinder.whca;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import igrek.robopath.common.TileMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ReservationTableTest {
+	
+	@Test
+	public void testBlocking() {
+		// more time slots than in one word
+		ReservationTable table = new ReservationTable(3, 2, 70);
+		table.setBlocked(1, 1, 0);
+		table.setBlocked(1, 1, 63);
+		table.setBlocked(1, 1, 64);
+		table.setBlocked(2, 1, 69);
+		table.setBlocked(2, 1, 70); // out of the time window
+		assertTrue(table.isBlocked(1, 1, 0));
+		assertTrue(table.isBlocked(1, 1, 63));
+		assertTrue(table.isBlocked(1, 1, 64));
+		assertFalse(table.isBlocked(1, 1, 1));
+		assertFalse(table.isBlocked(1, 1, 65));
+		assertFalse(table.isBlocked(0, 1, 0));
+		assertTrue(table.isBlocked(2, 1, 69));
+		assertFalse(table.isBlocked(2, 1, 5));
+		assertFalse(table.isBlocked(1, 1));
+	}
+	
+	@Test
+	public void testBlockedAllTheTime() {
+		ReservationTable table = new ReservationTable(2, 2, 70);
+		table.setBlocked(0, 1);
+		assertTrue(table.isBlocked(0, 1));
+		assertTrue(table.isBlocked(0, 1, 69));
+		assertFalse(table.isBlocked(1, 1));
+		for (int t = 0; t < 70; t++) {
+			table.setBlocked(1, 1, t);
+		}
+		assertTrue(table.isBlocked(1, 1));
+		
+		ReservationTable table64 = new ReservationTable(1, 1, 64);
+		for (int t = 0; t < 63; t++) {
+			table64.setBlocked(0, 0, t);
+		}
+		assertFalse(table64.isBlocked(0, 0));
+		table64.setBlocked(0, 0, 63);
+		assertTrue(table64.isBlocked(0, 0));
+	}
+	
+	@Test
+	public void testAdvance() {
+		ReservationTable table = new ReservationTable(2, 1, 3);
+		table.setBlocked(0, 0);
+		table.setBlocked(1, 0, 0);
+		table.setBlocked(1, 0, 2);
+		table.advance();
+		// shifted by one step
+		assertFalse(table.isBlocked(1, 0, 0));
+		assertTrue(table.isBlocked(1, 0, 1));
+		// the new slot is free, but static obstacles
+		assertFalse(table.isBlocked(1, 0, 2));
+		assertTrue(table.isBlocked(0, 0, 2));
+		assertTrue(table.isBlocked(0, 0));
+		table.setBlocked(1, 0, 2);
+		table.advance();
+		table.advance();
+		assertTrue(table.isBlocked(1, 0, 0));
+		assertFalse(table.isBlocked(1, 0, 1));
+		assertFalse(table.isBlocked(1, 0, 2));
+		
+		// the window wider than one word
+		ReservationTable wide = new ReservationTable(1, 1, 100);
+		wide.setBlocked(0, 0, 99);
+		for (int i = 0; i < 99; i++) {
+			wide.advance();
+		}
+		assertTrue(wide.isBlocked(0, 0, 0));
+		assertFalse(wide.isBlocked(0, 0, 99));
+	}
+	
+	@Test
+	public void testSparseSameAsDense() {
+		Random random = new Random(3);
+		TileMap map = new TileMap(9, 7);
+		map.setCell(4, 4, true);
+		ReservationTable dense = new ReservationTable(9, 7, 10);
+		dense.setBlocked(4, 4);
+		SparseReservationTable sparse = new SparseReservationTable(map, 10);
+		for (int step = 0; step < 20; step++) {
+			for (int i = 0; i < 30; i++) {
+				int x = random.nextInt(9);
+				int y = random.nextInt(7);
+				int t = random.nextInt(11);
+				dense.setBlocked(x, y, t);
+				sparse.setBlocked(x, y, t, i);
+			}
+			if (step % 5 == 0) {
+				int x = random.nextInt(9);
+				int y = random.nextInt(7);
+				dense.setBlocked(x, y);
+				sparse.setBlocked(x, y);
+			}
+			for (int x = 0; x < 9; x++) {
+				for (int y = 0; y < 7; y++) {
+					assertEquals(dense.isBlocked(x, y), sparse.isBlocked(x, y));
+					for (int t = 0; t < 10; t++) {
+						assertEquals(dense.isBlocked(x, y, t), sparse.isBlocked(x, y, t));
+					}
+				}
+			}
+			dense.advance();
+			sparse.advance();
+		}
+	}
+	
+	@Test
+	public void testSparseOwners() {
+		SparseReservationTable sparse = new SparseReservationTable(3, 3, 4);
+		sparse.setBlocked(1, 2, 3, 7);
+		assertEquals(7, sparse.getOwner(1, 2, 3));
+		assertEquals(SparseReservationTable.NO_OWNER, sparse.getOwner(1, 2, 2));
+		sparse.advance();
+		assertEquals(7, sparse.getOwner(1, 2, 2));
+		assertFalse(sparse.isBlocked(1, 2, 3));
+		assertEquals(1, sparse.size());
+	}
+	
+	@Test
+	public void testMoves() {
+		// more time slots than in one word of moves
+		Reservations[] tables = {new ReservationTable(3, 3, 20), new SparseReservationTable(3, 3, 20)};
+		for (Reservations table : tables) {
+			table.setMoveBlocked(1, 1, 2, 2, 17);
+			table.setMoveBlocked(1, 1, 0, 1, 16);
+			assertTrue(table.isMoveBlocked(1, 1, 2, 2, 17));
+			assertFalse(table.isMoveBlocked(1, 1, 2, 1, 17));
+			assertFalse(table.isMoveBlocked(1, 1, 2, 2, 16));
+			assertTrue(table.isMoveBlocked(1, 1, 0, 1, 16));
+			assertFalse(table.isMoveBlocked(2, 2, 1, 1, 17));
+			table.advance();
+			assertTrue(table.isMoveBlocked(1, 1, 2, 2, 16));
+			assertTrue(table.isMoveBlocked(1, 1, 0, 1, 15));
+			for (int i = 0; i < 17; i++) {
+				table.advance();
+			}
+			assertFalse(table.isMoveBlocked(1, 1, 2, 2, 16));
+			assertFalse(table.isMoveBlocked(1, 1, 2, 2, 19));
+		}
+	}
+	
+	@Test
+	public void testRelease() {
+		Reservations[] tables = {new ReservationTable(3, 3, 5), new SparseReservationTable(3, 3, 5)};
+		for (Reservations table : tables) {
+			table.setBlocked(0, 0);
+			table.setBlocked(1, 1, 2);
+			table.setMoveBlocked(1, 1, 1, 2, 2);
+			table.setFree(1, 1, 2);
+			table.setMoveFree(1, 1, 2);
+			table.setFree(0, 0, 3);
+			assertFalse(table.isBlocked(1, 1, 2));
+			assertFalse(table.isMoveBlocked(1, 1, 1, 2, 2));
+			// static obstacles stay
+			assertTrue(table.isBlocked(0, 0, 3));
+		}
+	}
+	
+}
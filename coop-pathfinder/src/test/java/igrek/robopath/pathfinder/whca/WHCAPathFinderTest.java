@@ -12,7 +12,9 @@ import igrek.robopath.common.TileMap;
 import igrek.robopath.simulation.whca.MobileRobot;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -46,6 +48,23 @@ public class WHCAPathFinderTest {
 				.toString());
 	}
 	
+	@Test
+	public void testRecordedReadsValidity() {
+		TileMap map = new TileMap(5, 1);
+		ReservationTable table = new ReservationTable(5, 1, 6);
+		RecordingReservations reads = new RecordingReservations(table);
+		Path path = new WHCAPathFinder(reads, map).findPath(0, 0, 4, 0);
+		assertEquals("[(0, 0, 0), (1, 0, 1), (2, 0, 2), (3, 0, 3), (4, 0, 4), (4, 0, 5)]", path.toString());
+		assertTrue(reads.getReadsCount() > 0);
+		assertTrue(reads.isValid(table));
+		// not asked by the search - the path is still the same
+		table.setBlocked(4, 0, 0);
+		assertTrue(reads.isValid(table));
+		table.setBlocked(2, 0, 2);
+		assertFalse(reads.isValid(table));
+		assertFalse(path.toString().equals(new WHCAPathFinder(table, map).findPath(0, 0, 4, 0).toString()));
+	}
+	
 	@Test
 	public void test2RobotsPath() {
 		/*
@@ -241,6 +260,74 @@ public class WHCAPathFinderTest {
 				.toString());
 	}
 	
+	@Test
+	public void testMoveReservations() {
+		/*
+		 * TileMap:
+		 * S2 R  .
+		 */
+		TileMap map = new TileMap(3, 1);
+		// robot R moves right - it can be followed right behind
+		ReservationTable reservationTable = new ReservationTable(3, 1, 3);
+		reservationTable.setBlocked(1, 0, 0);
+		reservationTable.setMoveBlocked(1, 0, 2, 0, 0);
+		reservationTable.setBlocked(2, 0, 1);
+		reservationTable.setBlocked(2, 0, 2);
+		Path path = new WHCAPathFinder(reservationTable, map).findPath(0, 0, 1, 0);
+		assertEquals("[(0, 0, 0), (1, 0, 1), (1, 0, 2)]", path.toString());
+		// robot R moves left - no swapping
+		reservationTable = new ReservationTable(3, 1, 3);
+		reservationTable.setBlocked(1, 0, 0);
+		reservationTable.setMoveBlocked(1, 0, 0, 0, 0);
+		reservationTable.setBlocked(0, 0, 1);
+		reservationTable.setBlocked(0, 0, 2);
+		path = new WHCAPathFinder(reservationTable, map).findPath(0, 0, 2, 0);
+		assertEquals("[(0, 0, 0)]", path.toString());
+	}
+	
+	@Test
+	public void testExpansionsBudget() {
+		TileMap map = new TileMap(5, 5);
+		ReservationTable reservationTable = new ReservationTable(5, 5, 6);
+		WHCAPathFinder pathFinder = new WHCAPathFinder(reservationTable, map);
+		// the heuristic explored ahead - only the space-time nodes are counted
+		pathFinder.findPath(0, 0, 4, 4);
+		PlanningBudget budget = PlanningBudget.ofExpansions(3);
+		pathFinder.setBudget(budget);
+		assertNull(pathFinder.findPath(0, 0, 4, 4));
+		assertTrue(pathFinder.isInterrupted());
+		assertTrue(budget.isExhausted());
+		assertEquals(3, budget.getExpansions());
+		// the next search is stopped right away
+		assertNull(pathFinder.findPath(0, 0, 1, 0));
+		assertTrue(pathFinder.isInterrupted());
+		
+		pathFinder.setBudget(null);
+		Path path = pathFinder.findPath(0, 0, 4, 4);
+		assertFalse(pathFinder.isInterrupted());
+		assertEquals("[(0, 0, 0), (1, 1, 1), (2, 2, 2), (3, 3, 3), (4, 4, 4), (4, 4, 5)]", path.toString());
+	}
+	
+	@Test
+	public void testHeuristicChargedToBudget() {
+		TileMap map = new TileMap(5, 5);
+		ReservationTable reservationTable = new ReservationTable(5, 5, 6);
+		WHCAPathFinder pathFinder = new WHCAPathFinder(reservationTable, map);
+		PlanningBudget budget = PlanningBudget.ofExpansions(1000);
+		pathFinder.setBudget(budget);
+		assertNotNull(pathFinder.findPath(0, 0, 4, 4));
+		long withHeuristic = budget.getExpansions();
+		budget = PlanningBudget.ofExpansions(1000);
+		pathFinder.setBudget(budget);
+		assertNotNull(pathFinder.findPath(0, 0, 4, 4));
+		assertTrue(withHeuristic > budget.getExpansions());
+		// exhausted by the heuristic alone
+		budget = PlanningBudget.ofExpansions(2);
+		pathFinder.setBudget(budget);
+		assertNull(pathFinder.findPath(4, 0, 0, 4));
+		assertTrue(budget.isExhausted());
+	}
+	
 	private void assertStaticPosition(Path path, int expectedX, int expectedY) {
 		assertTrue(path.getLength() > 0);
 		try {
@@ -0,0 +1,156 @@
+package igrek.robopath.simulation.lra;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class LRAControllerTest {
+	
+	@Test
+	public void testHierarchicalSearchOnBigMap() {
+		for (long seed = 1; seed <= 3; seed++) {
+			LRASimulationParams params = params(80, 6);
+			params.hierarchicalSearch = true;
+			params.hierarchicalSearchMinCells = 80 * 80;
+			LRAController controller = randomWorld(params, seed);
+			assertTrue(simulate(controller, 400));
+			assertNotNull(controller.getHierarchicalPathFinder());
+		}
+	}
+	
+	@Test
+	public void testHierarchicalSearchBelowThreshold() {
+		LRASimulationParams params = params(40, 6);
+		params.hierarchicalSearch = true;
+		params.hierarchicalSearchMinCells = 40 * 40 + 1;
+		LRAController controller = randomWorld(params, 1);
+		assertTrue(simulate(controller, 200));
+		assertNull(controller.getHierarchicalPathFinder());
+	}
+	
+	@Test
+	public void testAstarOnBigMap() {
+		LRASimulationParams params = params(80, 6);
+		assertFalse(params.hierarchicalSearch);
+		LRAController controller = randomWorld(params, 1);
+		assertTrue(simulate(controller, 400));
+		assertNull(controller.getHierarchicalPathFinder());
+	}
+	
+	@Test
+	public void testIncrementalSearchesOfRemovedRobotsDisposed() {
+		LRASimulationParams params = params(20, 6);
+		params.incrementalSearch = true;
+		LRAController controller = randomWorld(params, 1);
+		controller.stepSimulation();
+		assertEquals(6, controller.getIncrementalSearchesCount());
+		// as the presenter does
+		controller.getRobots().remove(0);
+		controller.getRobots().remove(0);
+		controller.stepSimulation();
+		assertEquals(4, controller.getIncrementalSearchesCount());
+		assertTrue(simulate(controller, 200));
+		controller.placeRobots();
+		assertEquals(0, controller.getIncrementalSearchesCount());
+	}
+	
+	@Test
+	public void testIncrementalSearchesBounded() {
+		LRASimulationParams params = params(20, 6);
+		params.incrementalSearch = true;
+		params.incrementalSearchesMax = 2;
+		LRAController controller = randomWorld(params, 1);
+		for (int step = 0; step < 200; step++) {
+			controller.stepSimulation();
+			assertTrue(controller.getIncrementalSearchesCount() <= 2);
+		}
+		for (MobileRobot robot : controller.getRobots()) {
+			assertTrue(robot.hasReachedTarget());
+		}
+	}
+	
+	@Test
+	public void testCollisionDetected() {
+		LRAController controller = new LRAController(null, params(5, 0));
+		MobileRobot first = controller.createMobileRobot(new Point(0, 0), 0);
+		MobileRobot second = controller.createMobileRobot(new Point(2, 0), 1);
+		assertNull(controller.collisionDetected(first));
+		// heading for the cell of the other one
+		first.enqueueMove(1, 0).enqueueMove(2, 0);
+		assertNull(controller.collisionDetected(first));
+		first.pollNextMove();
+		first.setPosition(new Point(1, 0));
+		assertSame(second, controller.collisionDetected(first));
+		// both heading for the same cell
+		second.setPosition(new Point(3, 0));
+		second.enqueueMove(2, 0);
+		assertSame(second, controller.collisionDetected(first));
+		assertSame(first, controller.collisionDetected(second));
+		// not on the list
+		MobileRobot other = new MobileRobot(new Point(2, 0), null, 2);
+		MobileRobot collided = controller.collisionDetected(other);
+		assertTrue(collided == first || collided == second);
+		other.setPosition(new Point(4, 4));
+		assertNull(controller.collisionDetected(other));
+	}
+	
+	private static LRASimulationParams params(int size, int robotsCount) {
+		LRASimulationParams params = new LRASimulationParams();
+		params.mapSizeW = size;
+		params.mapSizeH = size;
+		params.robotsCount = robotsCount;
+		params.robotAutoTarget = false;
+		return params;
+	}
+	
+	/**
+	 * @return world with the scattered obstacles, robots and their targets
+	 */
+	private static LRAController randomWorld(LRASimulationParams params, long seed) {
+		Random random = new Random(seed);
+		LRAController controller = new LRAController(null, params);
+		controller.setRandom(random);
+		controller.setMazegen(new MazeGenerator(random));
+		TileMap map = controller.getMap();
+		for (int i = 0; i < map.getWidthInTiles() * map.getHeightInTiles() / 5; i++) {
+			map.setCell(random.nextInt(map.getWidthInTiles()), random.nextInt(map.getHeightInTiles()), true);
+		}
+		controller.placeRobots();
+		controller.randomTargetPressed();
+		return controller;
+	}
+	
+	/**
+	 * Step the simulation until all the robots reach their targets, checking they never share a cell
+	 * @return true if all the targets have been reached
+	 */
+	private static boolean simulate(LRAController controller, int stepsMax) {
+		for (int step = 0; step < stepsMax; step++) {
+			controller.stepSimulation();
+			Set<String> cells = new HashSet<>();
+			boolean allReached = true;
+			for (MobileRobot robot : controller.getRobots()) {
+				Point position = robot.getPosition();
+				assertTrue(cells.add(position.getX() + "," + position.getY()));
+				allReached &= robot.hasReachedTarget();
+			}
+			if (allReached)
+				return true;
+		}
+		return false;
+	}
+}
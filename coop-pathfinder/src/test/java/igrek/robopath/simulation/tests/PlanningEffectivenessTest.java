@@ -16,6 +16,7 @@ import igrek.robopath.mazegenerator.RandomFactory;
 import igrek.robopath.simulation.lra.LRAController;
 import igrek.robopath.simulation.lra.LRASimulationParams;
 import igrek.robopath.simulation.lra.MobileRobot;
+import igrek.robopath.simulation.whca.PlanningAlgorithm;
 import igrek.robopath.simulation.whca.WHCAController;
 import igrek.robopath.simulation.whca.WHCASimulationParams;
 
@@ -49,9 +50,9 @@ public class PlanningEffectivenessTest {
 			mapH = mapW;
 			int stepsMax = (mapW + mapH) * 3*2;
 			// logger.info("Simulation: map " + mapW + "x" + mapH + ", " + robotsCount + " robots, maxSteps=" + stepsMax);
-			int[] successful = new int [4];
-			int[] stepsCount = new int [4];
-			long[] calcTimes = new long [4];
+			int[] successful = new int [6];
+			int[] stepsCount = new int [6];
+			long[] calcTimes = new long [6];
 			for (int s = 1; s <= SIMS_COUNT; s++) {
 				//			prepare WHCA
 				WHCAController whcaController = createWHCARandomSimulation(mapW, mapH, robotsCount);
@@ -71,6 +72,10 @@ public class PlanningEffectivenessTest {
 				WHCAController whcaControllerWP = createWHCARandomSimulation(mapW, mapH, robotsCount);
 				whcaControllerWP.setPrioritiesPromotion(false);
 				whcaControllerWP.setTimeWindowScaling(false);
+				WHCAController ecbsController = createWHCARandomSimulation(mapW, mapH, robotsCount);
+				ecbsController.getParams().planningAlgorithm = PlanningAlgorithm.ECBS;
+				WHCAController pbsController = createWHCARandomSimulation(mapW, mapH, robotsCount);
+				pbsController.getParams().planningAlgorithm = PlanningAlgorithm.PBS;
 				//			prepare LRA
 				LRAController lraController = createLRARandomSimulation(mapW, mapH, robotsCount);
 				// same maze as in whca
@@ -78,11 +83,15 @@ public class PlanningEffectivenessTest {
 				TileMap lraMap = lraController.getMap();
 				TileMap whcaMapWS = whcaControllerWS.getMap();
 				TileMap whcaMapWP = whcaControllerWP.getMap();
+				TileMap ecbsMap = ecbsController.getMap();
+				TileMap pbsMap = pbsController.getMap();
 				for (int x = 0; x < whcaMap.getWidthInTiles(); x++) {
 					for (int y = 0; y < whcaMap.getHeightInTiles(); y++) {
 						lraMap.setCell(x, y, whcaMap.getCell(x, y));
 						whcaMapWS.setCell(x, y, whcaMap.getCell(x, y));
 						whcaMapWP.setCell(x, y, whcaMap.getCell(x, y));
+						ecbsMap.setCell(x, y, whcaMap.getCell(x, y));
+						pbsMap.setCell(x, y, whcaMap.getCell(x, y));
 					}
 				}
 				// robots locations same as in whca
@@ -93,10 +102,14 @@ public class PlanningEffectivenessTest {
 					lraController.createMobileRobot(whcaRobot.getPosition(), i);
 					whcaControllerWS.createMobileRobot(whcaRobot.getPosition());
 					whcaControllerWP.createMobileRobot(whcaRobot.getPosition());
+					ecbsController.createMobileRobot(whcaRobot.getPosition());
+					pbsController.createMobileRobot(whcaRobot.getPosition());
 					//set target
 					lraController.getRobots().get(i).setTarget(whcaRobot.getTarget());
 					whcaControllerWS.getRobots().get(i).setTarget(whcaRobot.getTarget());
 					whcaControllerWP.getRobots().get(i).setTarget(whcaRobot.getTarget());
+					ecbsController.getRobots().get(i).setTarget(whcaRobot.getTarget());
+					pbsController.getRobots().get(i).setTarget(whcaRobot.getTarget());
 				}
 				//			simulate
 				int steps;
@@ -127,6 +140,24 @@ public class PlanningEffectivenessTest {
 					calcTimes[1] += System.currentTimeMillis() - startTime;
 					successful[1] += 1;
 				}
+				// ECBS - 4
+				ecbsController.getParams().timeDimension = ecbsController.getRobots().size() + 1;
+				startTime = System.currentTimeMillis();
+				steps = simulateWHCA(ecbsController, stepsMax);
+				if (steps > 0) {
+					stepsCount[4] += steps;
+					calcTimes[4] += System.currentTimeMillis() - startTime;
+					successful[4] += 1;
+				}
+				// PBS - 5
+				pbsController.getParams().timeDimension = pbsController.getRobots().size() + 1;
+				startTime = System.currentTimeMillis();
+				steps = simulateWHCA(pbsController, stepsMax);
+				if (steps > 0) {
+					stepsCount[5] += steps;
+					calcTimes[5] += System.currentTimeMillis() - startTime;
+					successful[5] += 1;
+				}
 				// WHCA*3 - 0
 				startTime = System.currentTimeMillis();
 				steps = simulateWHCA(whcaController, stepsMax);
@@ -150,8 +181,8 @@ public class PlanningEffectivenessTest {
 				// logger.info(String.format("both: %d/%d, WHCA: %d/%d, LRA: %d/%d, none: %d/%d", bothSuccessful, s, whcaSuccess, s, lraSuccess, s, bothFailed, s));
 				// logger.info(String.format("whca: %d/%d, whcaWS: %d/%d, whcaWP: %d/%d, lra: %d/%d", successful[0], s, successful[1], s, successful[2], s, successful[3], s));
 			}
-			double[] avgFactor = new double [4];
-			for (int i = 0; i < 4; i++) {
+			double[] avgFactor = new double [6];
+			for (int i = 0; i < 6; i++) {
 				if (successful[i] == 0){
 					logger.warn("successful["+i+"] = 0");
 					successful[i] = -1;
@@ -159,9 +190,9 @@ public class PlanningEffectivenessTest {
 				avgFactor[i] = 1.0 / successful[i];
 			}
 			String info = String.format("map %dx%d, robots %d", mapW, mapH, robotsCount);
-			info += String.format(", successfulls: \t%d\t%d\t%d\t%d", successful[3], successful[2], successful[1], successful[0]);
-			info += String.format(", steps: \t%f\t%f\t%f\t%f", avgFactor[3] * stepsCount[3], avgFactor[2] * stepsCount[2], avgFactor[1] * stepsCount[1], avgFactor[0] * stepsCount[0]);
-			info += String.format(", time: \t%f\t%f\t%f\t%f", avgFactor[3] * calcTimes[3], avgFactor[2] * calcTimes[2], avgFactor[1] * calcTimes[1], avgFactor[0] * calcTimes[0]);
+			info += String.format(", successfulls: \t%d\t%d\t%d\t%d\t%d\t%d", successful[3], successful[2], successful[1], successful[0], successful[4], successful[5]);
+			info += String.format(", steps: \t%f\t%f\t%f\t%f\t%f\t%f", avgFactor[3] * stepsCount[3], avgFactor[2] * stepsCount[2], avgFactor[1] * stepsCount[1], avgFactor[0] * stepsCount[0], avgFactor[4] * stepsCount[4], avgFactor[5] * stepsCount[5]);
+			info += String.format(", time: \t%f\t%f\t%f\t%f\t%f\t%f", avgFactor[3] * calcTimes[3], avgFactor[2] * calcTimes[2], avgFactor[1] * calcTimes[1], avgFactor[0] * calcTimes[0], avgFactor[4] * calcTimes[4], avgFactor[5] * calcTimes[5]);
 			logger.info(info);
 		}
 	}
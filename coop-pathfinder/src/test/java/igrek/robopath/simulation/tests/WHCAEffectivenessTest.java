@@ -7,6 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ch.qos.logback.classic.Level;
 import igrek.robopath.mazegenerator.MazeGenerator;
@@ -53,6 +55,59 @@ public class WHCAEffectivenessTest {
 		
 	}
 	
+	@Test
+	@Ignore
+	public void testSpeculativePlanningSpeedup() {
+		int SIMS_COUNT = 10;
+		int mapSize = 40;
+		int robotsCount = 30;
+		int steps = 20;
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long sequentialTime = 0;
+		long speculativeTime = 0;
+		double speedups = 0;
+		double replanRates = 0;
+		for (int s = 0; s < SIMS_COUNT; s++) {
+			long seed = random.nextLong();
+			WHCAController sequential = createSeededSimulation(mapSize, robotsCount, seed, false);
+			WHCAController speculative = createSeededSimulation(mapSize, robotsCount, seed, true);
+			speculative.setPlanningExecutor(executor);
+			for (int step = 0; step < steps; step++) {
+				long start = System.nanoTime();
+				sequential.stepSimulation();
+				sequentialTime += System.nanoTime() - start;
+				start = System.nanoTime();
+				speculative.stepSimulation();
+				speculativeTime += System.nanoTime() - start;
+				speedups += speculative.getLastSpeedup();
+				replanRates += speculative.getLastReplanRate();
+			}
+		}
+		executor.shutdown();
+		logger.info(threads + " threads, map " + mapSize + "x" + mapSize + ", " + robotsCount + " robots: sequential " + sequentialTime / 1000000 + " ms, speculative " + speculativeTime / 1000000 + " ms, speedup of the steps: " + String
+				.format("%.2f", (double) sequentialTime / speculativeTime) + ", mean speedup of the planning: " + String
+				.format("%.2f", speedups / SIMS_COUNT / steps) + ", replanned robots: " + String
+				.format("%.2f", replanRates / SIMS_COUNT / steps));
+	}
+	
+	private WHCAController createSeededSimulation(int mapSize, int robotsCount, long seed, boolean speculativePlanning) {
+		Random random = new Random(seed);
+		WHCASimulationParams params = new WHCASimulationParams();
+		params.mapSizeW = mapSize;
+		params.mapSizeH = mapSize;
+		params.robotsCount = robotsCount;
+		params.timeDimension = robotsCount + 1;
+		params.speculativePlanning = speculativePlanning;
+		WHCAController controller = new WHCAController(null, params);
+		controller.setRandom(random);
+		controller.setMazegen(new MazeGenerator(random));
+		controller.generateMaze();
+		controller.placeRobots();
+		controller.randomTargetPressed();
+		return controller;
+	}
+	
 	private boolean runSimulation(int mapW, int mapH, int robotsCount, int stepsMax, int timeDimension) {
 		WHCAController controller = createRandomSimulation(mapW, mapH, robotsCount, timeDimension);
 		int steps = simulate(controller, stepsMax);
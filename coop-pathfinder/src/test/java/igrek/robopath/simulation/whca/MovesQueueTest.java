@@ -0,0 +1,84 @@
+package igrek.robopath.simulation.whca;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import igrek.robopath.common.Point;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class MovesQueueTest {
+	
+	@Test
+	public void testQueue() {
+		MovesQueue moves = new MovesQueue();
+		assertNull(moves.poll());
+		for (int i = 0; i < 20; i++) {
+			moves.add(i, 4464 + i);
+		}
+		assertEquals(20, moves.size());
+		assertEquals(new Point(0, 4464), moves.poll());
+		assertEquals(new Point(1, 4465), moves.first());
+		assertEquals(new Point(19, 4483), moves.last());
+		moves.keepFirst();
+		assertEquals("[(1, 4465)]", moves.toString());
+		moves.clear();
+		assertTrue(moves.isEmpty());
+	}
+	
+	@Test
+	public void testSharedCopiesIndependent() {
+		MovesQueue moves = new MovesQueue();
+		moves.add(0, 0);
+		moves.add(1, 0);
+		MovesQueue copy = moves.share();
+		moves.poll();
+		moves.add(2, 0);
+		copy.add(1, 1);
+		MovesQueue copy2 = copy.share();
+		copy.clear();
+		copy.add(5, 5);
+		assertEquals("[(1, 0), (2, 0)]", moves.toString());
+		assertEquals("[(5, 5)]", copy.toString());
+		List<Point> iterated = new ArrayList<>();
+		for (Point move : copy2) {
+			iterated.add(move);
+		}
+		assertEquals("[(0, 0), (1, 0), (1, 1)]", iterated.toString());
+	}
+	
+	@Test
+	public void testRobotClone() {
+		MobileRobot robot = new MobileRobot(new Point(0, 0), null, 1, 1);
+		robot.enqueueMove(1, 0).enqueueMove(1, 1);
+		MobileRobot clone = robot.clone();
+		robot.resetMovesQue();
+		robot.enqueueMove(0, 1);
+		assertEquals(new Point(1, 1), clone.lastTarget());
+		assertEquals(new Point(1, 0), clone.pollNextMove());
+		assertEquals(new Point(0, 1), robot.nearestTarget());
+	}
+	
+	@Test
+	public void testNearestTargetCoordinates() {
+		MobileRobot robot = new MobileRobot(new Point(3, 4), null, 1, 1);
+		assertEquals(3, robot.nearestTargetX());
+		assertEquals(4, robot.nearestTargetY());
+		robot.enqueueMove(4, 5).enqueueMove(5, 5);
+		assertEquals(4, robot.nearestTargetX());
+		assertEquals(5, robot.nearestTargetY());
+		assertEquals(robot.nearestTarget(), new Point(robot.nearestTargetX(), robot.nearestTargetY()));
+		robot.pollNextMove();
+		assertEquals(5, robot.nearestTargetX());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testMoveNotAdjacent() {
+		new MobileRobot(new Point(0, 0), null, 1, 1).enqueueMove(2, 0);
+	}
+}
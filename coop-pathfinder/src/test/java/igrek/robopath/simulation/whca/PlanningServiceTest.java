@@ -0,0 +1,106 @@
+package igrek.robopath.simulation.whca;
+
+import org.junit.Test;
+
+import igrek.robopath.common.Point;
+
+import static igrek.robopath.simulation.whca.WHCASimulations.allReached;
+import static igrek.robopath.simulation.whca.WHCASimulations.copyWorld;
+import static igrek.robopath.simulation.whca.WHCASimulations.params;
+import static igrek.robopath.simulation.whca.WHCASimulations.randomWorld;
+import static igrek.robopath.simulation.whca.WHCASimulations.simulate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class PlanningServiceTest {
+	
+	@Test
+	public void testStalePlansDropped() {
+		WHCAController controller = randomWorld(params(15, 4), 5);
+		WorldSnapshot snapshot = controller.snapshot();
+		assertTrue(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+		
+		// a robot moved somewhere else than committed
+		MobileRobot robot = controller.getRobots().get(0);
+		Point position = robot.getPosition();
+		robot.setPosition(new Point(position.x == 0 ? 1 : 0, position.y));
+		assertFalse(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+		robot.setPosition(position);
+		assertTrue(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+		
+		// the robots placed anew
+		controller.placeRobots();
+		assertFalse(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+		// a robot removed
+		snapshot = controller.snapshot();
+		controller.getRobots().remove(0);
+		assertFalse(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+	}
+	
+	@Test
+	public void testHorizonAdapted() {
+		WHCAController controller = randomWorld(params(15, 4), 5);
+		controller.findPaths();
+		assertEquals(1, controller.getAsyncHorizon());
+		WorldSnapshot snapshot = controller.snapshot();
+		controller.stepSimulation();
+		controller.stepSimulation();
+		// planned too late - the next snapshots commit more moves
+		assertFalse(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+		assertEquals(2, controller.getAsyncHorizon());
+		snapshot = controller.snapshot();
+		assertEquals(2, snapshot.getHorizon());
+		// planned before the first committed move - the next ones commit less
+		assertTrue(controller.applyPlans(new PlanSet(snapshot, snapshot.createRobots(), 0)));
+		assertEquals(1, controller.getAsyncHorizon());
+	}
+	
+	@Test
+	public void testPlansHandedOver() {
+		for (long seed = 1; seed <= 3; seed++) {
+			WHCAController world = randomWorld(params(15, 6), seed);
+			String[] traces = new String[2];
+			for (int run = 0; run < 2; run++) {
+				WHCASimulationParams asyncParams = params(15, 6);
+				asyncParams.asynchronousPlanning = true;
+				WHCAController controller = copyWorld(world, asyncParams);
+				// waiting for the plans makes them taken over at the next step, every run the same
+				traces[run] = simulate(controller, 80, () -> awaitPlanning(controller));
+				assertTrue("not reached with seed " + seed, allReached(controller));
+				controller.dispose();
+			}
+			assertEquals(traces[0], traces[1]);
+		}
+	}
+	
+	@Test
+	public void testSynchronousPlanningInBackground() throws Exception {
+		WHCAController world = randomWorld(params(15, 6), 2);
+		WHCAController direct = copyWorld(world, params(15, 6));
+		WHCAController background = copyWorld(world, params(15, 6));
+		assertFalse(background.getParams().asynchronousPlanning);
+		direct.findPaths();
+		background.findPathsInBackground().get();
+		// taken over right away, not at the next step
+		for (int i = 0; i < direct.getRobots().size(); i++) {
+			MobileRobot expected = direct.getRobots().get(i);
+			MobileRobot robot = background.getRobots().get(i);
+			assertEquals(expected.getId(), robot.getId());
+			assertEquals(expected.getMovesQue().toString(), robot.getMovesQue().toString());
+			assertTrue(robot.hasReachedTarget() || robot.hasNextMove());
+		}
+		background.dispose();
+	}
+	
+	private void awaitPlanning(WHCAController controller) {
+		try {
+			while (controller.isPlanningInBackground()) {
+				Thread.sleep(1);
+			}
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
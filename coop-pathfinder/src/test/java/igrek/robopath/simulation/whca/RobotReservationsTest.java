@@ -0,0 +1,115 @@
+package igrek.robopath.simulation.whca;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.pathfinder.whca.ReservationTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RobotReservationsTest {
+	
+	private ReservationTable table = new ReservationTable(5, 1, 4);
+	private RobotReservations reservations = new RobotReservations(table, new TileMap(5, 1));
+	private MobileRobot first = new MobileRobot(new Point(0, 0), null, 0, 1);
+	private MobileRobot second = new MobileRobot(new Point(4, 0), null, 1, 0);
+	
+	@Test
+	public void testHigherPriorityTakesOver() {
+		reservations.setPriorityOrder(Arrays.asList(first, second));
+		reservations.setOwner(second);
+		reservations.setBlocked(2, 0, 1);
+		reservations.setOwner(null);
+		assertTrue(reservations.isHolding(second));
+		assertTrue(reservations.isBlocked(2, 0, 1));
+		// the lower priority doesn't block the higher one
+		reservations.setOwner(first);
+		assertFalse(reservations.isBlocked(2, 0, 1));
+		reservations.setBlocked(2, 0, 1);
+		reservations.setOwner(null);
+		assertEquals(Collections.singletonList(second), reservations.pollReleased());
+		assertTrue(reservations.pollReleased().isEmpty());
+		assertFalse(reservations.isHolding(second));
+		// but the higher one blocks the lower one
+		reservations.setOwner(second);
+		assertTrue(reservations.isBlocked(2, 0, 1));
+		reservations.setBlocked(2, 0, 1);
+		reservations.setOwner(null);
+		assertTrue(reservations.pollReleased().isEmpty());
+		reservations.release(first);
+		assertFalse(table.isBlocked(2, 0, 1));
+	}
+	
+	@Test
+	public void testOppositeMoveGivesWay() {
+		reservations.setPriorityOrder(Arrays.asList(first, second));
+		reservations.setOwner(second);
+		reservations.setMoveBlocked(2, 0, 1, 0, 0);
+		reservations.setOwner(first);
+		reservations.setMoveBlocked(1, 0, 2, 0, 0);
+		reservations.setOwner(null);
+		assertEquals(Collections.singletonList(second), reservations.pollReleased());
+		assertFalse(table.isMoveBlocked(2, 0, 1, 0, 0));
+		assertTrue(table.isMoveBlocked(1, 0, 2, 0, 0));
+	}
+	
+	@Test
+	public void testReleaseAfterTimeWrapsAround() {
+		reservations.setPriorityOrder(Arrays.asList(first, second));
+		reservations.setOwner(first);
+		reservations.setBlocked(1, 0);
+		reservations.setOwner(null);
+		// past the range of the times kept in the keys
+		for (int step = 0; step < (1 << 22) + 3; step++) {
+			reservations.advance();
+		}
+		reservations.setOwner(second);
+		reservations.setBlocked(3, 0, 1);
+		reservations.setOwner(null);
+		for (int t = 0; t < 4; t++) {
+			assertTrue(reservations.isBlocked(1, 0, t));
+		}
+		reservations.release(first);
+		for (int t = 0; t < 4; t++) {
+			assertFalse(table.isBlocked(1, 0, t));
+		}
+		assertTrue(table.isBlocked(3, 0, 1));
+		reservations.release(second);
+		assertFalse(table.isBlocked(3, 0, 1));
+	}
+	
+	@Test
+	public void testStayingAfterAdvance() {
+		reservations.setPriorityOrder(Arrays.asList(first, second));
+		reservations.setOwner(first);
+		reservations.setBlocked(1, 0);
+		reservations.setOwner(null);
+		reservations.advance();
+		reservations.advance();
+		for (int t = 0; t < 4; t++) {
+			assertTrue(table.isBlocked(1, 0, t));
+		}
+		reservations.release(first);
+		for (int t = 0; t < 4; t++) {
+			assertFalse(table.isBlocked(1, 0, t));
+		}
+	}
+	
+	@Test
+	public void testRobotsNotSimulatedReleased() {
+		reservations.setPriorityOrder(Arrays.asList(first, second));
+		reservations.setOwner(second);
+		reservations.setBlocked(3, 0, 2);
+		reservations.setOwner(null);
+		reservations.setPriorityOrder(Collections.singletonList(first));
+		assertFalse(reservations.isHolding(second));
+		assertFalse(table.isBlocked(3, 0, 2));
+	}
+}
@@ -0,0 +1,138 @@
+package igrek.robopath.simulation.whca;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static igrek.robopath.simulation.whca.WHCASimulations.allReached;
+import static igrek.robopath.simulation.whca.WHCASimulations.copyWorld;
+import static igrek.robopath.simulation.whca.WHCASimulations.params;
+import static igrek.robopath.simulation.whca.WHCASimulations.randomWorld;
+import static igrek.robopath.simulation.whca.WHCASimulations.simulate;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class WHCAControllerTest {
+	
+	@Test
+	public void testParallelHeuristicsSameAsSequential() {
+		// more threads than the tasks, whatever the number of processors
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (long seed = 1; seed <= 5; seed++) {
+				WHCAController world = randomWorld(params(15, 6), seed);
+				WHCASimulationParams sequentialParams = params(15, 6);
+				sequentialParams.parallelHeuristics = false;
+				WHCASimulationParams parallelParams = params(15, 6);
+				parallelParams.parallelHeuristics = true;
+				String sequential = simulate(copyWorld(world, sequentialParams), 60);
+				WHCAController parallelController = copyWorld(world, parallelParams);
+				parallelController.setPlanningExecutor(executor);
+				String parallel = simulate(parallelController, 60);
+				assertEquals(sequential, parallel);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSpeculativeSameAsSequential() {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (long seed = 1; seed <= 5; seed++) {
+				WHCAController world = randomWorld(params(15, 6), seed);
+				WHCASimulationParams sequentialParams = params(15, 6);
+				WHCASimulationParams speculativeParams = params(15, 6);
+				speculativeParams.speculativePlanning = true;
+				String sequential = simulate(copyWorld(world, sequentialParams), 60);
+				WHCAController speculativeController = copyWorld(world, speculativeParams);
+				speculativeController.setPlanningExecutor(executor);
+				String speculative = simulate(speculativeController, 60);
+				assertEquals(sequential, speculative);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSpeculativeWithOracleSameAsSequential() {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			for (long seed = 1; seed <= 3; seed++) {
+				WHCAController world = randomWorld(params(15, 6), seed);
+				WHCASimulationParams sequentialParams = params(15, 6);
+				sequentialParams.distanceOracle = true;
+				WHCASimulationParams speculativeParams = params(15, 6);
+				speculativeParams.distanceOracle = true;
+				speculativeParams.speculativePlanning = true;
+				String sequential = simulate(copyWorld(world, sequentialParams), 60);
+				WHCAController speculativeController = copyWorld(world, speculativeParams);
+				speculativeController.setPlanningExecutor(executor);
+				String speculative = simulate(speculativeController, 60);
+				assertEquals(sequential, speculative);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testIncrementalReplanning() {
+		WHCASimulationParams incrementalParams = params(15, 6);
+		incrementalParams.incrementalReplanning = true;
+		assertAllReached(incrementalParams);
+	}
+	
+	@Test
+	public void testPeriodicReplanning() {
+		WHCASimulationParams periodicParams = params(15, 6);
+		periodicParams.replanningSchedule = ReplanningSchedule.PERIODIC;
+		periodicParams.replanningPeriod = 3;
+		assertAllReached(periodicParams);
+	}
+	
+	@Test
+	public void testHybridReplanning() {
+		WHCASimulationParams hybridParams = params(15, 6);
+		hybridParams.replanningSchedule = ReplanningSchedule.HYBRID;
+		hybridParams.replanningBudget = 1;
+		assertAllReached(hybridParams);
+	}
+	
+	@Test
+	public void testStaggeredReplanning() {
+		WHCASimulationParams staggeredParams = params(15, 6);
+		staggeredParams.replanningSchedule = ReplanningSchedule.STAGGERED;
+		assertAllReached(staggeredParams);
+	}
+	
+	@Test
+	public void testPBSSolvesWhereWHCAFails() {
+		// a crowded maze where the robots of WHCA* keep blocking each other despite the promotions
+		WHCAController world = randomWorld(params(9, 6), 12);
+		WHCAController whca = copyWorld(world, params(9, 6));
+		simulate(whca, 100);
+		assertFalse(allReached(whca));
+		WHCASimulationParams pbsParams = params(9, 6);
+		pbsParams.planningAlgorithm = PlanningAlgorithm.PBS;
+		WHCAController pbs = copyWorld(world, pbsParams);
+		simulate(pbs, 40);
+		assertTrue(allReached(pbs));
+	}
+	
+	/**
+	 * Check the robots get to their targets without collisions on a few random worlds
+	 */
+	private void assertAllReached(WHCASimulationParams params) {
+		for (long seed = 1; seed <= 5; seed++) {
+			WHCAController controller = copyWorld(randomWorld(params(15, 6), seed), params);
+			simulate(controller, 80);
+			assertTrue("not reached with seed " + seed, allReached(controller));
+		}
+	}
+}
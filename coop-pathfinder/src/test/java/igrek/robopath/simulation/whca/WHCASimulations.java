@@ -0,0 +1,135 @@
+package igrek.robopath.simulation.whca;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+import igrek.robopath.mazegenerator.MazeGenerator;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Deterministic WHCA* simulations shared by the controller tests
+ */
+final class WHCASimulations {
+	
+	private WHCASimulations() {
+	}
+	
+	static WHCASimulationParams params(int mapSize, int robotsCount) {
+		WHCASimulationParams params = new WHCASimulationParams();
+		params.mapSizeW = mapSize;
+		params.mapSizeH = mapSize;
+		params.robotsCount = robotsCount;
+		params.timeDimension = robotsCount + 1;
+		return params;
+	}
+	
+	/**
+	 * @return controller with a random maze, robots and their targets
+	 */
+	static WHCAController randomWorld(WHCASimulationParams params, long seed) {
+		Random random = new Random(seed);
+		WHCAController controller = new WHCAController(null, params);
+		controller.setRandom(random);
+		controller.setMazegen(new MazeGenerator(random));
+		controller.generateMaze();
+		TileMap map = controller.getMap();
+		// open some walls, not to get stuck in the corridors
+		for (int i = 0; i < params.mapSizeW * params.mapSizeH / 8; i++) {
+			map.setCell(random.nextInt(params.mapSizeW), random.nextInt(params.mapSizeH), false);
+		}
+		controller.placeRobots();
+		controller.randomTargetPressed();
+		return controller;
+	}
+	
+	/**
+	 * @return controller with the same map, robots and targets as the source
+	 */
+	static WHCAController copyWorld(WHCAController source, WHCASimulationParams params) {
+		WHCAController controller = new WHCAController(null, params);
+		controller.setRandom(new Random(0));
+		controller.setMazegen(new MazeGenerator(new Random(0)));
+		TileMap map = controller.getMap();
+		source.getMap().foreach((x, y, occupied) -> map.setCell(x, y, occupied));
+		for (MobileRobot robot : source.getRobots()) {
+			controller.createMobileRobot(robot.getPosition()).setTarget(robot.getTarget());
+		}
+		return controller;
+	}
+	
+	/**
+	 * Run the simulation checking there are no collisions
+	 * @return the robots' positions after every step
+	 */
+	static String simulate(WHCAController controller, int steps) {
+		return simulate(controller, steps, () -> {
+		});
+	}
+	
+	/**
+	 * Run the simulation checking there are no collisions
+	 * @param afterStep called after every step, before checking the robots' moves
+	 * @return the robots' positions after every step
+	 */
+	static String simulate(WHCAController controller, int steps, Runnable afterStep) {
+		StringBuilder trace = new StringBuilder();
+		for (int step = 0; step < steps && !allReached(controller); step++) {
+			List<MobileRobot> robots = controller.getRobots();
+			Map<Integer, Point> before = positions(robots);
+			controller.stepSimulation();
+			afterStep.run();
+			Map<Integer, Point> after = positions(robots);
+			assertNoCollisions(before, after);
+			trace.append(step).append(": ");
+			after.forEach((id, position) -> trace.append(id).append(position).append(" "));
+			trace.append("\n");
+		}
+		return trace.toString();
+	}
+	
+	static boolean allReached(WHCAController controller) {
+		for (MobileRobot robot : controller.getRobots()) {
+			if (!robot.hasReachedTarget())
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return positions of the robots by their ids, the robots get reordered by the planning
+	 */
+	private static Map<Integer, Point> positions(List<MobileRobot> robots) {
+		Map<Integer, Point> positions = new TreeMap<>();
+		for (MobileRobot robot : robots) {
+			positions.put(robot.getId(), robot.getPosition());
+		}
+		return positions;
+	}
+	
+	/**
+	 * Check the robots don't share a cell, swap their cells nor jump
+	 */
+	static void assertNoCollisions(Map<Integer, Point> before, Map<Integer, Point> after) {
+		// Point has no hashCode
+		Set<String> occupied = new HashSet<>();
+		for (Map.Entry<Integer, Point> entry : after.entrySet()) {
+			Point from = before.get(entry.getKey());
+			Point to = entry.getValue();
+			assertTrue("robot jumped: " + from + " -> " + to, from.isAdjacentOrEqual(to));
+			assertTrue("two robots on " + to, occupied.add(to.toString()));
+			for (Map.Entry<Integer, Point> other : after.entrySet()) {
+				Point otherFrom = before.get(other.getKey());
+				assertFalse("robots swapped " + from + ", " + otherFrom, !from.equals(to) && from.equals(other.getValue()) && otherFrom
+						.equals(to));
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package igrek.robopath.simulation.whca;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import igrek.robopath.common.Point;
+import igrek.robopath.common.TileMap;
+
+import static igrek.robopath.simulation.whca.WHCASimulations.params;
+import static igrek.robopath.simulation.whca.WHCASimulations.randomWorld;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class WorldSnapshotTest {
+	
+	@Test
+	public void testIsolatedFromChanges() {
+		WHCAController controller = randomWorld(params(15, 4), 3);
+		controller.findPaths();
+		TileMap map = controller.getMap();
+		MobileRobot robot = controller.getRobots().get(0);
+		Point position = robot.getPosition();
+		Point next = robot.getMovesQue().first();
+		WorldSnapshot snapshot = new WorldSnapshot(0, 2, controller.getParams(), map, controller.getRobots());
+		WorldSnapshot.RobotState state = snapshot.getRobots().get(0);
+		
+		// block the cell the robot is heading for, move the robot somewhere else
+		assertFalse(map.blocked(next.x, next.y));
+		map.setCell(next.x, next.y, true);
+		robot.resetMovesQue();
+		robot.setPosition(new Point(position.x == 0 ? 1 : 0, position.y));
+		
+		assertFalse(snapshot.getMap().blocked(next.x, next.y));
+		assertTrue(map.getVersion() != snapshot.getMap().getVersion());
+		assertEquals(robot.getId(), state.getId());
+		assertEquals(position, state.getPositionAfter(0));
+		assertEquals(next, state.getPositionAfter(1));
+		assertEquals(2, state.getCommitted().size());
+		// the robots to be planned start at the end of the committed moves
+		List<MobileRobot> created = snapshot.createRobots();
+		assertEquals(state.getPositionAfter(2), created.get(0).getPosition());
+		assertFalse(created.get(0).hasNextMove());
+	}
+	
+	@Test
+	public void testParamsCaptured() {
+		WHCAController controller = randomWorld(params(15, 4), 3);
+		WHCASimulationParams params = controller.getParams();
+		WorldSnapshot snapshot = controller.snapshot();
+		// changed by the UI while the snapshot is being planned
+		params.planningAlgorithm = PlanningAlgorithm.PBS;
+		params.distanceOracle = true;
+		params.timeDimension = 9;
+		assertEquals(PlanningAlgorithm.WHCA, snapshot.getParams().planningAlgorithm);
+		assertFalse(snapshot.getParams().distanceOracle);
+		assertEquals(5, snapshot.getTimeDimension());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testMapNotModifiable() {
+		WHCAController controller = randomWorld(params(15, 4), 3);
+		WorldSnapshot snapshot = new WorldSnapshot(0, 1, controller.getParams(), controller.getMap(), controller.getRobots());
+		snapshot.getMap().setCell(0, 0, true);
+	}
+}